@@ -0,0 +1,126 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the input files of the converter benchmarks with a {@link SyntheticDataGenerator},
+ * so every run reads the same files.
+ * @author Daniela Butano
+ */
+public final class BenchmarkInputs {
+    // OWID has many columns the converter doesn't read
+    private static final int OWID_EXTRA_COLUMNS = 40;
+    // the first GISAID daily report with one row per county
+    private static final String GISAID_FIRST_DAY = "2020-03-22";
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * Write an owid-covid-data.csv, the rows of a location together
+     * @param dir the directory
+     * @param locations the number of locations
+     * @param days the number of days
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    public static File writeOwid(File dir, int locations, int days) throws IOException {
+        File file = new File(dir, "owid-covid-data.csv");
+        SyntheticDataGenerator generator = newGenerator(locations, days);
+        generator.setExtraColumns(OWID_EXTRA_COLUMNS);
+        generator.write(SyntheticDataGenerator.Format.OWID, file);
+        return file;
+    }
+
+    /**
+     * Write a COVID Tracking Project daily.csv, the rows of a day together
+     * @param dir the directory
+     * @param states the number of states, at most 50 so that the converter loads them all
+     * @param days the number of days
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    public static File writeCovidTracking(File dir, int states, int days) throws IOException {
+        File file = new File(dir, "daily.csv");
+        newGenerator(states, days).write(SyntheticDataGenerator.Format.TRACKING, file);
+        return file;
+    }
+
+    /**
+     * Write the GISAID (Johns Hopkins CSSE) daily reports, one file per day, each with one
+     * row per location
+     * @param dir the directory, created if needed
+     * @param locations the number of locations in each report
+     * @param days the number of daily reports
+     * @return the directory
+     * @throws IOException if the files can't be written
+     */
+    public static File writeGisaid(File dir, int locations, int days) throws IOException {
+        SyntheticDataGenerator generator = newGenerator(locations, days);
+        generator.setFirstDay(GISAID_FIRST_DAY);
+        generator.write(SyntheticDataGenerator.Format.GISAID, dir);
+        return dir;
+    }
+
+    /**
+     * Write a FASTA file of SARS-CoV-2 genomes, the first one the reference sequence
+     * @param dir the directory
+     * @param sequences the number of sequences
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    public static File writeFasta(File dir, int sequences) throws IOException {
+        File file = new File(dir, "sequences.fasta");
+        newGenerator(sequences, 1).write(SyntheticDataGenerator.Format.FASTA, file);
+        return file;
+    }
+
+    /**
+     * @param count the number of headers
+     * @return NCBI sequence headers, the first one of the reference sequence
+     */
+    public static String[] ncbiHeaders(int count) {
+        SyntheticDataGenerator generator = newGenerator(count, 1);
+        String[] headers = new String[count];
+        for (int i = 0; i < count; i++) {
+            headers[i] = generator.fastaHeader(i);
+        }
+        return headers;
+    }
+
+    /**
+     * Delete the files written in a directory, and the directory
+     * @param dir the directory
+     */
+    public static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    delete(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    private static SyntheticDataGenerator newGenerator(int locations, int days) {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        generator.setLocations(locations);
+        generator.setDays(days);
+        return generator;
+    }
+}
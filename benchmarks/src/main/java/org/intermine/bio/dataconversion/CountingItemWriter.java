@@ -0,0 +1,48 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collection;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.model.fulldata.Item;
+
+/**
+ * ItemWriter counting the items instead of writing them, so that a benchmark measures the
+ * converter alone
+ * @author Daniela Butano
+ */
+public class CountingItemWriter implements ItemWriter {
+    private long itemCount = 0;
+
+    @Override
+    public Integer store(Item item) {
+        itemCount++;
+        return null;
+    }
+
+    @Override
+    public void storeAll(Collection<Item> items) {
+        itemCount += items.size();
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+
+    /**
+     * @return the number of items stored
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+}
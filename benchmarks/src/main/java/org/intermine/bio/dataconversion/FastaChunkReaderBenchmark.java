@@ -0,0 +1,88 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Reads a FASTA file with a {@link FastaChunkReader} as the NcbiCovidFastaConverter does
+ * with more than one thread, the score is in sequences per second. Storing the sequences
+ * needs an object store.
+ * @author Daniela Butano
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FastaChunkReaderBenchmark {
+    private static final int SEQUENCES = 2000;
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    private File dir;
+    private File fasta;
+
+    /**
+     * @throws IOException if the input can't be written
+     */
+    @Setup(Level.Trial)
+    public void writeInput() throws IOException {
+        dir = Files.createTempDirectory("fasta-benchmark").toFile();
+        fasta = BenchmarkInputs.writeFasta(dir, SEQUENCES);
+    }
+
+    /**
+     * Delete the input
+     */
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        BenchmarkInputs.delete(dir);
+    }
+
+    /**
+     * @param blackhole consumes the records
+     * @throws IOException if the file can't be read
+     */
+    @Benchmark
+    @OperationsPerInvocation(SEQUENCES)
+    public void read(Blackhole blackhole) throws IOException {
+        try (FastaChunkReader reader = new FastaChunkReader(fasta, threads,
+                FastaChunkReader.DEFAULT_CHUNK_SIZE)) {
+            FastaRecord record;
+            while ((record = reader.next()) != null) {
+                blackhole.consume(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses the sequence headers with a {@link FastaHeader} as the NcbiCovidFastaConverter
+ * does, the score is in headers per second. The rest of the load needs an object store.
+ * @author Daniela Butano
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NcbiCovidFastaHeaderBenchmark {
+    private static final int HEADERS = 10000;
+
+    private String[] headers;
+    private FastaHeader parsed = new FastaHeader();
+
+    /**
+     * Create the headers
+     */
+    @Setup(Level.Trial)
+    public void createHeaders() {
+        headers = BenchmarkInputs.ncbiHeaders(HEADERS);
+    }
+
+    /**
+     * @param blackhole consumes the parsed headers
+     */
+    @Benchmark
+    @OperationsPerInvocation(HEADERS)
+    public void parseHeaders(Blackhole blackhole) {
+        for (String header : headers) {
+            parsed.parse(header);
+            blackhole.consume(parsed.getCountry());
+            blackhole.consume(parsed.isReference());
+            blackhole.consume(parsed.getCompleteness());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.metadata.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads an OWID file with the OwidCsvConverter, the score is in rows per second
+ * @author Daniela Butano
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OwidCsvConverterBenchmark {
+    private static final int LOCATIONS = 200;
+    private static final int DAYS = 250;
+    private static final int ROWS = LOCATIONS * DAYS;
+
+    @Param({"false", "true"})
+    public String pipeline;
+
+    @Param({"false", "true"})
+    public String boundedMemory;
+
+    private Model model;
+    private File dir;
+    private File file;
+
+    /**
+     * @throws IOException if the input can't be written
+     */
+    @Setup(Level.Trial)
+    public void writeInput() throws IOException {
+        model = Model.getInstanceByName("genomic");
+        dir = Files.createTempDirectory("owid-benchmark").toFile();
+        file = BenchmarkInputs.writeOwid(dir, LOCATIONS, DAYS);
+    }
+
+    /**
+     * Delete the input
+     */
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        BenchmarkInputs.delete(dir);
+    }
+
+    /**
+     * @param counters the items stored
+     * @throws Exception if the file can't be loaded
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void process(LoadCounters counters) throws Exception {
+        CountingItemWriter writer = new CountingItemWriter();
+        OwidCsvConverter converter = new OwidCsvConverter(writer, model);
+        converter.setPipeline(pipeline);
+        converter.setBoundedMemory(boundedMemory);
+        converter.setCurrentFile(file);
+        try (Reader reader = new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8)) {
+            converter.process(reader);
+        }
+        counters.items += writer.getItemCount();
+    }
+}
@@ -0,0 +1,619 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Writes synthetic inputs for the converters, in the formats of the real sources, at any
+ * scale: OWID and COVID Tracking Project csv files, GISAID daily reports and NCBI FASTA
+ * files. The output is streamed, only the parameters of each location are kept in memory.
+ * <p>
+ * The cumulative counts of a location follow one to three epidemic waves, computed from
+ * the day so that the rows can be written in any order. The same seed and settings always
+ * write the same files. With a dirty rate some values are written the ways the real files
+ * have them: empty, padded with spaces, as decimals, n/a, and country names in upper case
+ * or as an alias (US, Mainland China). An OWID load with boundedMemory fails on the aliases
+ * the country normaliser doesn't know, as their rows are not together.
+ * <p>
+ * Usage: SyntheticDataGenerator owid|tracking|gisaid|fasta output [name=value...], e.g.
+ * owid owid.csv locations=5000 days=1000 dirtyRate=0.01. The GISAID output is a directory.
+ * @author Daniela Butano
+ */
+public class SyntheticDataGenerator {
+    /**
+     * The inputs it writes
+     */
+    public enum Format {
+        OWID,
+        TRACKING,
+        GISAID,
+        FASTA
+    }
+
+    /** The 50 states first, then DC and the territories */
+    static final String[] STATE_CODES = {"AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "FL",
+        "GA", "HI", "ID", "IL", "IN", "IA", "KS", "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS",
+        "MO", "MT", "NE", "NV", "NH", "NJ", "NM", "NY", "NC", "ND", "OH", "OK", "OR", "PA", "RI",
+        "SC", "SD", "TN", "TX", "UT", "VT", "VA", "WA", "WV", "WI", "WY", "DC", "AS", "GU", "MP",
+        "PR", "VI"};
+    // the names after these are Country 60, Country 61...
+    private static final String[] COUNTRIES = {"Afghanistan", "Albania", "Algeria",
+        "Argentina", "Australia", "Austria", "Bangladesh", "Belgium", "Bolivia",
+        "Bonaire, Sint Eustatius and Saba", "Brazil", "Canada", "Chile", "China", "Colombia",
+        "C\u00f4te d'Ivoire", "Czechia", "Denmark", "Egypt", "Ethiopia", "Finland", "France",
+        "Germany", "Ghana", "Greece", "India", "Indonesia", "Iran", "Iraq", "Ireland", "Israel",
+        "Italy", "Japan", "Kenya", "Mexico", "Morocco", "Netherlands", "New Zealand", "Nigeria",
+        "Norway", "Pakistan", "Peru", "Philippines", "Poland", "Portugal", "Romania", "Russia",
+        "Saudi Arabia", "South Africa", "South Korea", "Spain", "Sweden", "Switzerland",
+        "Taiwan", "Thailand", "Turkey", "Ukraine", "United Kingdom", "United States",
+        "Vietnam"};
+    // the other names the sources use for a country
+    private static final String[][] ALIASES = {{"United States", "US"},
+        {"China", "Mainland China"}, {"South Korea", "Korea, South"},
+        {"Czechia", "Czech Republic"}, {"Vietnam", "Viet Nam"}, {"Taiwan", "Taiwan*"},
+        {"Iran", "Iran (Islamic Republic of)"}};
+    private static final String[] OWID_COLUMNS = {"iso_code", "continent", "location", "date",
+        "total_cases", "new_cases", "new_cases_smoothed", "total_deaths", "new_deaths",
+        "new_deaths_smoothed"};
+    private static final String[] TRACKING_COLUMNS = {"date", "state", "positive", "negative",
+        "pending", "hospitalizedCurrently", "death", "hospitalized", "dataQualityGrade",
+        "deathIncrease", "positiveIncrease"};
+    // the daily reports changed format on 03-22-2020, adding the counties
+    private static final String[] GISAID_OLD_COLUMNS = {"Province/State", "Country/Region",
+        "Last Update", "Confirmed", "Deaths", "Recovered", "Latitude", "Longitude"};
+    private static final String[] GISAID_COLUMNS = {"FIPS", "Admin2", "Province_State",
+        "Country_Region", "Last_Update", "Lat", "Long_", "Confirmed", "Deaths", "Recovered",
+        "Active", "Combined_Key"};
+    private static final long GISAID_NEW_FORMAT_DAY = LocalDate.of(2020, 3, 22).toEpochDay();
+    // GISAID locations: counties in states in countries
+    private static final int COUNTIES_PER_STATE = 10;
+    private static final int STATES_PER_COUNTRY = 10;
+    private static final String REFERENCE_HEADER = "NC_045512 |China|refseq| complete";
+    private static final int FASTA_LINE_LENGTH = 70;
+    private static final double MUTATION_RATE = 0.001;
+    private static final String BASES = "ACGT";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private long seed = 42;
+    private int locations = 200;
+    private int days = 365;
+    private long firstDay = LocalDate.of(2020, 1, 22).toEpochDay();
+    private int extraColumns = 0;
+    private double dirtyRate = 0;
+    private int sequenceLength = 29903;
+    // the dirty values, in the order they are written
+    private Random random;
+
+    /**
+     * @param seed the seed of all the values
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param locations the number of locations, or of sequences for FASTA. COVID Tracking
+     * has at most one location per state code.
+     */
+    public void setLocations(int locations) {
+        this.locations = locations;
+    }
+
+    /**
+     * @param days the number of days, one GISAID daily report per day
+     */
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    /**
+     * @param firstDay the first day, yyyy-MM-dd
+     */
+    public void setFirstDay(String firstDay) {
+        this.firstDay = LocalDate.parse(firstDay).toEpochDay();
+    }
+
+    /**
+     * @param extraColumns the number of columns added that the converters don't read
+     */
+    public void setExtraColumns(int extraColumns) {
+        this.extraColumns = extraColumns;
+    }
+
+    /**
+     * @param dirtyRate the probability, from 0 to 1, of a value being written dirty
+     */
+    public void setDirtyRate(double dirtyRate) {
+        this.dirtyRate = dirtyRate;
+    }
+
+    /**
+     * @param sequenceLength the number of bases of a FASTA sequence
+     */
+    public void setSequenceLength(int sequenceLength) {
+        this.sequenceLength = sequenceLength;
+    }
+
+    /**
+     * Write an input
+     * @param format the format
+     * @param output the file, or the directory for GISAID
+     * @throws IOException if the output can't be written
+     */
+    public void write(Format format, File output) throws IOException {
+        if (format == Format.GISAID) {
+            writeGisaid(output);
+            return;
+        }
+        try (Writer out = open(output)) {
+            switch (format) {
+                case OWID:
+                    writeOwid(out);
+                    break;
+                case TRACKING:
+                    writeCovidTracking(out);
+                    break;
+                default:
+                    writeFasta(out);
+            }
+        }
+    }
+
+    /**
+     * Write an owid-covid-data.csv, the rows of a location together and by date
+     * @param out the output
+     * @throws IOException if the output can't be written
+     */
+    public void writeOwid(Writer out) throws IOException {
+        random = new Random(seed + 1);
+        Curve[] curves = createCurves(locations);
+        writeHeader(out, OWID_COLUMNS);
+        for (int location = 0; location < locations; location++) {
+            long[] cases = curves[location].casesByDay(days);
+            long[] deaths = curves[location].deathsByDay(cases);
+            String isoCode = String.format("X%03d", location % 1000);
+            String name = countryName(location);
+            for (int day = 0; day < days; day++) {
+                out.write(isoCode);
+                out.write(",Europe,");
+                out.write(csv(dirtyName(name)));
+                out.write(',');
+                out.write(LocalDate.ofEpochDay(firstDay + day).toString());
+                writeNumber(out, cases[day], true);
+                writeNumber(out, cases[day] - previous(cases, day, 1), true);
+                out.write(',');
+                out.write(Double.toString(smoothed(cases, day)));
+                writeNumber(out, deaths[day], true);
+                writeNumber(out, deaths[day] - previous(deaths, day, 1), true);
+                out.write(',');
+                out.write(Double.toString(smoothed(deaths, day)));
+                writeExtraColumns(out);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Write a COVID Tracking Project daily.csv, the rows of a day together, the last day
+     * first
+     * @param out the output
+     * @throws IOException if the output can't be written
+     */
+    public void writeCovidTracking(Writer out) throws IOException {
+        random = new Random(seed + 2);
+        int states = Math.min(locations, STATE_CODES.length);
+        Curve[] curves = createCurves(states);
+        long[][] cases = new long[states][];
+        long[][] deaths = new long[states][];
+        for (int state = 0; state < states; state++) {
+            cases[state] = curves[state].casesByDay(days);
+            deaths[state] = curves[state].deathsByDay(cases[state]);
+        }
+        writeHeader(out, TRACKING_COLUMNS);
+        for (int day = days - 1; day >= 0; day--) {
+            String date = LocalDate.ofEpochDay(firstDay + day).toString().replace("-", "");
+            for (int state = 0; state < states; state++) {
+                long positive = cases[state][day];
+                out.write(date);
+                out.write(',');
+                out.write(STATE_CODES[state]);
+                writeNumber(out, positive, false);
+                writeNumber(out, positive * 9, false);
+                out.write(",,");
+                out.write(Long.toString(positive / 100));
+                writeNumber(out, deaths[state][day], false);
+                out.write(",,A");
+                writeNumber(out, deaths[state][day] - previous(deaths[state], day, 1), false);
+                writeNumber(out, positive - previous(cases[state], day, 1), false);
+                writeExtraColumns(out);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Write the GISAID (Johns Hopkins CSSE) daily reports, one MM-dd-yyyy.csv file per day.
+     * Before 03-22-2020 the reports have the old format, with one row per state.
+     * @param dir the directory, created if needed
+     * @throws IOException if the files can't be written
+     */
+    public void writeGisaid(File dir) throws IOException {
+        random = new Random(seed + 3);
+        Curve[] curves = createCurves(locations);
+        dir.mkdirs();
+        for (int day = 0; day < days; day++) {
+            LocalDate date = LocalDate.ofEpochDay(firstDay + day);
+            String fileName = String.format("%02d-%02d-%04d.csv", date.getMonthValue(),
+                    date.getDayOfMonth(), date.getYear());
+            try (Writer out = open(new File(dir, fileName))) {
+                if (date.toEpochDay() < GISAID_NEW_FORMAT_DAY) {
+                    writeOldDailyReport(out, curves, day, date);
+                } else {
+                    writeDailyReport(out, curves, day, date);
+                }
+            }
+        }
+    }
+
+    private void writeDailyReport(Writer out, Curve[] curves, int day, LocalDate date)
+        throws IOException {
+        writeHeader(out, GISAID_COLUMNS);
+        for (int location = 0; location < locations; location++) {
+            Curve curve = curves[location];
+            long confirmed = curve.cases(day);
+            long deaths = curve.deaths(day);
+            long recovered = curve.cases(day - 14);
+            String county = "County " + location;
+            String state = stateName(location / COUNTIES_PER_STATE);
+            String country = countryName(location / (COUNTIES_PER_STATE * STATES_PER_COUNTRY));
+            out.write(Integer.toString(10000 + location));
+            out.write(',');
+            out.write(county);
+            out.write(',');
+            out.write(state);
+            out.write(',');
+            out.write(csv(dirtyName(country)));
+            out.write(',');
+            out.write(date.toString());
+            out.write(" 23:59:00,");
+            writeCoordinates(out, location);
+            writeNumber(out, confirmed, false);
+            writeNumber(out, deaths, false);
+            writeNumber(out, recovered, false);
+            writeNumber(out, confirmed - deaths - recovered, false);
+            out.write(',');
+            out.write(csv(county + ", " + state + ", " + country));
+            writeExtraColumns(out);
+            out.write('\n');
+        }
+    }
+
+    private void writeOldDailyReport(Writer out, Curve[] curves, int day, LocalDate date)
+        throws IOException {
+        writeHeader(out, GISAID_OLD_COLUMNS);
+        for (int first = 0; first < locations; first += COUNTIES_PER_STATE) {
+            long confirmed = 0;
+            long deaths = 0;
+            long recovered = 0;
+            for (int location = first; location < Math.min(first + COUNTIES_PER_STATE,
+                    locations); location++) {
+                confirmed += curves[location].cases(day);
+                deaths += curves[location].deaths(day);
+                recovered += curves[location].cases(day - 14);
+            }
+            int state = first / COUNTIES_PER_STATE;
+            out.write(stateName(state));
+            out.write(',');
+            out.write(csv(dirtyName(countryName(state / STATES_PER_COUNTRY))));
+            out.write(',');
+            out.write(date.toString());
+            out.write("T23:59:00");
+            writeNumber(out, confirmed, false);
+            writeNumber(out, deaths, false);
+            writeNumber(out, recovered, false);
+            out.write(',');
+            writeCoordinates(out, first);
+            writeExtraColumns(out);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Write a FASTA file of SARS-CoV-2 genomes: the reference sequence, then the others
+     * with a few substitutions and, with a dirty rate, runs of N
+     * @param out the output
+     * @throws IOException if the output can't be written
+     */
+    public void writeFasta(Writer out) throws IOException {
+        random = new Random(seed + 4);
+        Random bases = new Random(seed);
+        char[] reference = new char[sequenceLength];
+        for (int i = 0; i < sequenceLength; i++) {
+            reference[i] = BASES.charAt(bases.nextInt(BASES.length()));
+        }
+        char[] sequence = new char[sequenceLength];
+        for (int i = 0; i < locations; i++) {
+            System.arraycopy(reference, 0, sequence, 0, sequenceLength);
+            if (i > 0) {
+                mutate(sequence);
+            }
+            out.write('>');
+            out.write(fastaHeader(i));
+            out.write('\n');
+            for (int start = 0; start < sequenceLength; start += FASTA_LINE_LENGTH) {
+                out.write(sequence, start, Math.min(FASTA_LINE_LENGTH, sequenceLength - start));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @param sequence the sequence number, 0 for the reference sequence
+     * @return the header of a sequence as the NcbiCovidFastaConverter expects it, without >
+     */
+    public String fastaHeader(int sequence) {
+        if (sequence == 0) {
+            return REFERENCE_HEADER;
+        }
+        return String.format("MT%06d |%s|complete", sequence,
+                countryName((int) ((sequence * 2654435761L) % Math.max(1, locations / 10))));
+    }
+
+    private void mutate(char[] sequence) {
+        int substitutions = (int) (sequence.length * MUTATION_RATE * random.nextDouble() * 2);
+        for (int i = 0; i < substitutions; i++) {
+            sequence[random.nextInt(sequence.length)] = BASES.charAt(random.nextInt(4));
+        }
+        if (isDirty()) {
+            int start = random.nextInt(sequence.length);
+            int end = Math.min(sequence.length, start + 1 + random.nextInt(300));
+            for (int i = start; i < end; i++) {
+                sequence[i] = 'N';
+            }
+        }
+    }
+
+    private static long previous(long[] values, int day, int daysBefore) {
+        return (day < daysBefore) ? 0 : values[day - daysBefore];
+    }
+
+    // the 7-day average of the daily values, as OWID rounds it
+    private static double smoothed(long[] values, int day) {
+        return Math.round((values[day] - previous(values, day, 7)) / 7.0 * 1000) / 1000.0;
+    }
+
+    private Curve[] createCurves(int count) {
+        Random curveRandom = new Random(seed);
+        Curve[] curves = new Curve[count];
+        for (int i = 0; i < count; i++) {
+            curves[i] = new Curve(curveRandom, days);
+        }
+        return curves;
+    }
+
+    private void writeHeader(Writer out, String[] columns) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(columns[i]);
+        }
+        for (int i = 0; i < extraColumns; i++) {
+            out.write(",extra_");
+            out.write(Integer.toString(i));
+        }
+        out.write('\n');
+    }
+
+    private void writeExtraColumns(Writer out) throws IOException {
+        for (int i = 0; i < extraColumns; i++) {
+            out.write(',');
+            if (i % 3 != 0) {
+                out.write(Integer.toString(i * 37 % 1000));
+                out.write(".25");
+            }
+        }
+    }
+
+    private void writeCoordinates(Writer out, int location) throws IOException {
+        out.write(Double.toString((location * 7 % 1800) / 10.0 - 90));
+        out.write(',');
+        out.write(Double.toString((location * 13 % 3600) / 10.0 - 180));
+    }
+
+    /**
+     * Write a separator and the number, dirty at the dirty rate
+     */
+    private void writeNumber(Writer out, long value, boolean decimal) throws IOException {
+        out.write(',');
+        String number = decimal ? value + ".0" : Long.toString(value);
+        if (!isDirty()) {
+            out.write(number);
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                // missing
+                break;
+            case 1:
+                out.write(" " + number + " ");
+                break;
+            case 2:
+                out.write(decimal ? Long.toString(value) : value + ".0");
+                break;
+            default:
+                out.write("n/a");
+        }
+    }
+
+    private String dirtyName(String name) {
+        if (!isDirty()) {
+            return name;
+        }
+        switch (random.nextInt(3)) {
+            case 0:
+                return name.toUpperCase();
+            case 1:
+                return " " + name + "  ";
+            default:
+                for (String[] alias : ALIASES) {
+                    if (alias[0].equals(name)) {
+                        return alias[1];
+                    }
+                }
+                return name.toLowerCase();
+        }
+    }
+
+    private boolean isDirty() {
+        return dirtyRate > 0 && random.nextDouble() < dirtyRate;
+    }
+
+    private static String countryName(int country) {
+        return (country < COUNTRIES.length) ? COUNTRIES[country] : "Country " + country;
+    }
+
+    private static String stateName(int state) {
+        return "State " + state;
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Cumulative cases and deaths of a location, a sum of logistic waves
+     */
+    private static final class Curve {
+        private final double[] heights;
+        private final double[] midpoints;
+        private final double[] widths;
+        private final double fatality;
+        private final int deathLag;
+
+        Curve(Random random, int days) {
+            int waves = 1 + random.nextInt(3);
+            heights = new double[waves];
+            midpoints = new double[waves];
+            widths = new double[waves];
+            // from a hundred to a million cases
+            double size = Math.pow(10, 2 + random.nextDouble() * 4);
+            for (int wave = 0; wave < waves; wave++) {
+                heights[wave] = size * (0.2 + random.nextDouble());
+                midpoints[wave] = days * (wave + random.nextDouble()) / waves;
+                widths[wave] = 3 + random.nextDouble() * 15;
+            }
+            fatality = 0.005 + random.nextDouble() * 0.03;
+            deathLag = 7 + random.nextInt(14);
+        }
+
+        long cases(int day) {
+            if (day < 0) {
+                return 0;
+            }
+            double cases = 0;
+            for (int wave = 0; wave < heights.length; wave++) {
+                // relative to day 0, so that the counts start from 0
+                cases += heights[wave] * (logistic(wave, day) - logistic(wave, 0));
+            }
+            return (long) cases;
+        }
+
+        long deaths(int day) {
+            return (long) (cases(day - deathLag) * fatality);
+        }
+
+        long[] casesByDay(int days) {
+            long[] cases = new long[days];
+            for (int day = 0; day < days; day++) {
+                cases[day] = cases(day);
+            }
+            return cases;
+        }
+
+        long[] deathsByDay(long[] cases) {
+            long[] deaths = new long[cases.length];
+            for (int day = deathLag; day < cases.length; day++) {
+                deaths[day] = (long) (cases[day - deathLag] * fatality);
+            }
+            return deaths;
+        }
+
+        private double logistic(int wave, int day) {
+            return 1 / (1 + Math.exp((midpoints[wave] - day) / widths[wave]));
+        }
+    }
+
+    /**
+     * @param args the format, the output and the settings as name=value
+     * @throws IOException if the output can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticDataGenerator owid|tracking|gisaid|fasta"
+                    + " output [seed=42] [locations=200] [days=365] [firstDay=2020-01-22]"
+                    + " [extraColumns=0] [dirtyRate=0] [sequenceLength=29903]");
+            System.exit(1);
+        }
+        Format format = Format.valueOf(args[0].toUpperCase());
+        SyntheticDataGenerator generator = new SyntheticDataGenerator();
+        for (int i = 2; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            String value = setting[1].trim();
+            switch (setting[0].trim()) {
+                case "seed":
+                    generator.setSeed(Long.parseLong(value));
+                    break;
+                case "locations":
+                    generator.setLocations(Integer.parseInt(value));
+                    break;
+                case "days":
+                    generator.setDays(Integer.parseInt(value));
+                    break;
+                case "firstDay":
+                    generator.setFirstDay(value);
+                    break;
+                case "extraColumns":
+                    generator.setExtraColumns(Integer.parseInt(value));
+                    break;
+                case "dirtyRate":
+                    generator.setDirtyRate(Double.parseDouble(value));
+                    break;
+                case "sequenceLength":
+                    generator.setSequenceLength(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting " + args[i]);
+            }
+        }
+        long start = System.currentTimeMillis();
+        generator.write(format, new File(args[1]));
+        System.out.println("Written " + args[1] + " in " + (System.currentTimeMillis() - start)
+                + " ms");
+    }
+}
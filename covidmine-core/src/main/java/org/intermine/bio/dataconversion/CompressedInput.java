@@ -0,0 +1,197 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * A compressed file (gzip, zstd or xz, told by the file extension) read without unpacking
+ * it to disk. The file is decompressed ahead on its own thread while the caller parses the
+ * bytes already decompressed.
+ * @author Daniela Butano
+ */
+public final class CompressedInput extends ReadAheadInputStream {
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    private final CountingInputStream compressed;
+    private final long fileSize;
+
+    /**
+     * The compression formats, with their file extensions
+     */
+    public enum Compression {
+        /** not compressed */
+        NONE,
+        /** gzip, .gz, also bgzip */
+        GZIP(".gz"),
+        /** Zstandard, .zst */
+        ZSTD(".zst", ".zstd"),
+        /** xz, .xz */
+        XZ(".xz");
+
+        private final String[] extensions;
+
+        Compression(String... extensions) {
+            this.extensions = extensions;
+        }
+
+        /**
+         * @param fileName the file name
+         * @return the extension of the file name, lower case, null if it isn't one of this
+         * format
+         */
+        String getExtension(String fileName) {
+            String lowerCase = fileName.toLowerCase();
+            for (String extension : extensions) {
+                if (lowerCase.endsWith(extension)) {
+                    return extension;
+                }
+            }
+            return null;
+        }
+    }
+
+    private CompressedInput(CountingInputStream compressed, InputStream decompressed,
+            long fileSize, String name) {
+        super(decompressed, name);
+        this.compressed = compressed;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * @param fileName the file name
+     * @return the compression of the file, NONE if the extension isn't known
+     */
+    public static Compression getCompression(String fileName) {
+        for (Compression compression : Compression.values()) {
+            if (compression.getExtension(fileName) != null) {
+                return compression;
+            }
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * @param file the file
+     * @return true if the file is compressed in a format that can be read
+     */
+    public static boolean isCompressed(File file) {
+        return getCompression(file.getName()) != Compression.NONE;
+    }
+
+    /**
+     * @param fileName the file name, e.g. 01-22-2020.csv.gz
+     * @return the name without the compression extension, e.g. 01-22-2020.csv
+     */
+    public static String getUncompressedName(String fileName) {
+        String extension = getCompression(fileName).getExtension(fileName);
+        return (extension == null) ? fileName
+                : fileName.substring(0, fileName.length() - extension.length());
+    }
+
+    /**
+     * Start decompressing a file
+     * @param file the compressed file
+     * @return the decompressed bytes
+     * @throws IOException if the file can't be opened or isn't in the format of its extension
+     */
+    public static CompressedInput open(File file) throws IOException {
+        Compression compression = getCompression(file.getName());
+        CountingInputStream compressed = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(file), FILE_BUFFER_SIZE));
+        try {
+            InputStream decompressed;
+            switch (compression) {
+                case GZIP:
+                    // reads the members of a concatenated (e.g. bgzip) file one after the other
+                    decompressed = new GZIPInputStream(compressed, FILE_BUFFER_SIZE);
+                    break;
+                case ZSTD:
+                    decompressed = new ZstdCompressorInputStream(compressed);
+                    break;
+                case XZ:
+                    decompressed = new XZCompressorInputStream(compressed, true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a compressed file: " + file);
+            }
+            return new CompressedInput(compressed, decompressed, file.length(),
+                    "decompress " + file.getName());
+        } catch (IOException | RuntimeException e) {
+            compressed.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start decompressing a UTF-8 text file
+     * @param file the compressed file
+     * @return the decompressed text
+     * @throws IOException if the file can't be opened or isn't in the format of its extension
+     */
+    public static Reader openReader(File file) throws IOException {
+        return new InputStreamReader(open(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the fraction of the compressed file decompressed so far, from 0 to 1
+     */
+    public double getFractionRead() {
+        return (fileSize == 0) ? 1 : Math.min(1, (double) compressed.count / fileSize);
+    }
+
+    /**
+     * Counts the compressed bytes read by the read ahead thread
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * Maps the MD5 checksums of contents, e.g. the residues of sequences, to the ids of the
+ * objects storing them, so that identical contents are stored once. The 128 bits of a
+ * checksum are kept as two longs in an open addressing table, at most 40 bytes per content
+ * instead of more than a hundred in a map from the hexadecimal strings.
+ * @author Daniela Butano
+ */
+public final class ContentHashIndex {
+    /** Returned by get() for a checksum not in the index */
+    public static final int NOT_FOUND = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // the two halves of the checksum of each slot
+    private long[] keys = new long[2 * INITIAL_CAPACITY];
+    private int[] ids = newIds(INITIAL_CAPACITY);
+    private int size = 0;
+
+    /**
+     * @param md5checksum a checksum, in hexadecimal
+     * @return the id stored for the checksum, NOT_FOUND if there is none
+     */
+    public int get(String md5checksum) {
+        long high = parseHex(md5checksum, 0);
+        long low = parseHex(md5checksum, 16);
+        int slot = find(keys, ids, high, low);
+        return ids[slot];
+    }
+
+    /**
+     * @param md5checksum a checksum, in hexadecimal
+     * @param id the id of the object storing the content, replaces the previous one
+     */
+    public void put(String md5checksum, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid id " + id);
+        }
+        if (2 * (size + 1) > ids.length) {
+            grow();
+        }
+        long high = parseHex(md5checksum, 0);
+        long low = parseHex(md5checksum, 16);
+        int slot = find(keys, ids, high, low);
+        if (ids[slot] == NOT_FOUND) {
+            keys[2 * slot] = high;
+            keys[2 * slot + 1] = low;
+            size++;
+        }
+        ids[slot] = id;
+    }
+
+    /**
+     * @return the number of checksums
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the checksum, or the empty slot where it goes
+     */
+    private static int find(long[] keys, int[] ids, long high, long low) {
+        int mask = ids.length - 1;
+        // the bits of a checksum are already well mixed
+        int slot = (int) (low ^ (low >>> 32)) & mask;
+        while (ids[slot] != NOT_FOUND
+                && (keys[2 * slot] != high || keys[2 * slot + 1] != low)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newIds = newIds(ids.length * 2);
+        for (int slot = 0; slot < ids.length; slot++) {
+            if (ids[slot] != NOT_FOUND) {
+                long high = keys[2 * slot];
+                long low = keys[2 * slot + 1];
+                int newSlot = find(newKeys, newIds, high, low);
+                newKeys[2 * newSlot] = high;
+                newKeys[2 * newSlot + 1] = low;
+                newIds[newSlot] = ids[slot];
+            }
+        }
+        keys = newKeys;
+        ids = newIds;
+    }
+
+    private static int[] newIds(int capacity) {
+        int[] ids = new int[capacity];
+        Arrays.fill(ids, NOT_FOUND);
+        return ids;
+    }
+
+    private static long parseHex(String md5checksum, int start) {
+        if (md5checksum.length() != 32) {
+            throw new IllegalArgumentException("Not a MD5 checksum: " + md5checksum);
+        }
+        long value = 0;
+        for (int i = start; i < start + 16; i++) {
+            int digit = Character.digit(md5checksum.charAt(i), 16);
+            if (digit == -1) {
+                throw new IllegalArgumentException("Not a MD5 checksum: " + md5checksum);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
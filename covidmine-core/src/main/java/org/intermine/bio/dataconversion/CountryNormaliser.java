@@ -0,0 +1,113 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the country names used by the data sources into the names used in the mine.
+ * The names are looked up ignoring case, accents, punctuation and white spaces, so that
+ * "Cote d'Ivoire", "COTE D'IVOIRE" and "cote divoire " are the same name. Each alias maps
+ * to a canonical name, and each canonical name maps to itself.
+ * The lookup table is built once and never changes, the raw names already resolved are
+ * memoised in a concurrent map: a normaliser can be shared by converters and threads.
+ * @author Daniela Butano
+ */
+public final class CountryNormaliser {
+    // the raw names are a small set repeated on every row, the limit is only a safety net
+    private static final int MEMO_LIMIT = 100000;
+    // folded name to canonical name
+    private final Map<String, String> names;
+    private final Map<String, String> memo = new ConcurrentHashMap<>();
+
+    /**
+     * @param aliases the aliases, e.g. Mainland China=China
+     */
+    public CountryNormaliser(Properties aliases) {
+        Map<String, String> folded = new HashMap<>();
+        for (String alias : aliases.stringPropertyNames()) {
+            String name = aliases.getProperty(alias).trim();
+            folded.put(fold(name), name);
+        }
+        // an alias wins over a canonical name folding the same way
+        for (String alias : aliases.stringPropertyNames()) {
+            folded.put(fold(alias), aliases.getProperty(alias).trim());
+        }
+        this.names = folded;
+    }
+
+    /**
+     * @param country the country name as found in the data
+     * @return the canonical name, or the name itself if it's not known
+     */
+    public String normalise(String country) {
+        if (country == null) {
+            return null;
+        }
+        String canonical = memo.get(country);
+        if (canonical != null) {
+            return canonical;
+        }
+        canonical = names.get(fold(country));
+        if (canonical == null) {
+            canonical = country;
+        }
+        if (memo.size() < MEMO_LIMIT) {
+            memo.put(country, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * @param country a country name
+     * @return true if the name, or an alias folding the same way, is known
+     */
+    public boolean isKnown(String country) {
+        return country != null && names.containsKey(fold(country));
+    }
+
+    /**
+     * @return the number of names and aliases known
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param name a name
+     * @return the lower case name without accents, with only letters and digits separated
+     * by single spaces
+     */
+    static String fold(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean separator = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (separator && folded.length() > 0) {
+                    folded.append(' ');
+                }
+                separator = false;
+                folded.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK
+                    && c != '\'' && c != '\u2019') {
+                // apostrophes join the words: d'Ivoire is divoire
+                separator = true;
+            }
+        }
+        return folded.toString();
+    }
+}
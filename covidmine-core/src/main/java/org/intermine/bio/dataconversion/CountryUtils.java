@@ -22,7 +22,7 @@ public final class CountryUtils {
     private CountryUtils() {
     }
 
-    public static Properties getProperties() {
+    public static synchronized Properties getProperties() {
         if (prop == null) {
             try {
                 prop = new Properties();
@@ -30,7 +30,13 @@ public final class CountryUtils {
                 try {
                     is = CountryUtils.class.getClassLoader()
                             .getResourceAsStream("countries.properties");
-                    prop.load(is);
+                    if (is == null) {
+                        // every converter resolves its countries through here now
+                        LOG.warn("countries.properties not found, country names are not"
+                                + " normalised");
+                    } else {
+                        prop.load(is);
+                    }
                 } finally {
                     if (is != null) {
                         is.close();
@@ -43,11 +49,21 @@ public final class CountryUtils {
         return prop;
     }
 
+    /**
+     * @return the normaliser of the countries in countries.properties, shared by all the
+     * converters
+     */
+    public static CountryNormaliser getNormaliser() {
+        return NormaliserHolder.NORMALISER;
+    }
+
     public static String getCountry(String country) {
-        String newCountry = getProperties().getProperty(country);
-        if (newCountry == null) {
-            return country;
-        }
-        return  newCountry;
+        return getNormaliser().normalise(country);
+    }
+
+    // loaded on first use, without locking afterwards
+    private static final class NormaliserHolder {
+        private static final CountryNormaliser NORMALISER =
+                new CountryNormaliser(getProperties());
     }
 }
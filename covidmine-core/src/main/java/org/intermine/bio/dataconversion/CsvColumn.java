@@ -0,0 +1,243 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A field of a {@link CsvMapping} compiled against the header of a file. Each type has its
+ * own subclass holding the position of the column, so reading a date or a count from a row
+ * creates no string. A column which is not in the file reads as an empty field.
+ * @author Daniela Butano
+ */
+public abstract class CsvColumn {
+    /** Returned by getLong() when the field is empty or not valid */
+    public static final long INVALID = NumberLexer.INVALID;
+
+    private final String name;
+    /** the position of the column in the row, -1 if the file doesn't have it */
+    protected final int position;
+
+    CsvColumn(String name, int position) {
+        this.name = name;
+        this.position = position;
+    }
+
+    /**
+     * @return the name of the field in the mapping, e.g. totalConfirmed
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the position of the column in the row, -1 if the file doesn't have it
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @param row a row
+     * @return the trimmed field, empty if the file doesn't have the column. A lookup returns
+     * the value in its table, empty if the field is not in the table.
+     */
+    public CharSequence getField(CsvRow row) {
+        return (position == -1) ? StringUtils.EMPTY : row.getField(position);
+    }
+
+    /**
+     * @param row a row
+     * @return the value of the field as a string, empty if the file doesn't have the column.
+     * A lookup returns null if the field is not in its table.
+     */
+    public String getString(CsvRow row) {
+        return (position == -1) ? StringUtils.EMPTY : row.getString(position);
+    }
+
+    /**
+     * @param row a row
+     * @return a date as an epoch day or a count, INVALID if the field is empty or not valid
+     * @throws UnsupportedOperationException if the field is a string
+     */
+    public long getLong(CsvRow row) {
+        throw new UnsupportedOperationException("The field " + name + " is not a date or a count");
+    }
+
+    /**
+     * @param row a row
+     * @return true if the field is not empty and not a valid value of the type
+     */
+    public boolean isInvalid(CsvRow row) {
+        return false;
+    }
+
+    /**
+     * @return true if the field is a date or a count
+     */
+    public boolean isNumeric() {
+        return false;
+    }
+
+    /**
+     * @return true if the value of the field is looked up in a table
+     */
+    public boolean isLookup() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + position;
+    }
+
+    static CsvColumn string(String name, int position) {
+        return new StringColumn(name, position);
+    }
+
+    static CsvColumn constant(String name, String value) {
+        return new ConstantColumn(name, value);
+    }
+
+    static CsvColumn lookup(String name, int position, Map<String, String> table) {
+        return new LookupColumn(name, position, table);
+    }
+
+    static CsvColumn date(String name, int position, DateCodec codec) {
+        return new DateColumn(name, position, codec);
+    }
+
+    static CsvColumn count(String name, int position, boolean roundDecimals) {
+        return roundDecimals ? new DecimalCountColumn(name, position)
+                : new IntegerCountColumn(name, position);
+    }
+
+    private static final class StringColumn extends CsvColumn {
+        StringColumn(String name, int position) {
+            super(name, position);
+        }
+    }
+
+    private static final class ConstantColumn extends CsvColumn {
+        private final String value;
+
+        ConstantColumn(String name, String value) {
+            super(name, -1);
+            this.value = value;
+        }
+
+        @Override
+        public CharSequence getField(CsvRow row) {
+            return value;
+        }
+
+        @Override
+        public String getString(CsvRow row) {
+            return value;
+        }
+    }
+
+    private static final class LookupColumn extends CsvColumn {
+        private final Map<String, String> table;
+
+        LookupColumn(String name, int position, Map<String, String> table) {
+            super(name, position);
+            this.table = table;
+        }
+
+        @Override
+        public CharSequence getField(CsvRow row) {
+            String value = getString(row);
+            return (value == null) ? StringUtils.EMPTY : value;
+        }
+
+        @Override
+        public String getString(CsvRow row) {
+            return (position == -1) ? null : table.get(row.getString(position));
+        }
+
+        @Override
+        public boolean isLookup() {
+            return true;
+        }
+    }
+
+    private static final class DateColumn extends CsvColumn {
+        private final DateCodec codec;
+
+        DateColumn(String name, int position, DateCodec codec) {
+            super(name, position);
+            this.codec = codec;
+        }
+
+        @Override
+        public long getLong(CsvRow row) {
+            return (position == -1) ? INVALID : codec.parseEpochDay(row.getField(position));
+        }
+
+        @Override
+        public boolean isInvalid(CsvRow row) {
+            return getField(row).length() != 0 && getLong(row) == INVALID;
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+    }
+
+    /**
+     * A count which can be written as a decimal, e.g. 12.0, it is rounded
+     */
+    private static final class DecimalCountColumn extends CsvColumn {
+        DecimalCountColumn(String name, int position) {
+            super(name, position);
+        }
+
+        @Override
+        public long getLong(CsvRow row) {
+            return (position == -1) ? INVALID : NumberLexer.roundDecimal(row.getField(position));
+        }
+
+        @Override
+        public boolean isInvalid(CsvRow row) {
+            return getField(row).length() != 0 && getLong(row) == INVALID;
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+    }
+
+    private static final class IntegerCountColumn extends CsvColumn {
+        IntegerCountColumn(String name, int position) {
+            super(name, position);
+        }
+
+        @Override
+        public long getLong(CsvRow row) {
+            return (position == -1) ? INVALID : NumberLexer.parseInteger(row.getField(position));
+        }
+
+        @Override
+        public boolean isInvalid(CsvRow row) {
+            return getField(row).length() != 0 && getLong(row) == INVALID;
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link CsvMapping} compiled against the header line of a file: a {@link CsvColumn} per
+ * field, looked up by name once when the file is opened, and the projection of the columns
+ * to set on the tokenizer.
+ * @author Daniela Butano
+ */
+public final class CsvColumns {
+    private final Map<String, CsvColumn> columns = new LinkedHashMap<>();
+    private final CsvProjection projection;
+
+    CsvColumns(List<CsvColumn> columns, CsvProjection projection) {
+        for (CsvColumn column : columns) {
+            this.columns.put(column.getName(), column);
+        }
+        this.projection = projection;
+    }
+
+    /**
+     * @param field the name of a field of the mapping
+     * @return the column of the field
+     * @throws IllegalArgumentException if the mapping doesn't have the field
+     */
+    public CsvColumn get(String field) {
+        CsvColumn column = columns.get(field);
+        if (column == null) {
+            throw new IllegalArgumentException("No field " + field + " in the mapping");
+        }
+        return column;
+    }
+
+    /**
+     * @param field a field name
+     * @return true if the mapping has the field
+     */
+    public boolean contains(String field) {
+        return columns.containsKey(field);
+    }
+
+    /**
+     * @return the columns, in the order of the fields of the mapping
+     */
+    public List<CsvColumn> getColumns() {
+        return Collections.unmodifiableList(new ArrayList<>(columns.values()));
+    }
+
+    /**
+     * @return the columns read, to set on the tokenizer
+     */
+    public CsvProjection getProjection() {
+        return projection;
+    }
+}
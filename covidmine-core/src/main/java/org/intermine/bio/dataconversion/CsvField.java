@@ -0,0 +1,91 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * View of a trimmed field of the current record of a {@link CsvTokenizer}.
+ * There is one view per column, reused for every record, so it must not be kept after
+ * the tokenizer moves to the next record. Use toString() to keep the value.
+ * @author Daniela Butano
+ */
+public final class CsvField implements CharSequence {
+    private final CsvTokenizer tokenizer;
+    private final int index;
+
+    CsvField(CsvTokenizer tokenizer, int index) {
+        this.tokenizer = tokenizer;
+        this.index = index;
+    }
+
+    @Override
+    public int length() {
+        if (index >= tokenizer.getFieldCount()) {
+            return 0;
+        }
+        if (tokenizer.needsDecoding(index)) {
+            return tokenizer.getString(index).length();
+        }
+        int start = tokenizer.trimStart(index);
+        return tokenizer.trimEnd(index, start) - start;
+    }
+
+    @Override
+    public char charAt(int position) {
+        if (position < 0 || position >= length()) {
+            throw new IndexOutOfBoundsException("Position " + position + ", length "
+                    + length());
+        }
+        if (tokenizer.needsDecoding(index)) {
+            // escaped quotes or non ASCII characters, rare enough to decode every time
+            return tokenizer.getString(index).charAt(position);
+        }
+        return (char) tokenizer.charAt(tokenizer.trimStart(index) + position);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * @return true if the field is empty or blank
+     */
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    /**
+     * @param value a string
+     * @return true if the field has the same content, without creating a string
+     */
+    public boolean contentEquals(CharSequence value) {
+        int length = length();
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (index >= tokenizer.getFieldCount()) {
+            return StringUtils.EMPTY;
+        }
+        return tokenizer.getString(index);
+    }
+}
@@ -0,0 +1,246 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Describes the columns a converter reads from a csv file, loaded from a properties file
+ * such as owid-csv_mapping.properties. The fields property lists the fields, each field is
+ * set by these properties:
+ * <ul>
+ * <li>field.column: the header of the column, ignoring case. Alternatives are separated by |</li>
+ * <li>field.match: equals, the default, or contains if the header only has to contain it</li>
+ * <li>field.required: false if a file can miss the column, true by default</li>
+ * <li>field.type: string, the default, date, count (rounded if it is a decimal) or
+ * integer</li>
+ * <li>field.format: the pattern of a date, see {@link DateCodec}, yyyy-MM-dd by default</li>
+ * <li>field.lookup: a properties file on the classpath to look the value up in, e.g. to
+ * turn a state code into the state name</li>
+ * <li>field.value: the value of a field with no column, the same for every row</li>
+ * </ul>
+ * A header matches the first field it can in the order of the fields property. The other
+ * properties of the file are the settings of the converter, see getProperty().
+ * <p>
+ * The mapping is compiled against the header line of each file into {@link CsvColumns}.
+ * @author Daniela Butano
+ */
+public final class CsvMapping {
+    /**
+     * The type of a field
+     */
+    public enum Type {
+        /** the trimmed value */
+        STRING,
+        /** a date, read as an epoch day */
+        DATE,
+        /** a count, a decimal is rounded */
+        COUNT,
+        /** a count which must be an integer */
+        INTEGER
+    }
+
+    private final String name;
+    private final Properties properties;
+    private final List<Field> fields = new ArrayList<>();
+
+    /**
+     * @param name the name of the mapping, for the error messages
+     * @param properties the mapping
+     * @param loader the class loader the lookup tables are read with
+     */
+    public CsvMapping(String name, Properties properties, ClassLoader loader) {
+        this.name = name;
+        this.properties = properties;
+        String fieldList = properties.getProperty("fields");
+        if (StringUtils.isBlank(fieldList)) {
+            throw new IllegalArgumentException("No fields in the mapping " + name);
+        }
+        Map<String, Map<String, String>> tables = new HashMap<>();
+        for (String fieldName : StringUtils.split(fieldList, ", ")) {
+            fields.add(new Field(fieldName, loader, tables));
+        }
+    }
+
+    /**
+     * @param resource the name of the properties file, e.g. owid-csv_mapping.properties
+     * @param loader the class loader to read it and its lookup tables with
+     * @return the mapping
+     * @throws IllegalArgumentException if the file is not on the classpath or not valid
+     */
+    public static CsvMapping load(String resource, ClassLoader loader) {
+        return new CsvMapping(resource, loadProperties(resource, loader), loader);
+    }
+
+    /**
+     * @return the names of the fields, in the order of the fields property
+     */
+    public List<String> getFieldNames() {
+        List<String> names = new ArrayList<>();
+        for (Field field : fields) {
+            names.add(field.name);
+        }
+        return names;
+    }
+
+    /**
+     * @param key a setting of the converter
+     * @param defaultValue returned if the mapping doesn't have it
+     * @return the trimmed value
+     */
+    public String getProperty(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return (value == null) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Find the column of each field
+     * @param headerLine the header of a file
+     * @return the columns
+     * @throws RuntimeException if the header misses a required column
+     */
+    public CsvColumns compile(String[] headerLine) {
+        int[] positions = new int[fields.size()];
+        Arrays.fill(positions, -1);
+        for (int pos = 0; pos < headerLine.length; pos++) {
+            String header = headerLine[pos].trim().toLowerCase();
+            for (int i = 0; i < fields.size(); i++) {
+                if (fields.get(i).matches(header)) {
+                    positions[i] = pos;
+                    break;
+                }
+            }
+        }
+        Set<String> missing = new LinkedHashSet<>();
+        List<CsvColumn> columns = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (positions[i] == -1 && field.required) {
+                missing.add(field.name);
+            }
+            columns.add(field.compile(positions[i]));
+        }
+        if (!missing.isEmpty()) {
+            throw new RuntimeException("Missing columns " + missing + " in header "
+                    + Arrays.toString(headerLine));
+        }
+        return new CsvColumns(columns, new CsvProjection(positions));
+    }
+
+    private static Properties loadProperties(String resource, ClassLoader loader) {
+        Properties properties = new Properties();
+        try (InputStream is = loader.getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Can't find " + resource + " on the classpath");
+            }
+            properties.load(is);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't read " + resource, e);
+        }
+        return properties;
+    }
+
+    /**
+     * A field as written in the mapping
+     */
+    private final class Field {
+        private final String name;
+        private final String[] headers;
+        private final boolean contains;
+        private final boolean required;
+        private final Type type;
+        private final DateCodec dateCodec;
+        private final Map<String, String> lookup;
+        private final String value;
+
+        Field(String name, ClassLoader loader, Map<String, Map<String, String>> tables) {
+            this.name = name;
+            value = properties.getProperty(name + ".value");
+            String column = properties.getProperty(name + ".column");
+            if (value == null && StringUtils.isBlank(column)) {
+                throw new IllegalArgumentException("No column for the field " + name
+                        + " in the mapping " + CsvMapping.this.name);
+            }
+            headers = (value != null) ? new String[0]
+                    : StringUtils.split(column.trim().toLowerCase(), '|');
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = headers[i].trim();
+            }
+            String match = getProperty(name + ".match", "equals");
+            if (!"equals".equals(match) && !"contains".equals(match)) {
+                throw new IllegalArgumentException("Unknown match " + match + " for the field "
+                        + name + " in the mapping " + CsvMapping.this.name);
+            }
+            contains = "contains".equals(match);
+            required = value == null
+                    && Boolean.parseBoolean(getProperty(name + ".required", "true"));
+            String typeName = getProperty(name + ".type", "string");
+            try {
+                type = Type.valueOf(typeName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown type " + typeName + " for the field "
+                        + name + " in the mapping " + CsvMapping.this.name, e);
+            }
+            dateCodec = (type == Type.DATE)
+                    ? new DateCodec(getProperty(name + ".format", "yyyy-MM-dd")) : null;
+            String table = getProperty(name + ".lookup", null);
+            if (table == null) {
+                lookup = null;
+            } else if (tables.containsKey(table)) {
+                lookup = tables.get(table);
+            } else {
+                lookup = new HashMap<>();
+                Properties entries = loadProperties(table, loader);
+                for (String key : entries.stringPropertyNames()) {
+                    lookup.put(key, entries.getProperty(key));
+                }
+                tables.put(table, lookup);
+            }
+        }
+
+        private boolean matches(String header) {
+            for (String candidate : headers) {
+                if (contains ? header.contains(candidate) : header.equals(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private CsvColumn compile(int position) {
+            if (value != null) {
+                return CsvColumn.constant(name, value.trim());
+            }
+            switch (type) {
+                case DATE:
+                    return CsvColumn.date(name, position, dateCodec);
+                case COUNT:
+                    return CsvColumn.count(name, position, true);
+                case INTEGER:
+                    return CsvColumn.count(name, position, false);
+                default:
+                    return (lookup != null) ? CsvColumn.lookup(name, position, lookup)
+                            : CsvColumn.string(name, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * The columns of a csv file a converter reads. Given to a {@link CsvTokenizer} it stops
+ * tokenizing a record after the last of these columns and skips the rest of the line.
+ * @author Daniela Butano
+ */
+public final class CsvProjection {
+    private final int[] columns;
+    private final int lastColumn;
+
+    /**
+     * @param columns the positions of the columns read, -1 values (columns not found in
+     * the header) are ignored
+     */
+    public CsvProjection(int... columns) {
+        int[] sorted = Arrays.copyOf(columns, columns.length);
+        Arrays.sort(sorted);
+        int first = 0;
+        while (first < sorted.length && sorted[first] < 0) {
+            first++;
+        }
+        this.columns = Arrays.copyOfRange(sorted, first, sorted.length);
+        this.lastColumn = (this.columns.length == 0) ? -1 : this.columns[this.columns.length - 1];
+    }
+
+    /**
+     * @return the position of the last column read, -1 if none
+     */
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    /**
+     * @param column a column position
+     * @return true if the column is read
+     */
+    public boolean includes(int column) {
+        return Arrays.binarySearch(columns, column) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "columns " + Arrays.toString(columns);
+    }
+}
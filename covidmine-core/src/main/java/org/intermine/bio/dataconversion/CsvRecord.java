@@ -0,0 +1,50 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Copy of the current record of a {@link CsvTokenizer}, still valid after the tokenizer
+ * has moved on, e.g. while it waits in an {@link ItemPipeline} queue. Only the fields
+ * tokenized are copied: with a projection, the ones up to its last column.
+ * @author Daniela Butano
+ */
+public final class CsvRecord implements CsvRow {
+    private final String[] fields;
+    private final long lineNumber;
+
+    /**
+     * @param tokenizer the tokenizer, positioned on a record
+     */
+    public CsvRecord(CsvTokenizer tokenizer) {
+        this.fields = tokenizer.toStringArray();
+        this.lineNumber = tokenizer.getLineNumber();
+    }
+
+    @Override
+    public CharSequence getField(int index) {
+        return getString(index);
+    }
+
+    @Override
+    public String getString(int index) {
+        if (index < 0 || index >= fields.length) {
+            return StringUtils.EMPTY;
+        }
+        return fields[index];
+    }
+
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+}
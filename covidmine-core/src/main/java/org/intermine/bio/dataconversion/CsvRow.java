@@ -0,0 +1,35 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The fields of a csv record: the current record of a {@link CsvTokenizer}, or a
+ * {@link CsvRecord} copied from it to be handed to another thread.
+ * @author Daniela Butano
+ */
+public interface CsvRow {
+    /**
+     * @param index the field index, from 0
+     * @return the trimmed field, empty if the record has fewer fields
+     */
+    CharSequence getField(int index);
+
+    /**
+     * @param index the field index, from 0
+     * @return the trimmed value of the field, an empty string if the record has fewer fields
+     */
+    String getString(int index);
+
+    /**
+     * @return the line the record starts at, the first line is 1
+     */
+    long getLineNumber();
+}
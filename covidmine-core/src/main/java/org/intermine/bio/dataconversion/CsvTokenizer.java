@@ -0,0 +1,236 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Reads a csv file one record at a time without copying it: each field is only an
+ * offset and a length in the tokenizer buffer, and a String is created only when a value
+ * is asked for with getString().
+ * Quoted fields (with "" for an escaped quote and line breaks inside the quotes) are
+ * supported, empty lines are skipped.
+ * With a {@link CsvProjection} the tokenizer stops at the last column read and skips the
+ * rest of the line, only looking for quotes and the line end.
+ * The fields are only valid until the next call to next().
+ * @author Daniela Butano
+ */
+public abstract class CsvTokenizer implements CsvRow, Closeable {
+    protected static final int QUOTE = '"';
+    protected static final int LINE_FEED = '\n';
+    protected static final int CARRIAGE_RETURN = '\r';
+    private static final int INITIAL_FIELDS = 64;
+    protected final char separator;
+    // start and end (exclusive) of each field in the buffer, quotes excluded
+    protected int[] fieldStarts = new int[INITIAL_FIELDS];
+    protected int[] fieldEnds = new int[INITIAL_FIELDS];
+    // the field contains "" escaped quotes or non ASCII characters, it has to be decoded
+    protected boolean[] fieldDecode = new boolean[INITIAL_FIELDS];
+    protected int fieldCount = 0;
+    protected long lineNumber = 0;
+    // fields after this one are skipped
+    protected int lastColumn = Integer.MAX_VALUE;
+    private CsvField[] fields = new CsvField[INITIAL_FIELDS];
+
+    protected CsvTokenizer(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Open a csv file. The file is memory mapped, or decompressed ahead on another thread if
+     * it is a {@link CompressedInput} file, e.g. owid-covid-data.csv.gz.
+     * @param file the file
+     * @param separator the field separator
+     * @return the tokenizer
+     * @throws IOException if the file can't be opened
+     */
+    public static CsvTokenizer open(File file, char separator) throws IOException {
+        if (CompressedInput.isCompressed(file)) {
+            CompressedInput input = CompressedInput.open(file);
+            ReaderCsvTokenizer tokenizer = new ReaderCsvTokenizer(
+                    new InputStreamReader(input, StandardCharsets.UTF_8), separator);
+            tokenizer.setFractionRead(input::getFractionRead);
+            return tokenizer;
+        }
+        return new MappedCsvTokenizer(file, separator);
+    }
+
+    /**
+     * Read csv from a Reader, e.g. the one passed to BioFileConverter.process(Reader)
+     * @param reader the reader
+     * @param separator the field separator
+     * @return the tokenizer
+     */
+    public static CsvTokenizer open(Reader reader, char separator) {
+        return new ReaderCsvTokenizer(reader, separator);
+    }
+
+    /**
+     * Only tokenize the columns up to the last one in the projection. The fields after it
+     * are read as empty. Set it after reading the header.
+     * @param projection the columns read
+     */
+    public void setProjection(CsvProjection projection) {
+        lastColumn = (projection.getLastColumn() < 0) ? Integer.MAX_VALUE
+                : projection.getLastColumn();
+    }
+
+    /**
+     * Move to the next record
+     * @return false if there are no more records
+     * @throws IOException if the input can't be read
+     */
+    public abstract boolean next() throws IOException;
+
+    /**
+     * @return the number of fields in the current record
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the line the current record starts at, the first line is 1
+     */
+    @Override
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the fraction of the input read, from 0 to 1, -1 if the size of the input is
+     * not known
+     */
+    public double getFractionRead() {
+        return -1;
+    }
+
+    /**
+     * @param index the field index, from 0
+     * @return a view of the trimmed field, empty if the record has fewer fields
+     */
+    @Override
+    public CsvField getField(int index) {
+        if (index >= fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(index + 1, fields.length * 2));
+        }
+        CsvField field = fields[index];
+        if (field == null) {
+            field = new CsvField(this, index);
+            fields[index] = field;
+        }
+        return field;
+    }
+
+    /**
+     * @param index the field index, from 0
+     * @return true if the field is missing or contains only white spaces
+     */
+    public boolean isEmpty(int index) {
+        return index >= fieldCount || getField(index).length() == 0;
+    }
+
+    /**
+     * @param index the field index, from 0
+     * @return the trimmed value of the field, an empty string if the record has fewer fields
+     */
+    @Override
+    public String getString(int index) {
+        if (index >= fieldCount) {
+            return StringUtils.EMPTY;
+        }
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        if (start == end) {
+            return StringUtils.EMPTY;
+        }
+        if (fieldDecode[index]) {
+            return decode(fieldStarts[index], fieldEnds[index]).trim();
+        }
+        return decode(start, end);
+    }
+
+    /**
+     * @return all the fields of the current record as strings, e.g. for the header
+     */
+    public String[] toStringArray() {
+        String[] values = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            values[i] = getString(i);
+        }
+        return values;
+    }
+
+    /**
+     * @param position a position in the buffer
+     * @return the character, or the byte for the memory mapped tokenizer, at the position
+     */
+    protected abstract int charAt(int position);
+
+    /**
+     * @param start the start position in the buffer
+     * @param end the end position (exclusive)
+     * @return the range as a string, with "" turned into "
+     */
+    protected abstract String decode(int start, int end);
+
+    /**
+     * Record a field found by the subclass while parsing the current record
+     */
+    protected void addField(int start, int end, boolean decode) {
+        if (fieldCount == fieldStarts.length) {
+            int capacity = fieldCount * 2;
+            fieldStarts = Arrays.copyOf(fieldStarts, capacity);
+            fieldEnds = Arrays.copyOf(fieldEnds, capacity);
+            fieldDecode = Arrays.copyOf(fieldDecode, capacity);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldDecode[fieldCount] = decode;
+        fieldCount++;
+    }
+
+    /**
+     * @return true if the record just parsed is an empty line
+     */
+    protected boolean isEmptyLine() {
+        return fieldCount == 1 && fieldStarts[0] == fieldEnds[0] && !fieldDecode[0];
+    }
+
+    int trimStart(int index) {
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        while (start < end && charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    int trimEnd(int index, int trimmedStart) {
+        int end = fieldEnds[index];
+        while (end > trimmedStart && charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    boolean needsDecoding(int index) {
+        return fieldDecode[index];
+    }
+}
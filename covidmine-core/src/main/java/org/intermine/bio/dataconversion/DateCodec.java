@@ -0,0 +1,181 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Parses UTC dates made of year, month and day into epoch days or milliseconds without
+ * creating any object, to replace a SimpleDateFormat per row. A codec is immutable and
+ * can be shared by threads.
+ * As with SimpleDateFormat, a numeric field followed by a separator can have fewer digits
+ * than the pattern (2020-3-5 for yyyy-MM-dd) while fields not followed by a separator
+ * (yyyyMMdd) must have exactly the pattern length.
+ * @author Daniela Butano
+ */
+public final class DateCodec {
+    /** Returned when the value doesn't match the pattern or is not a valid date */
+    public static final long INVALID = Long.MIN_VALUE;
+    /** Date format used by OWID */
+    public static final DateCodec ISO_DATE = new DateCodec("yyyy-MM-dd");
+    /** Date format used by the COVID Tracking Project */
+    public static final DateCodec BASIC_DATE = new DateCodec("yyyyMMdd");
+    /** Date format of the GISAID daily report file names */
+    public static final DateCodec US_DATE = new DateCodec("MM-dd-yyyy");
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    // epoch day of each date between MEMO_FIRST_YEAR and MEMO_FIRST_YEAR + MEMO_YEARS,
+    // offset by MEMO_OFFSET so that 0 is an empty entry
+    private static final int MEMO_FIRST_YEAR = 1970;
+    private static final int MEMO_YEARS = 128;
+    private static final int MEMO_OFFSET = 1;
+    private static final int MEMO_INVALID = -1;
+    private static final AtomicIntegerArray MEMO = new AtomicIntegerArray(MEMO_YEARS * 12 * 31);
+
+    private final String pattern;
+
+    /**
+     * @param pattern a pattern made of y, M and d fields and separators, e.g. dd/MM/yyyy
+     */
+    public DateCodec(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (Character.isLetter(pattern.charAt(i)) && "yMd".indexOf(pattern.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Unsupported date pattern " + pattern);
+            }
+        }
+        this.pattern = pattern;
+    }
+
+    /**
+     * @param value the date
+     * @return the number of days from 1970-01-01, or INVALID
+     */
+    public long parseEpochDay(CharSequence value) {
+        int length = value.length();
+        int year = -1;
+        int month = -1;
+        int day = -1;
+        int pos = 0;
+        int patternPos = 0;
+        while (patternPos < pattern.length()) {
+            char field = pattern.charAt(patternPos);
+            if (field != 'y' && field != 'M' && field != 'd') {
+                if (pos >= length || value.charAt(pos) != field) {
+                    return INVALID;
+                }
+                pos++;
+                patternPos++;
+                continue;
+            }
+            int fieldEnd = patternPos;
+            while (fieldEnd < pattern.length() && pattern.charAt(fieldEnd) == field) {
+                fieldEnd++;
+            }
+            int width = fieldEnd - patternPos;
+            boolean delimited = fieldEnd == pattern.length()
+                    || !Character.isLetter(pattern.charAt(fieldEnd));
+            int number = 0;
+            int digits = 0;
+            while (pos < length && (delimited || digits < width)) {
+                int digit = value.charAt(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                number = number * 10 + digit;
+                digits++;
+                pos++;
+            }
+            if (digits == 0 || digits > 9 || (!delimited && digits < width)) {
+                return INVALID;
+            }
+            if (field == 'y') {
+                year = number;
+            } else if (field == 'M') {
+                month = number;
+            } else {
+                day = number;
+            }
+            patternPos = fieldEnd;
+        }
+        if (pos != length || year < 0 || month < 0 || day < 0) {
+            return INVALID;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * @param value the date
+     * @return the milliseconds from 1970-01-01T00:00:00Z, or INVALID
+     */
+    public long parseMillis(CharSequence value) {
+        long epochDay = parseEpochDay(value);
+        return (epochDay == INVALID) ? INVALID : epochDay * MILLIS_PER_DAY;
+    }
+
+    /**
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @param day the day of the month, from 1
+     * @return the number of days from 1970-01-01, or INVALID if there is no such day
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return INVALID;
+        }
+        int memoIndex = -1;
+        if (year >= MEMO_FIRST_YEAR && year < MEMO_FIRST_YEAR + MEMO_YEARS) {
+            memoIndex = ((year - MEMO_FIRST_YEAR) * 12 + month - 1) * 31 + day - 1;
+            int memo = MEMO.get(memoIndex);
+            if (memo != 0) {
+                return (memo == MEMO_INVALID) ? INVALID : memo - MEMO_OFFSET;
+            }
+        }
+        long epochDay = computeEpochDay(year, month, day);
+        if (memoIndex != -1) {
+            MEMO.lazySet(memoIndex,
+                    (epochDay == INVALID) ? MEMO_INVALID : (int) epochDay + MEMO_OFFSET);
+        }
+        return epochDay;
+    }
+
+    private static long computeEpochDay(int year, int month, int day) {
+        if (day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        // days from civil, the year starts in March so that February is the last month
+        long y = (month <= 2) ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
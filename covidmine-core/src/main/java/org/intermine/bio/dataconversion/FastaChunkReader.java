@@ -0,0 +1,382 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads the records of a FASTA file in file order, parsing it in chunks read through
+ * memory-mapped buffers. The file is cut into chunks of about chunkSize bytes at record
+ * boundaries (a &gt; at the start of a line), or with a {@link FastaIndex} only the records
+ * of a selection of its entries are read. With more than one thread the chunks are parsed on
+ * a bounded pool: at most CHUNKS_IN_FLIGHT_PER_THREAD chunks per thread are parsed ahead of
+ * the one being read. The records are returned to the calling thread, which stores them.
+ * @author Daniela Butano
+ */
+public final class FastaChunkReader implements Closeable {
+    /** The default size of a chunk, about 500 SARS-CoV-2 genomes */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+    private static final int SCAN_SIZE = 64 * 1024;
+    private static final int HEADER_SCAN_SIZE = 512;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File fastaFile;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final ExecutorService pool;
+    // the records to read, null to read the whole file
+    private final List<FastaIndex.Entry> entries;
+    private final Deque<Future<List<FastaRecord>>> inFlight = new ArrayDeque<>();
+    private Iterator<FastaRecord> records = Collections.<FastaRecord>emptyList().iterator();
+    private long nextChunk = 0;
+    private int nextEntry = 0;
+    private long readOffset = 0;
+
+    /**
+     * Read all the records of a file
+     * @param fastaFile the FASTA file, not compressed
+     * @param threads the number of threads parsing the chunks, 1 to parse them on the
+     * calling thread
+     * @param chunkSize the size of a chunk in bytes, a chunk holds at least one record
+     * @throws IOException if the file can't be opened
+     */
+    public FastaChunkReader(File fastaFile, int threads, int chunkSize) throws IOException {
+        this(fastaFile, null, threads, chunkSize, 0);
+    }
+
+    /**
+     * Read the records of a file from an offset, e.g. to resume a load
+     * @param fastaFile the FASTA file, not compressed
+     * @param threads the number of threads parsing the chunks, 1 to parse them on the
+     * calling thread
+     * @param chunkSize the size of a chunk in bytes, a chunk holds at least one record
+     * @param start the offset, the first record read is the first one starting at or after
+     * it
+     * @throws IOException if the file can't be opened
+     */
+    public FastaChunkReader(File fastaFile, int threads, int chunkSize, long start)
+        throws IOException {
+        this(fastaFile, null, threads, chunkSize, start);
+    }
+
+    /**
+     * Read some records of a file
+     * @param fastaFile the FASTA file, not compressed
+     * @param entries the entries of the records in the index of the file, in file order
+     * @param threads the number of threads parsing the chunks, 1 to parse them on the
+     * calling thread
+     * @param chunkSize the size of a chunk in bytes, a chunk holds at least one record
+     * @throws IOException if the file can't be opened
+     */
+    public FastaChunkReader(File fastaFile, List<FastaIndex.Entry> entries, int threads,
+            int chunkSize) throws IOException {
+        this(fastaFile, new ArrayList<>(entries), threads, chunkSize, 0);
+    }
+
+    private FastaChunkReader(File fastaFile, List<FastaIndex.Entry> entries, int threads,
+            int chunkSize, long start) throws IOException {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be at least 1, were "
+                    + threads + " and " + chunkSize);
+        }
+        this.fastaFile = fastaFile;
+        this.file = new RandomAccessFile(fastaFile, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.chunkSize = chunkSize;
+        this.maxInFlight = threads * CHUNKS_IN_FLIGHT_PER_THREAD;
+        this.entries = entries;
+        if (start > 0) {
+            try {
+                nextChunk = findRecordStart(start);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+        this.pool = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    /**
+     * @return the next record, null at the end of the file
+     * @throws IOException if the file can't be read
+     */
+    public FastaRecord next() throws IOException {
+        while (!records.hasNext()) {
+            submitChunks();
+            if (inFlight.isEmpty()) {
+                readOffset = fileSize;
+                return null;
+            }
+            records = take(inFlight.poll()).iterator();
+        }
+        return records.next();
+    }
+
+    /**
+     * @return the fraction of the file read
+     */
+    public double getFractionRead() {
+        return (fileSize == 0) ? 1 : (double) readOffset / fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        file.close();
+    }
+
+    private void submitChunks() throws IOException {
+        while (inFlight.size() < (pool == null ? 1 : maxInFlight)) {
+            Callable<List<FastaRecord>> chunk = (entries == null) ? nextChunk() : nextEntries();
+            if (chunk == null) {
+                return;
+            }
+            if (pool == null) {
+                FutureTask<List<FastaRecord>> task = new FutureTask<>(chunk);
+                task.run();
+                inFlight.add(task);
+            } else {
+                inFlight.add(pool.submit(chunk));
+            }
+        }
+    }
+
+    private Callable<List<FastaRecord>> nextChunk() throws IOException {
+        if (nextChunk >= fileSize) {
+            return null;
+        }
+        final long start = nextChunk;
+        final long end = findRecordStart(Math.min(start + chunkSize, fileSize));
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("The record at " + start + " of " + fastaFile
+                    + " is longer than 2GB");
+        }
+        nextChunk = end;
+        return () -> {
+            List<FastaRecord> chunkRecords = new ArrayList<>();
+            new ChunkParser().parse(map(start, end), start, chunkRecords);
+            return chunkRecords;
+        };
+    }
+
+    private Callable<List<FastaRecord>> nextEntries() {
+        if (nextEntry == entries.size()) {
+            return null;
+        }
+        int first = nextEntry;
+        long bytes = 0;
+        while (nextEntry < entries.size() && bytes < chunkSize) {
+            FastaIndex.Entry entry = entries.get(nextEntry++);
+            bytes += entry.getEnd() - entry.getOffset();
+        }
+        final List<FastaIndex.Entry> chunkEntries = entries.subList(first, nextEntry);
+        return () -> {
+            List<FastaRecord> chunkRecords = new ArrayList<>();
+            ChunkParser parser = new ChunkParser();
+            for (FastaIndex.Entry entry : chunkEntries) {
+                long start = findHeaderStart(entry);
+                int found = chunkRecords.size();
+                parser.parse(map(start, entry.getEnd()), start, chunkRecords);
+                if (chunkRecords.size() != found + 1) {
+                    throw new IOException("The index of " + fastaFile + " doesn't match the"
+                            + " file at " + entry.getName());
+                }
+            }
+            return chunkRecords;
+        };
+    }
+
+    private List<FastaRecord> take(Future<List<FastaRecord>> chunk) throws IOException {
+        try {
+            List<FastaRecord> chunkRecords = chunk.get();
+            if (!chunkRecords.isEmpty()) {
+                readOffset = chunkRecords.get(0).getOffset();
+            }
+            return chunkRecords;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading a chunk", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Error parsing a chunk", cause);
+        }
+    }
+
+    private ByteBuffer map(long start, long end) throws IOException {
+        if (end > fileSize || end < start) {
+            throw new IOException("No bytes " + start + " to " + end + " in " + fastaFile);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * @param from an offset in the file, greater than 0
+     * @return the offset of the first record starting at or after from, the file size if
+     * there is none
+     */
+    long findRecordStart(long from) throws IOException {
+        if (from >= fileSize) {
+            return fileSize;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        // a record starts with a > after a line end
+        long position = from - 1;
+        byte previous = 0;
+        while (position < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '>' && previous == '\n') {
+                    return position + i;
+                }
+                previous = b;
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * The index only has the offset of the residues, the header is the line before them
+     */
+    private long findHeaderStart(FastaIndex.Entry entry) throws IOException {
+        // the line end of the header
+        long end = entry.getOffset() - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SCAN_SIZE);
+        while (end > 0) {
+            long start = Math.max(0, end - HEADER_SCAN_SIZE);
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException(fastaFile + " was truncated while reading it");
+                }
+            }
+            for (int i = buffer.limit() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses the records of a chunk, the buffers are reused for each record
+     */
+    private static final class ChunkParser {
+        private final MessageDigest md5;
+        private byte[] scratch = new byte[32 * 1024];
+
+        ChunkParser() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+
+        /**
+         * @param bytes the chunk, starting with a record unless it is the start of the file
+         * @param offset the offset of the chunk in the file
+         * @param chunkRecords the list the records are added to
+         */
+        void parse(ByteBuffer bytes, long offset, List<FastaRecord> chunkRecords) {
+            int length = bytes.limit();
+            int pos = 0;
+            // anything before the first record, e.g. blank lines
+            while (pos < length && !(bytes.get(pos) == '>'
+                    && (pos == 0 || bytes.get(pos - 1) == '\n'))) {
+                pos++;
+            }
+            while (pos < length) {
+                int recordStart = pos;
+                int size = 0;
+                pos++;
+                while (pos < length && bytes.get(pos) != '\n') {
+                    add(size++, bytes.get(pos++));
+                }
+                if (size > 0 && scratch[size - 1] == '\r') {
+                    size--;
+                }
+                String header = new String(scratch, 0, size, StandardCharsets.UTF_8);
+                size = 0;
+                pos++;
+                while (pos < length && !(bytes.get(pos) == '>' && bytes.get(pos - 1) == '\n')) {
+                    byte b = bytes.get(pos++);
+                    if (b > ' ') {
+                        add(size++, b);
+                    }
+                }
+                md5.update(scratch, 0, size);
+                chunkRecords.add(new FastaRecord(header,
+                        new String(scratch, 0, size, StandardCharsets.ISO_8859_1),
+                        toHex(md5.digest()), offset + recordStart,
+                        offset + Math.min(pos, length)));
+            }
+        }
+
+        private void add(int index, byte b) {
+            if (index == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[index] = b;
+        }
+
+        private static String toHex(byte[] digest) {
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+                hex[2 * i + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The fields of a NCBI SARS-CoV-2 sequence header, read in a single pass without a regular
+ * expression. The header is kept and the fields are views on it, so parsing a header
+ * creates no object: the instance is meant to be reused for every sequence of a file.
+ * These layouts are read:
+ * <ul>
+ * <li>the NCBI Virus layout: <code>&gt;MT123291 |China|complete</code>, and for the
+ * reference sequence <code>&gt;NC_045512 |China|refseq| complete</code>. The flags after
+ * the country can come in any order, the country can have a region, e.g. USA: CA, and be
+ * empty. A flag other than refseq, complete and partial is read as complete.</li>
+ * <li>the GenBank layout: <code>&gt;MN908947.3 Severe acute respiratory syndrome
+ * coronavirus 2 isolate Wuhan-Hu-1, complete genome</code>, which has no country.</li>
+ * </ul>
+ * @author Daniela Butano
+ */
+public final class FastaHeader {
+    /** The flag of the reference sequence */
+    public static final String REFSEQ = "refseq";
+    private static final String COMPLETE = "complete";
+    private static final String PARTIAL = "partial";
+
+    /**
+     * Whether the sequence is a complete genome
+     */
+    public enum Completeness {
+        /** a complete genome */
+        COMPLETE("Y"),
+        /** a partial genome */
+        PARTIAL("N"),
+        /** the header doesn't say */
+        UNKNOWN("N/A");
+
+        private final String flag;
+
+        Completeness(String flag) {
+            this.flag = flag;
+        }
+
+        /**
+         * @return the value of the nucleotideCompleteness attribute: Y, N or N/A
+         */
+        public String getFlag() {
+            return flag;
+        }
+    }
+
+    private final Field identifier = new Field();
+    private final Field country = new Field();
+    private CharSequence header;
+    private boolean reference;
+    private Completeness completeness;
+
+    /**
+     * Read a header, the fields of the previous one are dropped
+     * @param line the header, with or without the &gt;
+     */
+    public void parse(CharSequence line) {
+        header = line;
+        reference = false;
+        completeness = Completeness.UNKNOWN;
+        country.set(0, 0);
+        int length = line.length();
+        int start = (length > 0 && line.charAt(0) == '>') ? 1 : 0;
+        int bar = indexOf(line, '|', start);
+        if (bar == -1) {
+            parseDescription(start, length);
+            return;
+        }
+        identifier.set(start, bar);
+        int tokenStart = bar + 1;
+        int tokenEnd = indexOf(line, '|', tokenStart);
+        if (tokenEnd == -1) {
+            tokenEnd = length;
+        }
+        // the region after a colon is not part of the country
+        int colon = indexOf(line, ':', tokenStart);
+        country.set(tokenStart, (colon != -1 && colon < tokenEnd) ? colon : tokenEnd);
+        while (tokenEnd < length) {
+            tokenStart = tokenEnd + 1;
+            tokenEnd = indexOf(line, '|', tokenStart);
+            if (tokenEnd == -1) {
+                tokenEnd = length;
+            }
+            readFlag(tokenStart, tokenEnd);
+        }
+    }
+
+    /**
+     * The GenBank layout: the accession, a space and the description of the sequence
+     */
+    private void parseDescription(int start, int end) {
+        int space = start;
+        while (space < end && !Character.isWhitespace(header.charAt(space))) {
+            space++;
+        }
+        identifier.set(start, space);
+        for (int i = space; i < end; i++) {
+            if (i > 0 && Character.isLetter(header.charAt(i - 1))) {
+                // not the start of a word, e.g. incomplete
+                continue;
+            }
+            if (regionMatches(i, COMPLETE)) {
+                completeness = Completeness.COMPLETE;
+            } else if (regionMatches(i, PARTIAL)) {
+                completeness = Completeness.PARTIAL;
+            }
+        }
+    }
+
+    private void readFlag(int start, int end) {
+        for (int i = start; i + REFSEQ.length() <= end; i++) {
+            if (regionMatches(i, REFSEQ)) {
+                // the reference sequence is a complete genome
+                reference = true;
+                completeness = Completeness.COMPLETE;
+                return;
+            }
+        }
+        int first = trimStart(start, end);
+        if (first < end && regionMatches(first, COMPLETE)) {
+            completeness = Completeness.COMPLETE;
+        } else if (first < end && regionMatches(first, PARTIAL)) {
+            completeness = Completeness.PARTIAL;
+        } else if (first < end && completeness == Completeness.UNKNOWN) {
+            // as NCBI Virus has always been read, any other flag means a complete genome
+            completeness = Completeness.COMPLETE;
+        }
+    }
+
+    /**
+     * @return the identifier of the sequence, e.g. MT123291
+     */
+    public CharSequence getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the country, null if the header has none. The view is only valid until the
+     * next header is parsed.
+     */
+    public CharSequence getCountry() {
+        return (country.length() == 0) ? null : country;
+    }
+
+    /**
+     * @return true if the sequence is the reference sequence
+     */
+    public boolean isReference() {
+        return reference;
+    }
+
+    /**
+     * @return whether the sequence is complete
+     */
+    public Completeness getCompleteness() {
+        return completeness;
+    }
+
+    @Override
+    public String toString() {
+        return identifier + "|" + country + "|" + (reference ? REFSEQ + "|" : "")
+                + completeness;
+    }
+
+    private boolean regionMatches(int start, String word) {
+        if (start + word.length() > header.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(header.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && Character.isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int indexOf(CharSequence value, char c, int from) {
+        for (int i = from; i < value.length(); i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A trimmed field of the header
+     */
+    private final class Field implements CharSequence {
+        private int start;
+        private int end;
+
+        private void set(int from, int to) {
+            start = trimStart(from, to);
+            end = to;
+            while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+                end--;
+            }
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("Position " + index + ", length "
+                        + length());
+            }
+            return header.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return header.subSequence(start, end).toString();
+        }
+    }
+}
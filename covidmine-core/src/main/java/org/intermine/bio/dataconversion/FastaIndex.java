@@ -0,0 +1,364 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The index of a FASTA file in the samtools faidx format, sequences.fasta.fai: a line per
+ * record with the name (the first word of the header), the number of residues, the offset
+ * of the first residue, the number of residues per line and the number of bytes per line.
+ * Every line of a record but the last must have the same length for the file to be indexed.
+ * The index is built by reading the file through memory-mapped windows.
+ * @author Daniela Butano
+ */
+public final class FastaIndex {
+    private static final Logger LOG = Logger.getLogger(FastaIndex.class);
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName = new HashMap<>();
+
+    private FastaIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        for (Entry entry : entries) {
+            byName.putIfAbsent(entry.getName(), entry);
+        }
+    }
+
+    /**
+     * Read the index of a FASTA file, sequences.fasta.fai, or build it if the file has none
+     * or it is older than the FASTA file. A built index is written next to the FASTA file
+     * when the directory can be written.
+     * @param fastaFile the FASTA file
+     * @return the index
+     * @throws IOException if the file can't be read or indexed
+     */
+    public static FastaIndex load(File fastaFile) throws IOException {
+        File indexFile = getIndexFile(fastaFile);
+        if (indexFile.isFile() && indexFile.lastModified() >= fastaFile.lastModified()) {
+            return read(indexFile);
+        }
+        FastaIndex index = build(fastaFile);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            LOG.warn("Can't write the index " + indexFile + ", it will be built again", e);
+        }
+        return index;
+    }
+
+    /**
+     * @param fastaFile a FASTA file
+     * @return its index file, with the .fai extension added
+     */
+    public static File getIndexFile(File fastaFile) {
+        return new File(fastaFile.getPath() + ".fai");
+    }
+
+    /**
+     * @param indexFile a .fai file
+     * @return the index
+     * @throws IOException if the index can't be read or is not valid
+     */
+    public static FastaIndex read(File indexFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new IOException("Invalid line in " + indexFile + ": " + line);
+                }
+                try {
+                    entries.add(new Entry(fields[0], Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+                            Integer.parseInt(fields[4])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid line in " + indexFile + ": " + line, e);
+                }
+            }
+        }
+        return new FastaIndex(entries);
+    }
+
+    /**
+     * Index a FASTA file
+     * @param fastaFile the FASTA file, not compressed
+     * @return the index
+     * @throws IOException if the file can't be read, or a record has lines of different
+     * lengths
+     */
+    public static FastaIndex build(File fastaFile) throws IOException {
+        Scanner scanner = new Scanner();
+        try (RandomAccessFile file = new RandomAccessFile(fastaFile, "r")) {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            for (long start = 0; start < size; start += WINDOW_SIZE) {
+                int length = (int) Math.min(WINDOW_SIZE, size - start);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        length);
+                for (int i = 0; i < length; i++) {
+                    scanner.accept(window.get(i), start + i);
+                }
+            }
+            scanner.finish(size);
+        }
+        return new FastaIndex(scanner.entries);
+    }
+
+    /**
+     * Write the index in the faidx format
+     * @param indexFile the file
+     * @throws IOException if the file can't be written
+     */
+    public void write(File indexFile) throws IOException {
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp),
+                StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                out.write(entry.toString());
+                out.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the records, in file order
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param name the name of a record, the first word of its header
+     * @return the first record with the name, null if there is none
+     */
+    public Entry get(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A record of the index
+     */
+    public static final class Entry {
+        private final String name;
+        private final long length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineWidth;
+
+        /**
+         * @param name the first word of the header
+         * @param length the number of residues
+         * @param offset the offset of the first residue in the file
+         * @param lineBases the number of residues per line
+         * @param lineWidth the number of bytes per line, with the line end
+         */
+        public Entry(String name, long length, long offset, int lineBases, int lineWidth) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        /**
+         * @return the first word of the header
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of residues
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the offset of the first residue in the file
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the number of residues per line
+         */
+        public int getLineBases() {
+            return lineBases;
+        }
+
+        /**
+         * @return the number of bytes per line, with the line end
+         */
+        public int getLineWidth() {
+            return lineWidth;
+        }
+
+        /**
+         * @return the offset after the last residue
+         */
+        public long getEnd() {
+            if (lineBases == 0) {
+                return offset;
+            }
+            return offset + (length / lineBases) * lineWidth + length % lineBases;
+        }
+
+        @Override
+        public String toString() {
+            return name + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineWidth;
+        }
+    }
+
+    /**
+     * Reads the file a byte at a time, the state is kept between the mapped windows
+     */
+    private static final class Scanner {
+        private static final int BEFORE_FIRST_RECORD = 0;
+        private static final int HEADER = 1;
+        private static final int RESIDUES = 2;
+
+        private final List<Entry> entries = new ArrayList<>();
+        private final ByteArrayOutputStream name = new ByteArrayOutputStream();
+        private int state = BEFORE_FIRST_RECORD;
+        private boolean lineStart = true;
+        private boolean nameRead;
+        private long offset;
+        private long length;
+        private int lineBases;
+        private int lineWidth;
+        private int bases;
+        private int width;
+        // a line shorter than the first one, it must be the last
+        private boolean lastLineRead;
+
+        void accept(byte b, long position) throws IOException {
+            if (lineStart && b == '>') {
+                finishRecord(position);
+                state = HEADER;
+                name.reset();
+                nameRead = false;
+                lineStart = false;
+                return;
+            }
+            lineStart = b == '\n';
+            if (state == HEADER) {
+                if (b == '\n') {
+                    state = RESIDUES;
+                    offset = position + 1;
+                    length = 0;
+                    lineBases = -1;
+                    lineWidth = 0;
+                    bases = 0;
+                    width = 0;
+                    lastLineRead = false;
+                } else if (!nameRead) {
+                    if (b == ' ' || b == '\t' || b == '\r') {
+                        nameRead = true;
+                    } else {
+                        name.write(b);
+                    }
+                }
+            } else if (state == RESIDUES) {
+                width++;
+                if (b == '\n') {
+                    endLine(false);
+                } else if (b != '\r') {
+                    bases++;
+                }
+            }
+        }
+
+        void finish(long size) throws IOException {
+            finishRecord(size);
+        }
+
+        /**
+         * @param endOfFile true for a last line without a line end
+         */
+        private void endLine(boolean endOfFile) throws IOException {
+            if (bases > 0) {
+                if (lastLineRead || (lineBases != -1 && (bases > lineBases
+                        || (bases == lineBases && width != lineWidth && !endOfFile)))) {
+                    throw new IOException("Different line length in sequence "
+                            + getName());
+                }
+                if (lineBases == -1) {
+                    lineBases = bases;
+                    lineWidth = width;
+                } else if (bases < lineBases) {
+                    lastLineRead = true;
+                }
+                length += bases;
+            } else {
+                // a blank line can only be followed by other blank lines
+                lastLineRead = true;
+            }
+            bases = 0;
+            width = 0;
+        }
+
+        private void finishRecord(long position) throws IOException {
+            if (state == HEADER) {
+                // a header without a line end at the end of the file
+                entries.add(new Entry(getName(), 0, position, 0, 0));
+            } else if (state == RESIDUES) {
+                if (width > 0) {
+                    endLine(true);
+                }
+                entries.add(new Entry(getName(), length, offset, Math.max(lineBases, 0),
+                        lineWidth));
+            }
+        }
+
+        private String getName() {
+            return new String(name.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * A record of a FASTA file read by a {@link FastaChunkReader}: the header and the residues,
+ * with the line ends removed.
+ * @author Daniela Butano
+ */
+public final class FastaRecord {
+    private final String header;
+    private final String residues;
+    private final String md5checksum;
+    private final long offset;
+    private final long end;
+
+    /**
+     * @param header the header line, without the &gt;
+     * @param residues the residues
+     * @param md5checksum the MD5 checksum of the residues, in hexadecimal
+     * @param offset the offset of the record in the file
+     * @param end the offset after the last residue
+     */
+    public FastaRecord(String header, String residues, String md5checksum, long offset,
+            long end) {
+        this.header = header;
+        this.residues = residues;
+        this.md5checksum = md5checksum;
+        this.offset = offset;
+        this.end = end;
+    }
+
+    /**
+     * @return the header line, without the &gt;
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the residues
+     */
+    public String getResidues() {
+        return residues;
+    }
+
+    /**
+     * @return the number of residues
+     */
+    public int getLength() {
+        return residues.length();
+    }
+
+    /**
+     * @return the MD5 checksum of the residues, in lower case hexadecimal
+     */
+    public String getMd5checksum() {
+        return md5checksum;
+    }
+
+    /**
+     * @return the offset of the &gt; of the record in the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the offset after the last residue, or after the line ends following it: the
+     * offset where a load which has stored this record resumes
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return header + " (" + residues.length() + " residues at " + offset + ")";
+    }
+}
@@ -0,0 +1,61 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of an input file read by a converter, from when it is opened to when it is
+ * closed
+ * @author Daniela Butano
+ */
+@Name("org.intermine.bio.dataconversion.FileRead")
+@Label("File Read")
+@Category({"InterMine", "Data Conversion"})
+@Description("An input file read by a converter, from open to close")
+@StackTrace(false)
+public class FileReadEvent extends jdk.jfr.Event {
+    @Label("Source")
+    String source;
+
+    @Label("File")
+    String fileName;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Rows")
+    long rows;
+
+    /**
+     * @param source the name of the source, e.g. gisaid-csv
+     * @param fileName the name of the file
+     * @param size the size of the file in bytes
+     */
+    public FileReadEvent(String source, String fileName, long size) {
+        this.source = source;
+        this.fileName = fileName;
+        this.size = size;
+    }
+
+    /**
+     * @param rows the rows read from the file
+     */
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+}
@@ -0,0 +1,311 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes a genome as its differences with a reference genome, e.g. a SARS-CoV-2 genome
+ * against NC_045512, which differs from it at a few dozen positions. The delta is a list of
+ * variants separated by commas, in the order of their positions in the reference, counted
+ * from 1:
+ * <ul>
+ * <li><code>C241T</code>: the C at 241 is replaced by a T</li>
+ * <li><code>N21000-21300</code>: the residues from 21000 to 21300 are unknown, Ns</li>
+ * <li><code>del11288-11296</code>: the residues from 11288 to 11296 are deleted, or
+ * <code>del11288</code> for one residue. The missing ends of a partial genome are deletions
+ * too.</li>
+ * <li><code>ins22204:GAG</code>: GAG is inserted after 22204, 0 for the start</li>
+ * </ul>
+ * The genome is aligned to the reference by walking both while they match, and after a
+ * difference by looking for the next k-mer of the genome found once in the reference.
+ * @author Daniela Butano
+ */
+public final class GenomeDelta {
+    private static final int K = 16;
+    private static final int REPEATED = -1;
+    // a run of at least this many Ns is written as one variant
+    private static final int MIN_N_RUN = 2;
+
+    private final String reference;
+    // the position of each k-mer found in the reference, REPEATED if it is there more than once
+    private final Map<Integer, Integer> kmers = new HashMap<>();
+
+    /**
+     * @param reference the residues of the reference genome
+     */
+    public GenomeDelta(String reference) {
+        this.reference = reference;
+        int code = 0;
+        int valid = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            int base = encodeBase(reference.charAt(i));
+            if (base == -1) {
+                valid = 0;
+                continue;
+            }
+            code = (code << 2) | base;
+            if (++valid >= K) {
+                int start = i - K + 1;
+                Integer previous = kmers.putIfAbsent(code, start);
+                if (previous != null) {
+                    kmers.put(code, REPEATED);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the residues of the reference genome
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * @param genome the residues of a genome
+     * @return its variants against the reference, empty if it is the same
+     */
+    public String encode(CharSequence genome) {
+        StringBuilder delta = new StringBuilder();
+        int n = reference.length();
+        int m = genome.length();
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            int same = matchLength(genome, i, j);
+            i += same;
+            j += same;
+            if (i == n || j == m) {
+                break;
+            }
+            long anchor = findAnchor(genome, i, j);
+            int anchorI = (anchor == -1) ? n : (int) (anchor >>> 32);
+            int anchorJ = (anchor == -1) ? m : (int) anchor;
+            appendRegion(delta, genome, i, anchorI, j, anchorJ);
+            i = anchorI;
+            j = anchorJ;
+        }
+        appendRegion(delta, genome, i, n, j, m);
+        return delta.toString();
+    }
+
+    /**
+     * @param delta variants of a genome against the reference
+     * @return the residues of the genome
+     * @throws IllegalArgumentException if the delta is not valid for the reference
+     */
+    public String decode(String delta) {
+        return decode(reference, delta);
+    }
+
+    /**
+     * Rebuild a genome from the reference and its variants
+     * @param reference the residues of the reference genome
+     * @param delta variants of the genome against the reference, as encoded
+     * @return the residues of the genome
+     * @throws IllegalArgumentException if the delta is not valid for the reference
+     */
+    public static String decode(CharSequence reference, String delta) {
+        StringBuilder genome = new StringBuilder(reference.length() + 64);
+        // the next residue of the reference to copy
+        int cursor = 0;
+        int start = 0;
+        while (start < delta.length()) {
+            int end = delta.indexOf(',', start);
+            if (end == -1) {
+                end = delta.length();
+            }
+            String variant = delta.substring(start, end);
+            start = end + 1;
+            try {
+                cursor = apply(reference, variant, cursor, genome);
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid variant " + variant, e);
+            }
+        }
+        genome.append(reference, cursor, reference.length());
+        return genome.toString();
+    }
+
+    /**
+     * @return the new cursor
+     */
+    private static int apply(CharSequence reference, String variant, int cursor,
+            StringBuilder genome) {
+        int position;
+        int end;
+        if (variant.startsWith("ins")) {
+            int colon = variant.indexOf(':');
+            position = Integer.parseInt(variant.substring(3, colon));
+            copy(reference, cursor, position, genome, variant);
+            genome.append(variant, colon + 1, variant.length());
+            return position;
+        }
+        if (variant.startsWith("del")) {
+            int dash = variant.indexOf('-');
+            position = Integer.parseInt(variant.substring(3, dash == -1 ? variant.length()
+                    : dash));
+            end = (dash == -1) ? position : Integer.parseInt(variant.substring(dash + 1));
+            copy(reference, cursor, position - 1, genome, variant);
+            checkRange(reference, position, end, variant);
+            return end;
+        }
+        int dash = variant.indexOf('-');
+        if (variant.charAt(0) == 'N' && dash != -1) {
+            position = Integer.parseInt(variant.substring(1, dash));
+            end = Integer.parseInt(variant.substring(dash + 1));
+            copy(reference, cursor, position - 1, genome, variant);
+            checkRange(reference, position, end, variant);
+            for (int k = position; k <= end; k++) {
+                genome.append('N');
+            }
+            return end;
+        }
+        // a substitution
+        position = Integer.parseInt(variant.substring(1, variant.length() - 1));
+        copy(reference, cursor, position - 1, genome, variant);
+        checkRange(reference, position, position, variant);
+        if (reference.charAt(position - 1) != variant.charAt(0)) {
+            throw new IllegalArgumentException("The reference has "
+                    + reference.charAt(position - 1) + " at " + position + ", not " + variant);
+        }
+        genome.append(variant.charAt(variant.length() - 1));
+        return position;
+    }
+
+    private static void copy(CharSequence reference, int cursor, int to, StringBuilder genome,
+            String variant) {
+        if (to < cursor || to > reference.length()) {
+            throw new IllegalArgumentException("Variant " + variant
+                    + " out of order or after the end of the reference");
+        }
+        genome.append(reference, cursor, to);
+    }
+
+    private static void checkRange(CharSequence reference, int position, int end,
+            String variant) {
+        if (position < 1 || end < position || end > reference.length()) {
+            throw new IllegalArgumentException("Invalid positions in " + variant);
+        }
+    }
+
+    /**
+     * @return the number of residues matching from reference[i] and genome[j]. A loop of
+     * its own is compiled much tighter than the one of encode().
+     */
+    private int matchLength(CharSequence genome, int i, int j) {
+        int length = Math.min(reference.length() - i, genome.length() - j);
+        int k = 0;
+        while (k < length && reference.charAt(i + k) == genome.charAt(j + k)) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * @return the positions in the reference (high int) and the genome (low int) of the next
+     * k-mer of the genome found once in the reference, at or after i, -1 if there is none
+     */
+    private long findAnchor(CharSequence genome, int i, int j) {
+        int code = 0;
+        int valid = 0;
+        for (int g = j; g < genome.length(); g++) {
+            int base = encodeBase(genome.charAt(g));
+            if (base == -1) {
+                valid = 0;
+                continue;
+            }
+            code = (code << 2) | base;
+            if (++valid >= K) {
+                Integer position = kmers.get(code);
+                if (position != null && position >= i) {
+                    return ((long) position << 32) | (g - K + 1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Append the variants turning reference[i, iEnd) into genome[j, jEnd)
+     */
+    private void appendRegion(StringBuilder delta, CharSequence genome, int i, int iEnd,
+            int j, int jEnd) {
+        // the end of the region can match, e.g. after a deletion in a repeat
+        while (iEnd > i && jEnd > j && reference.charAt(iEnd - 1) == genome.charAt(jEnd - 1)) {
+            iEnd--;
+            jEnd--;
+        }
+        if (iEnd - i == jEnd - j) {
+            appendSubstitutions(delta, genome, i, iEnd, j);
+            return;
+        }
+        if (iEnd > i) {
+            separate(delta).append("del").append(i + 1);
+            if (iEnd > i + 1) {
+                delta.append('-').append(iEnd);
+            }
+        }
+        if (jEnd > j) {
+            separate(delta).append("ins").append(iEnd).append(':')
+                    .append(genome, j, jEnd);
+        }
+    }
+
+    private void appendSubstitutions(StringBuilder delta, CharSequence genome, int i,
+            int iEnd, int j) {
+        int k = 0;
+        while (i + k < iEnd) {
+            char base = genome.charAt(j + k);
+            if (base == 'N') {
+                int run = 1;
+                while (i + k + run < iEnd && genome.charAt(j + k + run) == 'N') {
+                    run++;
+                }
+                if (run >= MIN_N_RUN) {
+                    separate(delta).append('N').append(i + k + 1).append('-')
+                            .append(i + k + run);
+                    k += run;
+                    continue;
+                }
+            }
+            char referenceBase = reference.charAt(i + k);
+            if (referenceBase != base) {
+                separate(delta).append(referenceBase).append(i + k + 1).append(base);
+            }
+            k++;
+        }
+    }
+
+    private static StringBuilder separate(StringBuilder delta) {
+        if (delta.length() > 0) {
+            delta.append(',');
+        }
+        return delta;
+    }
+
+    private static int encodeBase(char c) {
+        switch (c) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+}
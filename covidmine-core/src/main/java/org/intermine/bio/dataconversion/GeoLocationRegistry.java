@@ -0,0 +1,313 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the country, state and province of a row to the id of a canonical location,
+ * assigned in order from 0, so that all the converters identify a location the same way.
+ * The values are compared ignoring case and leading, trailing and repeated white spaces,
+ * and the country is normalised with {@link CountryUtils}: "US", "United States" and
+ * " united  states" are the same location.
+ * The variants already seen are hashed from the chars of the values, e.g. the views of a
+ * {@link CsvTokenizer}, so resolving a known location creates no object; strings are only
+ * created for a new variant, with a {@link GeoLocationResolveEvent}.
+ * @author Daniela Butano
+ */
+public class GeoLocationRegistry {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final char KEY_SEPARATOR = '|';
+    // the canonical locations, by id
+    private final Map<String, Integer> locationIds = new HashMap<>();
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private String[] countries = new String[INITIAL_CAPACITY];
+    private String[] states = new String[INITIAL_CAPACITY];
+    private String[] provinces = new String[INITIAL_CAPACITY];
+    private int size = 0;
+    // open addressing table of the normalised variants: variant index + 1, 0 if empty
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private String[] variantCountries = new String[INITIAL_CAPACITY];
+    private String[] variantStates = new String[INITIAL_CAPACITY];
+    private String[] variantProvinces = new String[INITIAL_CAPACITY];
+    private int[] variantHashes = new int[INITIAL_CAPACITY];
+    private int[] variantLocations = new int[INITIAL_CAPACITY];
+    private int variantCount = 0;
+
+    /**
+     * @param country the country, null if unknown
+     * @param state the state, null if unknown
+     * @param province the province (or county), null if unknown
+     * @return the id of the location, a new one if it hasn't been seen before
+     */
+    public synchronized int resolve(CharSequence country, CharSequence state,
+            CharSequence province) {
+        int hash = hash(hash(hash(0, country), state), province);
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != 0) {
+            int variant = slots[slot] - 1;
+            if (variantHashes[variant] == hash
+                    && matches(country, variantCountries[variant])
+                    && matches(state, variantStates[variant])
+                    && matches(province, variantProvinces[variant])) {
+                return variantLocations[variant];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return addVariant(slot, hash, country, state, province);
+    }
+
+    /**
+     * @return the number of locations
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param locationId the location id
+     * @return the normalised country, null if not known
+     */
+    public synchronized String getCountry(int locationId) {
+        checkLocation(locationId);
+        return countries[locationId];
+    }
+
+    /**
+     * @param locationId the location id
+     * @return the state, null if not known
+     */
+    public synchronized String getState(int locationId) {
+        checkLocation(locationId);
+        return states[locationId];
+    }
+
+    /**
+     * @param locationId the location id
+     * @return the province, null if not known
+     */
+    public synchronized String getProvince(int locationId) {
+        checkLocation(locationId);
+        return provinces[locationId];
+    }
+
+    /**
+     * @param locationId the location id
+     * @return a key identifying the location, the same in every run and for every source.
+     * The converters store it as the canonicalKey of the GeoLocation, its integration key.
+     */
+    public synchronized String getKey(int locationId) {
+        checkLocation(locationId);
+        return keys[locationId];
+    }
+
+    private int addVariant(int slot, int hash, CharSequence country, CharSequence state,
+            CharSequence province) {
+        GeoLocationResolveEvent event = new GeoLocationResolveEvent();
+        event.begin();
+        String displayCountry = normalise(country);
+        if (displayCountry != null) {
+            displayCountry = CountryUtils.getCountry(displayCountry);
+        }
+        String displayState = normalise(state);
+        String displayProvince = normalise(province);
+        String key = keyPart(displayCountry) + KEY_SEPARATOR + keyPart(displayState)
+                + KEY_SEPARATOR + keyPart(displayProvince);
+        Integer locationId = locationIds.get(key);
+        boolean newLocation = (locationId == null);
+        if (newLocation) {
+            locationId = addLocation(key, displayCountry, displayState, displayProvince);
+        }
+        if (variantCount == variantHashes.length) {
+            int capacity = variantCount * 2;
+            variantCountries = Arrays.copyOf(variantCountries, capacity);
+            variantStates = Arrays.copyOf(variantStates, capacity);
+            variantProvinces = Arrays.copyOf(variantProvinces, capacity);
+            variantHashes = Arrays.copyOf(variantHashes, capacity);
+            variantLocations = Arrays.copyOf(variantLocations, capacity);
+        }
+        variantCountries[variantCount] = lowerCase(normalise(country));
+        variantStates[variantCount] = lowerCase(normalise(state));
+        variantProvinces[variantCount] = lowerCase(normalise(province));
+        variantHashes[variantCount] = hash;
+        variantLocations[variantCount] = locationId;
+        slots[slot] = ++variantCount;
+        if (variantCount * 2 > slots.length) {
+            rehash();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.setResolved(variantText(country) + KEY_SEPARATOR + variantText(state)
+                    + KEY_SEPARATOR + variantText(province), key, locationId, newLocation);
+            event.commit();
+        }
+        return locationId;
+    }
+
+    private int addLocation(String key, String country, String state, String province) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            countries = Arrays.copyOf(countries, capacity);
+            states = Arrays.copyOf(states, capacity);
+            provinces = Arrays.copyOf(provinces, capacity);
+        }
+        keys[size] = key;
+        countries[size] = country;
+        states[size] = state;
+        provinces[size] = province;
+        locationIds.put(key, size);
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int variant = 0; variant < variantCount; variant++) {
+            int slot = mix(variantHashes[variant]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = variant + 1;
+        }
+    }
+
+    private void checkLocation(int locationId) {
+        if (locationId < 0 || locationId >= size) {
+            throw new IndexOutOfBoundsException("No location with id " + locationId);
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Hash the value as normalise() and lowerCase() would return it, without creating them
+     */
+    private static int hash(int hash, CharSequence value) {
+        int result = hash * 31 + KEY_SEPARATOR;
+        if (value == null) {
+            return result;
+        }
+        int end = trimmedEnd(value);
+        boolean space = false;
+        for (int i = trimmedStart(value, end); i < end; i++) {
+            char c = value.charAt(i);
+            if (c <= ' ') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                result = result * 31 + ' ';
+                space = false;
+            }
+            result = result * 31 + Character.toLowerCase(c);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the value, normalised and in lower case, is equal to the variant
+     */
+    private static boolean matches(CharSequence value, String variant) {
+        if (value == null || variant == null) {
+            return variant == null && (value == null || trimmedEnd(value) == 0);
+        }
+        int end = trimmedEnd(value);
+        int length = variant.length();
+        int pos = 0;
+        boolean space = false;
+        for (int i = trimmedStart(value, end); i < end; i++) {
+            char c = value.charAt(i);
+            if (c <= ' ') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                if (pos == length || variant.charAt(pos++) != ' ') {
+                    return false;
+                }
+                space = false;
+            }
+            if (pos == length || variant.charAt(pos++) != Character.toLowerCase(c)) {
+                return false;
+            }
+        }
+        return pos == length;
+    }
+
+    /**
+     * @return the value without leading, trailing and repeated white spaces, null if empty
+     */
+    private static String normalise(CharSequence value) {
+        if (value == null) {
+            return null;
+        }
+        int end = trimmedEnd(value);
+        if (end == 0) {
+            return null;
+        }
+        StringBuilder normalised = new StringBuilder(end);
+        boolean space = false;
+        for (int i = trimmedStart(value, end); i < end; i++) {
+            char c = value.charAt(i);
+            if (c <= ' ') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                normalised.append(' ');
+                space = false;
+            }
+            normalised.append(c);
+        }
+        return normalised.toString();
+    }
+
+    private static String lowerCase(String value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder lowerCase = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            lowerCase.append(Character.toLowerCase(value.charAt(i)));
+        }
+        return lowerCase.toString();
+    }
+
+    private static String variantText(CharSequence value) {
+        return (value == null) ? "" : value.toString();
+    }
+
+    private static String keyPart(String value) {
+        return (value == null) ? "" : lowerCase(value);
+    }
+
+    private static int trimmedEnd(CharSequence value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int trimmedStart(CharSequence value, int end) {
+        int start = 0;
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+}
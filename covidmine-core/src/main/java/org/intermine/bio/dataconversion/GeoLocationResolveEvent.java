@@ -0,0 +1,56 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of a spelling of a location seen for the first time by a
+ * {@link GeoLocationRegistry}, resolved to a new or to an existing location. The spellings
+ * already seen are resolved without an event.
+ * @author Daniela Butano
+ */
+@Name("org.intermine.bio.dataconversion.GeoLocationResolve")
+@Label("GeoLocation Resolve")
+@Category({"InterMine", "Data Conversion"})
+@Description("A new spelling of a location resolved to its canonical location")
+@StackTrace(false)
+public class GeoLocationResolveEvent extends jdk.jfr.Event {
+    @Label("Spelling")
+    String variant;
+
+    @Label("Location Key")
+    String locationKey;
+
+    @Label("Location Id")
+    int locationId;
+
+    @Label("New Location")
+    boolean newLocation;
+
+    /**
+     * @param variant the country, state and province as read
+     * @param locationKey the key of the location
+     * @param locationId the id of the location
+     * @param newLocation true if the location has been created
+     */
+    public void setResolved(String variant, String locationKey, int locationId,
+            boolean newLocation) {
+        this.variant = variant;
+        this.locationKey = locationKey;
+        this.locationId = locationId;
+        this.newLocation = newLocation;
+    }
+}
@@ -0,0 +1,303 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Runs a load as three stages connected by bounded queues, so that parsing the input and
+ * writing the items overlap:
+ * <ul>
+ * <li>the reader stage, on its own thread, reads the rows with a {@link RowReader}</li>
+ * <li>the build stage, on the thread calling run(), turns the rows into items with a
+ * {@link RowBuilder} and hands them to store(). The converter state (createItem(), the
+ * location indexes) is only used by this thread, as in a serial load.</li>
+ * <li>the writer stage, on its own thread, hands the items to a {@link BatchWriter} in
+ * batches, in the order they were stored</li>
+ * </ul>
+ * A full queue blocks the stage feeding it, so a slow writer slows down the parse instead
+ * of filling the memory. A failure in any stage stops the others and is thrown by run(),
+ * store() or finish() on the build thread.
+ * @param <R> the type of the rows
+ * @author Daniela Butano
+ */
+public class ItemPipeline<R> implements Closeable {
+    private static final Logger LOG = Logger.getLogger(ItemPipeline.class);
+    /** Default number of items written together */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /** Default number of batches each queue holds */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    /**
+     * Reads the input, on the reader thread
+     * @param <R> the type of the rows
+     */
+    public interface RowReader<R> {
+        /**
+         * @return the next row, null at the end of the input
+         * @throws Exception if the input can't be read
+         */
+        R read() throws Exception;
+    }
+
+    /**
+     * Turns a row into items, on the build thread
+     * @param <R> the type of the rows
+     */
+    public interface RowBuilder<R> {
+        /**
+         * @param row the row
+         * @throws Exception if the row can't be converted or its items can't be stored
+         */
+        void build(R row) throws Exception;
+    }
+
+    /**
+     * Writes the items, on the writer thread, e.g. DataConverter.store(Collection)
+     */
+    public interface BatchWriter {
+        /**
+         * @param items the items, in the order they were stored
+         * @throws ObjectStoreException if the items can't be written
+         */
+        void write(List<Item> items) throws ObjectStoreException;
+    }
+
+    // marks the end of a queue, compared by identity
+    private final List<Object> endOfQueue = new ArrayList<>(0);
+    private final String name;
+    private final int batchSize;
+    private final BatchWriter writer;
+    private final BlockingQueue<List<Object>> rows;
+    private final BlockingQueue<List<Object>> items;
+    private final AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+    private final AtomicReference<Throwable> writerFailure = new AtomicReference<>();
+    private int rowBatchSize;
+    private List<Object> batch;
+    private Thread readerThread;
+    private Thread writerThread;
+
+    /**
+     * @param name the name of the load, used to name the threads
+     * @param batchSize the number of items written together
+     * @param queueCapacity the number of batches each queue holds
+     * @param writer writes the items
+     */
+    public ItemPipeline(String name, int batchSize, int queueCapacity, BatchWriter writer) {
+        if (batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("The batch size and the queue capacity must be"
+                    + " at least 1, were " + batchSize + " and " + queueCapacity);
+        }
+        this.name = name;
+        this.batchSize = batchSize;
+        this.rowBatchSize = batchSize;
+        this.writer = writer;
+        this.rows = new ArrayBlockingQueue<>(queueCapacity);
+        this.items = new ArrayBlockingQueue<>(queueCapacity);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Set how many rows the reader hands over together, by default the batch size. Use 1
+     * when a row is large, e.g. a whole file.
+     * @param rowBatchSize the number of rows
+     */
+    public void setRowBatchSize(int rowBatchSize) {
+        if (rowBatchSize < 1) {
+            throw new IllegalArgumentException("The row batch size must be at least 1, was "
+                    + rowBatchSize);
+        }
+        this.rowBatchSize = rowBatchSize;
+    }
+
+    /**
+     * Read all the rows and build them on this thread. The writer keeps going after it
+     * returns, so that more items can be stored, until finish() is called.
+     * @param reader reads the rows
+     * @param builder builds the items of a row and stores them with store()
+     * @throws Exception the first failure of the reader, the builder or the writer
+     */
+    public void run(RowReader<R> reader, RowBuilder<R> builder) throws Exception {
+        startWriter();
+        readerThread = new Thread(() -> read(reader), name + "-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            while (true) {
+                List<Object> rowBatch = rows.take();
+                if (rowBatch == endOfQueue) {
+                    break;
+                }
+                for (Object row : rowBatch) {
+                    @SuppressWarnings("unchecked")
+                    R typedRow = (R) row;
+                    builder.build(typedRow);
+                }
+            }
+            checkFailure();
+        } catch (Exception | Error e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Queue an item for the writer. Blocks while the writer queue is full.
+     * @param item the item
+     * @throws ObjectStoreException if the writer has failed
+     */
+    public void store(Item item) throws ObjectStoreException {
+        checkWriterFailure();
+        batch.add(item);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the items still queued and wait for the writer
+     * @throws Exception the first failure of the writer
+     */
+    public void finish() throws Exception {
+        startWriter();
+        try {
+            flush();
+            items.put(endOfQueue);
+            writerThread.join();
+            checkFailure();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stop the threads still running, after a failure
+     */
+    @Override
+    public void close() {
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        if (writerThread != null && writerThread.isAlive()) {
+            writerThread.interrupt();
+        }
+    }
+
+    private void startWriter() {
+        if (writerThread == null) {
+            writerThread = new Thread(this::write, name + "-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    private void read(RowReader<R> reader) {
+        try {
+            List<Object> rowBatch = new ArrayList<>(rowBatchSize);
+            R row;
+            while ((row = reader.read()) != null) {
+                rowBatch.add(row);
+                if (rowBatch.size() >= rowBatchSize) {
+                    rows.put(rowBatch);
+                    rowBatch = new ArrayList<>(rowBatchSize);
+                }
+            }
+            if (!rowBatch.isEmpty()) {
+                rows.put(rowBatch);
+            }
+        } catch (InterruptedException e) {
+            // stopped by close(), the build thread has already failed
+            return;
+        } catch (Exception | Error e) {
+            fail(readerFailure, e);
+        }
+        try {
+            rows.put(endOfQueue);
+        } catch (InterruptedException e) {
+            // stopped by close()
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                List<Object> itemBatch = items.take();
+                if (itemBatch == endOfQueue) {
+                    return;
+                }
+                if (writerFailure.get() == null) {
+                    try {
+                        @SuppressWarnings("unchecked")
+                        List<Item> typedBatch = (List<Item>) (List<?>) itemBatch;
+                        writer.write(typedBatch);
+                    } catch (Exception | Error e) {
+                        // keep taking the batches so that the build thread never blocks
+                        fail(writerFailure, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped by close()
+        }
+    }
+
+    private void flush() throws ObjectStoreException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            items.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreException("Interrupted while storing the items", e);
+        }
+        batch = new ArrayList<>(batchSize);
+        checkWriterFailure();
+    }
+
+    private void fail(AtomicReference<Throwable> failure, Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            LOG.error("The " + name + " load has failed", e);
+        }
+    }
+
+    private void checkFailure() throws Exception {
+        for (Throwable e : new Throwable[] {writerFailure.get(), readerFailure.get()}) {
+            if (e instanceof Exception) {
+                throw (Exception) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private void checkWriterFailure() throws ObjectStoreException {
+        Throwable e = writerFailure.get();
+        if (e instanceof ObjectStoreException) {
+            throw (ObjectStoreException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new ObjectStoreException("The " + name + " load has failed", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of items handed to the ItemWriter, one item or a batch of the
+ * {@link ItemPipeline}. Most stores only fill the writer buffer, so by default only the ones
+ * taking 100 microseconds or more are recorded.
+ * @author Daniela Butano
+ */
+@Name("org.intermine.bio.dataconversion.ItemStore")
+@Label("Item Store")
+@Category({"InterMine", "Data Conversion"})
+@Description("Items handed to the ItemWriter by a converter")
+@StackTrace(false)
+@Threshold("100 us")
+public class ItemStoreEvent extends jdk.jfr.Event {
+    @Label("Source")
+    String source;
+
+    @Label("Class")
+    String className;
+
+    @Label("Items")
+    int items;
+
+    /**
+     * @param source the name of the source, e.g. gisaid-csv
+     * @param className the class of the (first) item
+     * @param items the number of items
+     */
+    public ItemStoreEvent(String source, String className, int items) {
+        this.source = source;
+        this.className = className;
+        this.items = items;
+    }
+}
@@ -0,0 +1,95 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Records how far a load has gone in each of its files, so that a load which failed can be
+ * restarted from the last record committed instead of from the start of the file. For each
+ * file the size and the offset where the load resumes are written in a properties file,
+ * e.g. sequences.fasta.size and sequences.fasta.resume. A checkpoint is only used for a file
+ * of the same name and size.
+ * @author Daniela Butano
+ */
+public final class LoadCheckpoint {
+    private static final String SIZE = ".size";
+    private static final String RESUME = ".resume";
+
+    private final File file;
+    private final Properties offsets = new Properties();
+
+    /**
+     * Read a checkpoint, empty if the file doesn't exist
+     * @param file the checkpoint file
+     * @throws IOException if the file can't be read
+     */
+    public LoadCheckpoint(File file) throws IOException {
+        this.file = file;
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                offsets.load(in);
+            }
+        }
+    }
+
+    /**
+     * @param name the name of a file of the load
+     * @param size the size of the file
+     * @return the offset where the load of the file resumes, 0 if there is no checkpoint for
+     * it. The size if it has been loaded.
+     */
+    public long getResumeOffset(String name, long size) {
+        String checkpointSize = offsets.getProperty(name + SIZE);
+        String resume = offsets.getProperty(name + RESUME);
+        if (checkpointSize == null || resume == null
+                || Long.parseLong(checkpointSize) != size) {
+            return 0;
+        }
+        return Long.parseLong(resume);
+    }
+
+    /**
+     * Record the offset where the load of a file resumes. Only call it once the records
+     * before the offset have been committed.
+     * @param name the name of the file
+     * @param size the size of the file
+     * @param resumeOffset the offset after the last record committed
+     * @throws IOException if the checkpoint can't be written
+     */
+    public void save(String name, long size, long resumeOffset) throws IOException {
+        offsets.setProperty(name + SIZE, String.valueOf(size));
+        offsets.setProperty(name + RESUME, String.valueOf(resumeOffset));
+        // written then renamed, so that a failure while writing keeps the previous checkpoint
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            offsets.store(out, "Offsets where the load of each file resumes");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Delete the checkpoint, once the load has succeeded
+     */
+    public void delete() {
+        offsets.clear();
+        file.delete();
+    }
+}
@@ -0,0 +1,383 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counts what a load does: the rows read and skipped, the items stored by class and the
+ * time spent in each {@link Stage}. While the load runs a progress line with the rate and,
+ * when the size of the input is known, the ETA is logged every progress interval. At the
+ * end the counters are written as a JSON run report.
+ * <p>
+ * The counters can be updated from any thread, e.g. by the stages of an {@link ItemPipeline}.
+ * The time of a thread is charged to the stage it last entered with enter(). Every
+ * PARSE_BATCH_ROWS rows read by a thread with rowRead() are recorded as a
+ * {@link ParseBatchEvent} when Flight Recorder is on.
+ * @author Daniela Butano
+ */
+public class LoadMetrics {
+    private static final Logger LOG = Logger.getLogger(LoadMetrics.class);
+    /** Default time between two progress lines */
+    public static final long DEFAULT_PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    /** Number of rows of a {@link ParseBatchEvent} */
+    public static final int PARSE_BATCH_ROWS = 1024;
+    // rows read between two looks at the clock for the progress line
+    private static final long PROGRESS_CHECK_ROWS = 1024;
+
+    /**
+     * What a thread of the load is doing
+     */
+    public enum Stage {
+        /** reading and splitting the input */
+        PARSE,
+        /** building the items, with the wait for the writer when pipelined */
+        CONVERT,
+        /** writing the items */
+        STORE
+    }
+
+    private final String source;
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final ConcurrentMap<String, LongAdder> rowsSkipped = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> rowWarnings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> items = new ConcurrentHashMap<>();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final ThreadLocal<StageClock> clocks = ThreadLocal.withInitial(StageClock::new);
+    private final AtomicLong nextProgress = new AtomicLong();
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private DoubleSupplier fractionDone = () -> -1;
+    private long startMillis;
+    private long endMillis;
+
+    /**
+     * @param source the name of the source, e.g. owid-csv
+     */
+    public LoadMetrics(String source) {
+        this.source = source;
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+        start();
+    }
+
+    /**
+     * @param progressInterval the milliseconds between two progress lines, 0 for every check
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+        nextProgress.set(startMillis + progressInterval);
+    }
+
+    /**
+     * Set how the ETA is worked out. It is called on the thread reading the rows.
+     * @param fractionDone the fraction of the input read, from 0 to 1, negative if not known
+     */
+    public void setFractionDone(DoubleSupplier fractionDone) {
+        this.fractionDone = fractionDone;
+    }
+
+    /**
+     * Start counting the time of the load, done by the constructor
+     */
+    public void start() {
+        startMillis = System.currentTimeMillis();
+        nextProgress.set(startMillis + progressInterval);
+    }
+
+    /**
+     * A row has been read, logs the progress line if it is time to
+     */
+    public void rowRead() {
+        if (rowsRead.incrementAndGet() % PROGRESS_CHECK_ROWS == 0) {
+            checkProgress();
+        }
+        StageClock clock = clocks.get();
+        if (clock.parseBatch == null) {
+            clock.parseBatch = new ParseBatchEvent(source, null);
+            clock.parseBatch.begin();
+            clock.parseBatchStart = clock.getNanos(Stage.PARSE);
+        }
+        if (++clock.parseBatchRows == PARSE_BATCH_ROWS) {
+            commitParseBatch(clock);
+        }
+    }
+
+    /**
+     * Several rows have been read together, e.g. a whole file. Logs the progress line if it
+     * is time to.
+     * @param rows the number of rows
+     */
+    public void rowsRead(long rows) {
+        rowsRead.addAndGet(rows);
+        checkProgress();
+    }
+
+    /**
+     * A row has been read but not loaded
+     * @param reason why, the rows are counted by reason
+     */
+    public void rowSkipped(String reason) {
+        rowsSkipped.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * A row has been loaded, but not the way it should have been, e.g. a fallback was used
+     * @param reason what went wrong, the rows are counted by reason
+     */
+    public void rowWarning(String reason) {
+        rowWarnings.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * An item has been stored
+     * @param className the class of the item
+     */
+    public void itemStored(String className) {
+        LongAdder count = items.get(className);
+        if (count == null) {
+            count = items.computeIfAbsent(className, c -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Charge the time of this thread to a stage from now on
+     * @param stage the stage, null to stop charging the time of the thread
+     * @return the stage the thread was in, to go back to it
+     */
+    public Stage enter(Stage stage) {
+        StageClock clock = clocks.get();
+        long now = System.nanoTime();
+        Stage previous = clock.stage;
+        if (previous != null) {
+            stageNanos[previous.ordinal()].add(now - clock.since);
+            clock.nanos[previous.ordinal()] += now - clock.since;
+        }
+        clock.stage = stage;
+        clock.since = now;
+        return previous;
+    }
+
+    /**
+     * @return the rows read
+     */
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    /**
+     * @return the rows skipped, whatever the reason
+     */
+    public long getRowsSkipped() {
+        return sum(rowsSkipped);
+    }
+
+    private static long sum(Map<String, LongAdder> counts) {
+        long sum = 0;
+        for (LongAdder count : counts.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the rows loaded with a warning, whatever the reason
+     */
+    public long getRowWarnings() {
+        return sum(rowWarnings);
+    }
+
+    /**
+     * @param className the class
+     * @return the items of the class stored
+     */
+    public long getItemsStored(String className) {
+        LongAdder count = items.get(className);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    /**
+     * @param stage the stage
+     * @return the milliseconds spent in the stage, by all the threads
+     */
+    public long getStageMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+    }
+
+    /**
+     * Stop counting, log the totals and write the run report. The threads of the load must
+     * have left their stage.
+     * @param reportPath where to write the JSON report, null to log it
+     * @throws IOException if the report can't be written
+     */
+    public void finish(String reportPath) throws IOException {
+        StageClock clock = clocks.get();
+        if (clock.parseBatch != null) {
+            commitParseBatch(clock);
+        }
+        enter(null);
+        endMillis = System.currentTimeMillis();
+        String report = toJson();
+        if (reportPath == null) {
+            LOG.warn(source + " load report " + report);
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(reportPath)),
+                StandardCharsets.UTF_8)) {
+            out.write(report);
+            out.write('\n');
+        }
+        LOG.warn(source + " loaded " + getRowsRead() + " rows in " + (endMillis - startMillis)
+                + " ms, report written to " + reportPath);
+    }
+
+    /**
+     * @return the counters as a JSON object
+     */
+    public String toJson() {
+        long elapsed = ((endMillis > 0) ? endMillis : System.currentTimeMillis()) - startMillis;
+        StringBuilder json = new StringBuilder();
+        json.append("{\"source\":");
+        appendString(json, source);
+        json.append(",\"startTime\":").append(startMillis);
+        json.append(",\"elapsedMillis\":").append(elapsed);
+        json.append(",\"rowsRead\":").append(getRowsRead());
+        json.append(",\"rowsPerSecond\":").append(rate(getRowsRead(), elapsed));
+        json.append(",\"rowsSkipped\":").append(getRowsSkipped());
+        json.append(",\"rowsSkippedByReason\":");
+        appendCounts(json, rowsSkipped);
+        json.append(",\"rowWarnings\":").append(getRowWarnings());
+        json.append(",\"rowWarningsByReason\":");
+        appendCounts(json, rowWarnings);
+        long itemsStored = 0;
+        for (LongAdder count : items.values()) {
+            itemsStored += count.sum();
+        }
+        json.append(",\"itemsStored\":").append(itemsStored);
+        json.append(",\"itemsByClass\":");
+        appendCounts(json, items);
+        json.append(",\"stageMillis\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            appendString(json, stage.name().toLowerCase());
+            json.append(':').append(getStageMillis(stage));
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    private void commitParseBatch(StageClock clock) {
+        ParseBatchEvent parseBatch = clock.parseBatch;
+        parseBatch.end();
+        if (parseBatch.shouldCommit()) {
+            parseBatch.setParsed(clock.parseBatchRows,
+                    clock.getNanos(Stage.PARSE) - clock.parseBatchStart);
+            parseBatch.commit();
+        }
+        clock.parseBatch = null;
+        clock.parseBatchRows = 0;
+    }
+
+    private void checkProgress() {
+        long next = nextProgress.get();
+        long now = System.currentTimeMillis();
+        if (now < next || !nextProgress.compareAndSet(next, now + progressInterval)) {
+            return;
+        }
+        long rows = getRowsRead();
+        long elapsed = now - startMillis;
+        StringBuilder line = new StringBuilder();
+        line.append(source).append(": ").append(rows).append(" rows read, ")
+                .append(rate(rows, elapsed)).append(" rows/s");
+        double fraction = fractionDone.getAsDouble();
+        if (fraction > 0 && fraction <= 1) {
+            long remaining = (long) (elapsed / fraction) - elapsed;
+            line.append(", ").append((int) (fraction * 100)).append("% done, ETA ")
+                    .append(formatDuration(remaining));
+        }
+        LOG.warn(line);
+    }
+
+    private static long rate(long count, long millis) {
+        return (millis <= 0) ? count : count * 1000 / millis;
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    private static void appendCounts(StringBuilder json, Map<String, LongAdder> counts) {
+        json.append('{');
+        boolean first = true;
+        // sorted, so that two reports can be compared
+        for (Map.Entry<String, LongAdder> count : new TreeMap<>(counts).entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, count.getKey());
+            json.append(':').append(count.getValue().sum());
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * The stage a thread is in and since when, the time of the thread in each stage and
+     * its parse batch
+     */
+    private static final class StageClock {
+        private Stage stage;
+        private long since;
+        private final long[] nanos = new long[Stage.values().length];
+        private ParseBatchEvent parseBatch;
+        private long parseBatchStart;
+        private int parseBatchRows;
+
+        long getNanos(Stage stage) {
+            long total = nanos[stage.ordinal()];
+            return (this.stage == stage) ? total + System.nanoTime() - since : total;
+        }
+    }
+}
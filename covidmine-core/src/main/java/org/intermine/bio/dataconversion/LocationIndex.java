@@ -0,0 +1,225 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Append only index from the locations to the identifiers of the items (e.g. Cases or
+ * Distribution) referencing them.
+ * The location keys are interned to int ids, assigned in order from 0. The child identifiers
+ * created by a converter for one class all share the same prefix (e.g. "3_" in "3_1234") so
+ * only the numeric part is kept, in a growable int array per location.
+ * @author Daniela Butano
+ */
+public class LocationIndex {
+    private static final int INITIAL_LOCATIONS = 256;
+    private static final int INITIAL_CHILDREN = 16;
+    private static final int[] NO_CHILDREN = new int[0];
+    private final Map<String, Integer> locationIds = new HashMap<>();
+    private String[] keys = new String[INITIAL_LOCATIONS];
+    private int[][] children = new int[INITIAL_LOCATIONS][];
+    private int[] childCounts = new int[INITIAL_LOCATIONS];
+    private int size = 0;
+    private long totalChildCount = 0;
+    private String childPrefix = null;
+
+    /**
+     * @param locationKey the location key
+     * @return the id of the location or -1 if the key hasn't been interned
+     */
+    public int getId(String locationKey) {
+        Integer locationId = locationIds.get(locationKey);
+        return (locationId == null) ? -1 : locationId;
+    }
+
+    /**
+     * @param locationKey the location key
+     * @return the id of the location, a new one if the key hasn't been seen before
+     */
+    public int intern(String locationKey) {
+        Integer locationId = locationIds.get(locationKey);
+        if (locationId != null) {
+            return locationId;
+        }
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            children = Arrays.copyOf(children, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+        }
+        keys[size] = locationKey;
+        children[size] = new int[INITIAL_CHILDREN];
+        locationIds.put(locationKey, size);
+        return size++;
+    }
+
+    /**
+     * @return the number of locations interned
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param locationId the location id
+     * @return the key the location was interned with
+     */
+    public String getKey(int locationId) {
+        checkLocation(locationId);
+        return keys[locationId];
+    }
+
+    /**
+     * Append a child item identifier to the location
+     * @param locationId the location id
+     * @param identifier the item identifier, e.g. 3_1234
+     */
+    public void addChild(int locationId, String identifier) {
+        checkLocation(locationId);
+        int number = parseChildNumber(identifier);
+        int[] locationChildren = children[locationId];
+        int count = childCounts[locationId];
+        if (count == locationChildren.length) {
+            locationChildren = Arrays.copyOf(locationChildren, count + (count >> 1) + 1);
+            children[locationId] = locationChildren;
+        }
+        locationChildren[count] = number;
+        childCounts[locationId] = count + 1;
+        totalChildCount++;
+    }
+
+    /**
+     * @param locationId the location id
+     * @param identifiers the item identifiers to append
+     */
+    public void addChildren(int locationId, List<String> identifiers) {
+        for (String identifier : identifiers) {
+            addChild(locationId, identifier);
+        }
+    }
+
+    /**
+     * @param locationId the location id
+     * @return the number of child identifiers appended to the location
+     */
+    public int getChildCount(int locationId) {
+        checkLocation(locationId);
+        return childCounts[locationId];
+    }
+
+    /**
+     * @return the number of child identifiers held for all the locations
+     */
+    public long getTotalChildCount() {
+        return totalChildCount;
+    }
+
+    /**
+     * Drop the child identifiers of a location, e.g. once they have been stored or written
+     * to disk. Children appended afterwards start a new list.
+     * @param locationId the location id
+     */
+    public void clearChildren(int locationId) {
+        checkLocation(locationId);
+        totalChildCount -= childCounts[locationId];
+        children[locationId] = NO_CHILDREN;
+        childCounts[locationId] = 0;
+    }
+
+    /**
+     * The identifiers are only turned back into strings when the list elements are read,
+     * e.g. when the list is passed to Item.setCollection().
+     * @param locationId the location id
+     * @return a read only view of the child identifiers of the location
+     */
+    public List<String> getChildIds(int locationId) {
+        checkLocation(locationId);
+        return new ChildIds(children[locationId], childCounts[locationId], childPrefix);
+    }
+
+    /**
+     * @return the numeric parts of the child identifiers of the location, only the first
+     * getChildCount() are set
+     */
+    int[] getChildNumbers(int locationId) {
+        checkLocation(locationId);
+        return children[locationId];
+    }
+
+    /**
+     * @return a view of child identifiers read back, e.g. from disk, with the index prefix
+     */
+    List<String> toChildIds(int[] numbers, int count) {
+        return new ChildIds(numbers, count, childPrefix);
+    }
+
+    private int parseChildNumber(String identifier) {
+        int separator = identifier.lastIndexOf('_');
+        if (childPrefix == null) {
+            childPrefix = identifier.substring(0, separator + 1);
+        } else if (separator + 1 != childPrefix.length()
+                || !identifier.startsWith(childPrefix)) {
+            throw new IllegalArgumentException("Identifier " + identifier
+                    + " doesn't have the prefix " + childPrefix
+                    + " of the identifiers already in the index");
+        }
+        int number = 0;
+        int length = identifier.length();
+        if (separator + 1 == length) {
+            throw new IllegalArgumentException("Invalid item identifier " + identifier);
+        }
+        for (int i = separator + 1; i < length; i++) {
+            char c = identifier.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid item identifier " + identifier);
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private void checkLocation(int locationId) {
+        if (locationId < 0 || locationId >= size) {
+            throw new IndexOutOfBoundsException("No location with id " + locationId);
+        }
+    }
+
+    private static final class ChildIds extends AbstractList<String> implements RandomAccess {
+        private final int[] numbers;
+        private final int count;
+        private final String prefix;
+
+        ChildIds(int[] numbers, int count, String prefix) {
+            this.numbers = numbers;
+            this.count = count;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + count);
+            }
+            return prefix + numbers[index];
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * Decides when the collection of a location is complete and hands it to an {@link Emitter},
+ * which stores the GeoLocation item, so that the child identifiers don't have to stay in
+ * memory until the end of the load.
+ * <ul>
+ * <li>ALL keeps every child identifier in the LocationIndex and emits the locations at the
+ * end, in id order.</li>
+ * <li>GROUPED is for inputs with all the rows of a location together (OWID): a location is
+ * emitted as soon as a row of another location is added. A location which appears again
+ * after that is an error.</li>
+ * <li>SPILL is for unsorted inputs: when the index holds more than the spill threshold,
+ * the child identifiers are written to a temporary file, one run sorted by location. At the
+ * end the runs are merged and each location is emitted with all its children.</li>
+ * </ul>
+ * @author Daniela Butano
+ */
+public class LocationSpool implements Closeable {
+    /** Default number of child identifiers held in memory before spilling them */
+    public static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+    /**
+     * How the collections are completed
+     */
+    public enum Mode {
+        ALL,
+        GROUPED,
+        SPILL;
+
+        /**
+         * @param boundedMemory the value of a converter boundedMemory property
+         * @param grouped true if the source has all the rows of a location together
+         * @return the mode
+         */
+        public static Mode forSource(String boundedMemory, boolean grouped) {
+            if (!Boolean.parseBoolean(boundedMemory.trim())) {
+                return ALL;
+            }
+            return grouped ? GROUPED : SPILL;
+        }
+    }
+
+    /**
+     * Receives each location once its collection is complete
+     */
+    public interface Emitter {
+        /**
+         * @param locationId the location id
+         * @param childIds the identifiers of all the children of the location, only valid
+         * during the call
+         * @throws ObjectStoreException if the location can't be stored
+         */
+        void emit(int locationId, List<String> childIds) throws ObjectStoreException;
+    }
+
+    private final LocationIndex index;
+    private final Mode mode;
+    private final int spillThreshold;
+    private final Emitter emitter;
+    private final BitSet emitted = new BitSet();
+    private final List<File> runs = new ArrayList<>();
+    private int currentLocationId = -1;
+
+    /**
+     * @param index the index the locations are interned in
+     * @param mode how the collections are completed
+     * @param emitter receives the complete locations
+     */
+    public LocationSpool(LocationIndex index, Mode mode, Emitter emitter) {
+        this(index, mode, DEFAULT_SPILL_THRESHOLD, emitter);
+    }
+
+    /**
+     * @param index the index the locations are interned in
+     * @param mode how the collections are completed
+     * @param spillThreshold the number of child identifiers held before spilling them
+     * @param emitter receives the complete locations
+     */
+    public LocationSpool(LocationIndex index, Mode mode, int spillThreshold, Emitter emitter) {
+        this.index = index;
+        this.mode = mode;
+        this.spillThreshold = spillThreshold;
+        this.emitter = emitter;
+    }
+
+    /**
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Append a child identifier to a location
+     * @param locationId the location id
+     * @param identifier the item identifier
+     * @throws ObjectStoreException if a complete location can't be stored
+     * @throws IOException if the identifiers can't be spilled
+     */
+    public void addChild(int locationId, String identifier)
+        throws ObjectStoreException, IOException {
+        addRow(locationId);
+        index.addChild(locationId, identifier);
+        if (mode == Mode.SPILL && index.getTotalChildCount() >= spillThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * Note a row of a location which has no child item, e.g. when only a TimeSeries is
+     * stored, so that GROUPED still emits each location once its rows are complete
+     * @param locationId the location id
+     * @throws ObjectStoreException if a complete location can't be stored
+     */
+    public void addRow(int locationId) throws ObjectStoreException {
+        if (mode == Mode.GROUPED && locationId != currentLocationId) {
+            if (emitted.get(locationId)) {
+                throw new IllegalStateException("The rows of location " + index.getKey(locationId)
+                        + " are not grouped together, load the source with"
+                        + " boundedMemory=false");
+            }
+            if (currentLocationId != -1) {
+                emit(currentLocationId);
+            }
+            currentLocationId = locationId;
+        }
+    }
+
+    /**
+     * @param locationId the location id
+     * @param identifiers the item identifiers to append
+     * @throws ObjectStoreException if a complete location can't be stored
+     * @throws IOException if the identifiers can't be spilled
+     */
+    public void addChildren(int locationId, List<String> identifiers)
+        throws ObjectStoreException, IOException {
+        for (String identifier : identifiers) {
+            addChild(locationId, identifier);
+        }
+    }
+
+    /**
+     * Emit all the locations not emitted yet, in id order, including those without children
+     * @throws ObjectStoreException if a location can't be stored
+     * @throws IOException if the spilled identifiers can't be read
+     */
+    public void finish() throws ObjectStoreException, IOException {
+        if (runs.isEmpty()) {
+            for (int locationId = 0; locationId < index.size(); locationId++) {
+                if (!emitted.get(locationId)) {
+                    emit(locationId);
+                }
+            }
+            return;
+        }
+        spill();
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                readers.add(new RunReader(run));
+            }
+            int[] numbers = new int[16];
+            for (int locationId = 0; locationId < index.size(); locationId++) {
+                int count = 0;
+                // the runs are in the order they were written, so the children stay in order
+                for (RunReader reader : readers) {
+                    if (reader.locationId == locationId) {
+                        numbers = reader.readChildren(numbers, count);
+                        count += reader.count;
+                        reader.next();
+                    }
+                }
+                emitter.emit(locationId, index.toChildIds(numbers, count));
+                emitted.set(locationId);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            close();
+        }
+    }
+
+    /**
+     * Delete the temporary files
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void emit(int locationId) throws ObjectStoreException {
+        int count = index.getChildCount(locationId);
+        // the index array is dropped straight after, no need to copy it
+        emitter.emit(locationId, index.toChildIds(index.getChildNumbers(locationId), count));
+        index.clearChildren(locationId);
+        emitted.set(locationId);
+    }
+
+    /**
+     * Write the children held by the index to a new run, by location id, and drop them
+     */
+    private void spill() throws IOException {
+        File run = File.createTempFile("locations", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 1 << 16));
+        try {
+            for (int locationId = 0; locationId < index.size(); locationId++) {
+                int count = index.getChildCount(locationId);
+                if (count == 0) {
+                    continue;
+                }
+                int[] numbers = index.getChildNumbers(locationId);
+                out.writeInt(locationId);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(numbers[i]);
+                }
+                index.clearChildren(locationId);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a run one location at a time
+     */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private int locationId;
+        private int count;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            next();
+        }
+
+        void next() throws IOException {
+            try {
+                locationId = in.readInt();
+                count = in.readInt();
+            } catch (EOFException e) {
+                locationId = -1;
+                count = 0;
+            }
+        }
+
+        int[] readChildren(int[] numbers, int offset) throws IOException {
+            int[] result = numbers;
+            if (offset + count > result.length) {
+                result = Arrays.copyOf(result, Math.max(offset + count, result.length * 2));
+            }
+            for (int i = 0; i < count; i++) {
+                result[offset + i] = in.readInt();
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
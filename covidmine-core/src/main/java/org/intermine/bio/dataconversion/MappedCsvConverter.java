@@ -0,0 +1,522 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Reads a csv file with a row per location and day into Cases, described by the
+ * {@link CsvMapping} source_mapping.properties of the source, e.g. owid-csv_mapping.properties.
+ * A source only has to give its name and its data source, the mapping names the columns:
+ * <ul>
+ * <li>date: the day of the row</li>
+ * <li>country, state and province: the location of the row, the fields the mapping has
+ * can't be empty. A row with an empty location is rejected, a row with a value not in the
+ * lookup table of the field, e.g. an unknown state code, is skipped.</li>
+ * <li>latitude and longitude: optional attributes of the GeoLocation</li>
+ * <li>each count field: the attribute of the Cases with the same name, e.g. totalConfirmed.
+ * totalConfirmed, newConfirmed, totalDeaths and newDeaths are rolled up and averaged.</li>
+ * </ul>
+ * The rows.grouped setting of the mapping is true if the rows of a location are together,
+ * rows.newestFirst true if the file is sorted newest first and separator is the field
+ * separator, a comma by default.
+ * <p>
+ * The file can be compressed, see {@link CompressedInput}. The rolling averages and growth
+ * of each day are added to its Cases, see {@link RollingWindows}, and the Cases of each
+ * location are rolled up by week and by month, see {@link Rollups}. If the timeSeries
+ * property is true the whole history of each location is also stored in one TimeSeries
+ * item, if it is "only" the TimeSeries replace the Cases, see {@link TimeSeriesBuilder}.
+ * The rows with a bad date, count or location are skipped and written to the quarantine
+ * file, within the error budget, see {@link Quarantine}.
+ * @author Daniela Butano
+ */
+public abstract class MappedCsvConverter extends BioFileConverter {
+    private static final Logger LOG = Logger.getLogger(MappedCsvConverter.class);
+    private final String source;
+    private final CsvMapping mapping;
+    private final boolean grouped;
+    private final boolean newestFirst;
+    private final char separator;
+    private CsvColumn date;
+    private CsvColumn country;
+    private CsvColumn state;
+    private CsvColumn province;
+    // the location columns the mapping has
+    private CsvColumn[] location;
+    private CsvColumn latitude;
+    private CsvColumn longitude;
+    private CsvColumn[] counts;
+    private long[] values;
+    private int totalConfirmed;
+    private int newConfirmed;
+    private int totalDeaths;
+    private int newDeaths;
+    private GeoLocationRegistry geoLocations = new GeoLocationRegistry();
+    private LocationIndex locationIndex = new LocationIndex();
+    private List<Item> locations = new ArrayList<>();
+    private LocationSpool.Mode spoolMode = LocationSpool.Mode.ALL;
+    private LocationSpool spool;
+    private RollingWindows<Item> windows;
+    private Rollups rollups;
+    private TimeSeriesBuilder.Mode timeSeriesMode = TimeSeriesBuilder.Mode.NONE;
+    private TimeSeriesBuilder timeSeries;
+    private boolean pipelined = false;
+    private int pipelineBatchSize = ItemPipeline.DEFAULT_BATCH_SIZE;
+    private ItemPipeline<CsvRecord> pipeline;
+    private String loadReport = null;
+    private LoadMetrics metrics;
+    private String quarantinePath = null;
+    private String errorBudget = null;
+    private Quarantine quarantine;
+    private String fileName;
+
+    /**
+     * @param writer the item writer
+     * @param model the model
+     * @param source the name of the source, e.g. owid-csv, its mapping is
+     * source_mapping.properties
+     * @param dataSourceName the name of the DataSource
+     * @param dataSetTitle the name of the DataSet
+     * @param licence the licence of the data
+     */
+    protected MappedCsvConverter(ItemWriter writer, Model model, String source,
+            String dataSourceName, String dataSetTitle, String licence) {
+        super(writer, model, dataSourceName, dataSetTitle, licence);
+        this.source = source;
+        mapping = CsvMapping.load(source + "_mapping.properties", getClass().getClassLoader());
+        grouped = Boolean.parseBoolean(mapping.getProperty("rows.grouped", "false"));
+        newestFirst = Boolean.parseBoolean(mapping.getProperty("rows.newestFirst", "false"));
+        separator = mapping.getProperty("separator", ",").charAt(0);
+    }
+
+    /**
+     * Keep the memory used flat whatever the length of the history. If the rows of a
+     * location are together each GeoLocation is stored as soon as its rows are complete,
+     * otherwise the identifiers of the cases are spilled to disk and merged at the end.
+     * @param boundedMemory true to bound the memory used
+     */
+    public void setBoundedMemory(String boundedMemory) {
+        spoolMode = LocationSpool.Mode.forSource(boundedMemory, grouped);
+    }
+
+    /**
+     * Store a TimeSeries per GeoLocation, alongside the Cases or instead of them
+     * @param timeSeries true to store the TimeSeries too, only to store no Cases
+     */
+    public void setTimeSeries(String timeSeries) {
+        timeSeriesMode = TimeSeriesBuilder.Mode.forSource(timeSeries);
+    }
+
+    /**
+     * Parse the file on another thread and write the items in batches on a third one,
+     * see {@link ItemPipeline}
+     * @param pipeline true to run the load as a pipeline
+     */
+    public void setPipeline(String pipeline) {
+        this.pipelined = Boolean.parseBoolean(pipeline.trim());
+    }
+
+    /**
+     * @param pipelineBatchSize the number of items written together by the pipeline
+     */
+    public void setPipelineBatchSize(String pipelineBatchSize) {
+        this.pipelineBatchSize = Integer.parseInt(pipelineBatchSize.trim());
+    }
+
+    /**
+     * Write the JSON run report of the load to a file instead of the log, see
+     * {@link LoadMetrics}
+     * @param loadReport the path of the report
+     */
+    public void setLoadReport(String loadReport) {
+        this.loadReport = loadReport;
+    }
+
+    /**
+     * Write the rows skipped because of an error to a file, see {@link Quarantine}
+     * @param quarantinePath the path of the quarantine file
+     */
+    public void setQuarantine(String quarantinePath) {
+        this.quarantinePath = quarantinePath;
+    }
+
+    /**
+     * @param errorBudget the number of rows which can be skipped because of an error, e.g. 100,
+     * or their percentage of the rows read, e.g. 0.5%. No limit by default.
+     */
+    public void setErrorBudget(String errorBudget) {
+        this.errorBudget = errorBudget;
+    }
+
+    @Override
+    public void process(Reader inputReader) throws Exception {
+        LOG.warn(getClass().getSimpleName() + " process files started..");
+        CsvTokenizer reader = null;
+        FileReadEvent fileRead = null;
+        metrics = new LoadMetrics(source);
+        quarantine = new Quarantine(source, metrics);
+        quarantine.setErrorBudget(errorBudget);
+        quarantine.open(quarantinePath);
+        fileName = (getCurrentFile() != null) ? getCurrentFile().getName() : null;
+        spool = new LocationSpool(locationIndex, spoolMode, this::storeGeoLocation);
+        if (timeSeriesMode != TimeSeriesBuilder.Mode.ONLY) {
+            windows = new RollingWindows<>(newestFirst, this::storeCases);
+        }
+        if (timeSeriesMode != TimeSeriesBuilder.Mode.NONE) {
+            timeSeries = new TimeSeriesBuilder(new String[] {"totalConfirmed", "newConfirmed",
+                "totalDeaths", "newDeaths"});
+        }
+        rollups = new Rollups(new String[] {"newConfirmed", "newDeaths"},
+                new String[] {"totalConfirmed", "totalDeaths"}, this::storeRollup);
+        if (pipelined) {
+            pipeline = new ItemPipeline<>(source, pipelineBatchSize,
+                    ItemPipeline.DEFAULT_QUEUE_CAPACITY, this::storeBatch);
+        }
+        try {
+            fileRead = newFileReadEvent();
+            reader = openCsv(inputReader);
+            metrics.setFractionDone(reader::getFractionRead);
+            if (reader.next()) {
+                reader.setProjection(compile(reader.toStringArray()));
+                if (pipeline != null) {
+                    final CsvTokenizer records = reader;
+                    pipeline.run(() -> nextRow(records) ? new CsvRecord(records) : null,
+                            this::storeDistribution);
+                } else {
+                    while (nextRow(reader)) {
+                        storeDistribution(reader);
+                    }
+                }
+            }
+            storeGeoLocations();
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+            metrics.finish(loadReport);
+            quarantine.finish();
+        } catch (IOException ex) {
+            throw new RuntimeException("Problem reading the file", ex);
+        } finally {
+            quarantine.close();
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+            if (fileRead != null) {
+                fileRead.setRows(metrics.getRowsRead());
+                fileRead.commit();
+            }
+        }
+        LOG.warn(getClass().getSimpleName() + " process files completed.");
+    }
+
+    /**
+     * Look the columns up once, the rows are read with the columns only
+     * @return the columns read
+     */
+    private CsvProjection compile(String[] headerLine) {
+        CsvColumns columns = mapping.compile(headerLine);
+        date = columns.get("date");
+        country = getColumn(columns, "country");
+        state = getColumn(columns, "state");
+        province = getColumn(columns, "province");
+        List<CsvColumn> locationColumns = new ArrayList<>();
+        for (CsvColumn column : new CsvColumn[] {country, state, province}) {
+            if (column != null) {
+                locationColumns.add(column);
+            }
+        }
+        if (locationColumns.isEmpty()) {
+            throw new IllegalArgumentException("The mapping of " + source + " has no location");
+        }
+        location = locationColumns.toArray(new CsvColumn[0]);
+        latitude = getColumn(columns, "latitude");
+        longitude = getColumn(columns, "longitude");
+        List<CsvColumn> countColumns = new ArrayList<>();
+        for (CsvColumn column : columns.getColumns()) {
+            if (column.isNumeric() && column != date) {
+                countColumns.add(column);
+            }
+        }
+        counts = countColumns.toArray(new CsvColumn[0]);
+        values = new long[counts.length];
+        totalConfirmed = indexOf("totalConfirmed");
+        newConfirmed = indexOf("newConfirmed");
+        totalDeaths = indexOf("totalDeaths");
+        newDeaths = indexOf("newDeaths");
+        return columns.getProjection();
+    }
+
+    private static CsvColumn getColumn(CsvColumns columns, String field) {
+        return columns.contains(field) ? columns.get(field) : null;
+    }
+
+    private int indexOf(String count) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i].getName().equals(count)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private FileReadEvent newFileReadEvent() {
+        File file = getCurrentFile();
+        FileReadEvent fileRead = (file != null)
+                ? new FileReadEvent(source, file.getName(), file.length())
+                : new FileReadEvent(source, null, -1);
+        fileRead.begin();
+        return fileRead;
+    }
+
+    /**
+     * Memory map the file when we know which one it is, otherwise read from the reader
+     */
+    private CsvTokenizer openCsv(Reader inputReader) throws IOException {
+        File file = getCurrentFile();
+        if (file != null && file.isFile()) {
+            return CsvTokenizer.open(file, separator);
+        }
+        return CsvTokenizer.open(inputReader, separator);
+    }
+
+    private boolean nextRow(CsvTokenizer reader) throws IOException {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.PARSE);
+        try {
+            if (reader.next()) {
+                metrics.rowRead();
+                return true;
+            }
+            return false;
+        } finally {
+            metrics.enter(previous);
+        }
+    }
+
+    private void storeDistribution(CsvRow dailyReport) {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
+        try {
+            storeLocationDistribution(dailyReport);
+        } finally {
+            metrics.enter(previous);
+        }
+    }
+
+    private void storeLocationDistribution(CsvRow dailyReport) {
+        for (CsvColumn column : location) {
+            if (column.getField(dailyReport).length() == 0) {
+                if (column.isLookup()) {
+                    // e.g. a state we don't load
+                    metrics.rowSkipped("unknown " + column.getName() + " code");
+                } else {
+                    reject(Quarantine.RowError.MISSING_LOCATION, column, dailyReport);
+                }
+                return;
+            }
+        }
+        long epochDay = date.getLong(dailyReport);
+        if (epochDay == DateCodec.INVALID) {
+            reject(Quarantine.RowError.BAD_DATE, date, dailyReport);
+            return;
+        }
+        boolean complete = true;
+        for (int i = 0; i < counts.length; i++) {
+            values[i] = counts[i].getLong(dailyReport);
+            complete &= values[i] != NumberLexer.INVALID;
+        }
+        if (!complete) {
+            // empty or not a number
+            for (CsvColumn count : counts) {
+                if (count.isInvalid(dailyReport)) {
+                    reject(Quarantine.RowError.BAD_NUMBER, count, dailyReport);
+                    return;
+                }
+            }
+        }
+        int locationId = createGeoLocation(dailyReport);
+        long confirmedValue = getValue(totalConfirmed);
+        long newConfirmedValue = getValue(newConfirmed);
+        long deathsValue = getValue(totalDeaths);
+        long newDeathsValue = getValue(newDeaths);
+        try {
+            if (windows != null) {
+                Item distribution = createCases(locationId, epochDay);
+                windows.add(locationId, epochDay, newConfirmedValue, newDeathsValue,
+                        confirmedValue, distribution);
+            } else {
+                // it fails if the location has already been stored
+                spool.addRow(locationId);
+            }
+            rollups.add(locationId, epochDay, newConfirmedValue, newDeathsValue, confirmedValue,
+                    deathsValue);
+            if (timeSeries != null) {
+                timeSeries.add(locationId, epochDay, confirmedValue, newConfirmedValue,
+                        deathsValue, newDeathsValue);
+            }
+        } catch (ObjectStoreException | IOException e) {
+            throw new RuntimeException("Error storing distribution ", e);
+        }
+    }
+
+    private long getValue(int count) {
+        return (count == -1) ? RollingWindows.MISSING : values[count];
+    }
+
+    private Item createCases(int locationId, long epochDay)
+        throws ObjectStoreException, IOException {
+        Item distribution = createItem("Cases");
+        distribution.setAttribute("date", Long.toString(TimeUnit.DAYS.toMillis(epochDay)));
+        for (int i = 0; i < counts.length; i++) {
+            // an empty field or a missing column, an attribute can't be empty
+            if (values[i] != NumberLexer.INVALID) {
+                distribution.setAttribute(counts[i].getName(), Long.toString(values[i]));
+            }
+        }
+        // first, it fails if the location has already been stored
+        spool.addChild(locationId, distribution.getIdentifier());
+        distribution.setReference("geoLocation", locations.get(locationId));
+        return distribution;
+    }
+
+    private void storeCases(Item distribution, RollingWindows.Window window)
+        throws ObjectStoreException {
+        window.setAttributes(distribution);
+        storeItem(distribution);
+    }
+
+    private void storeRollup(int locationId, Rollups.Period period, Rollups.Rollup rollup)
+        throws ObjectStoreException {
+        Item item = createItem((period == Rollups.Period.WEEK) ? "WeeklyCases" : "MonthlyCases");
+        rollup.setAttributes(item);
+        item.setReference("geoLocation", locations.get(locationId));
+        storeItem(item);
+    }
+
+    private void storeTimeSeries(int locationId, Item geoLocation) throws ObjectStoreException {
+        Item item = createItem("TimeSeries");
+        if (timeSeries.setAttributes(locationId, item)) {
+            item.setReference("geoLocation", geoLocation);
+            geoLocation.setReference("timeSeries", item);
+            storeItem(item);
+        }
+    }
+
+    private int createGeoLocation(CsvRow dailyReport) {
+        int locationId = geoLocations.resolve(getField(country, dailyReport),
+                getField(state, dailyReport), getField(province, dailyReport));
+        if (locationId < locations.size()) {
+            return locationId;
+        } else {
+            Item geoLocationItem = createItem("GeoLocation");
+            // the same for every source, the GeoLocations are merged on it
+            geoLocationItem.setAttribute("canonicalKey", geoLocations.getKey(locationId));
+            setAttributeIfNotEmpty(geoLocationItem, "latitude", latitude, dailyReport);
+            setAttributeIfNotEmpty(geoLocationItem, "longitude", longitude, dailyReport);
+            geoLocationItem.setAttributeIfNotNull("province", geoLocations.getProvince(locationId));
+            geoLocationItem.setAttributeIfNotNull("state", geoLocations.getState(locationId));
+            geoLocationItem.setAttributeIfNotNull("country", geoLocations.getCountry(locationId));
+            locations.add(geoLocationItem);
+            return locationIndex.intern(geoLocations.getKey(locationId));
+        }
+    }
+
+    private static CharSequence getField(CsvColumn column, CsvRow fields) {
+        return (column == null) ? null : column.getField(fields);
+    }
+
+    private void storeGeoLocations() {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
+        try {
+            if (windows != null) {
+                windows.finish();
+            }
+            spool.finish();
+        } catch (ObjectStoreException | IOException e) {
+            throw new RuntimeException("Error storing geoLocation ", e);
+        } finally {
+            spool.close();
+            metrics.enter(previous);
+        }
+    }
+
+    private void storeGeoLocation(int locationId, List<String> childIds)
+        throws ObjectStoreException {
+        Item geoLocation = locations.get(locationId);
+        if (!childIds.isEmpty()) {
+            geoLocation.setCollection("cases", childIds);
+        }
+        if (timeSeries != null) {
+            storeTimeSeries(locationId, geoLocation);
+        }
+        storeItem(geoLocation);
+        // all the rows of the location have been read
+        rollups.finish(locationId);
+        // nothing references the item any more
+        locations.set(locationId, null);
+    }
+
+    private void storeItem(Item item) throws ObjectStoreException {
+        metrics.itemStored(item.getClassName());
+        if (pipeline != null) {
+            pipeline.store(item);
+            return;
+        }
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.STORE);
+        ItemStoreEvent event = new ItemStoreEvent(source, item.getClassName(), 1);
+        event.begin();
+        try {
+            store(item);
+        } finally {
+            event.commit();
+            metrics.enter(previous);
+        }
+    }
+
+    private void storeBatch(List<Item> items) throws ObjectStoreException {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.STORE);
+        ItemStoreEvent event = new ItemStoreEvent(source, items.get(0).getClassName(),
+                items.size());
+        event.begin();
+        try {
+            store(items);
+        } finally {
+            event.commit();
+            metrics.enter(previous);
+        }
+    }
+
+    private static void setAttributeIfNotEmpty(Item item, String name, CsvColumn column,
+            CsvRow fields) {
+        String value = (column == null) ? null : column.getString(fields);
+        if (StringUtils.isNotEmpty(value)) {
+            item.setAttribute(name, value);
+        }
+    }
+
+    private void reject(Quarantine.RowError error, CsvColumn column, CsvRow fields) {
+        quarantine.reject(error, fileName, fields.getLineNumber(), column.getName(),
+                column.getField(fields));
+    }
+}
@@ -0,0 +1,240 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CsvTokenizer over a memory mapped UTF-8 file. The file is mapped a window at a time, so
+ * files bigger than 2GB can be read too. A record never spans two windows: when a record
+ * doesn't end in the current window the next window starts at the beginning of the record.
+ * @author Daniela Butano
+ */
+public class MappedCsvTokenizer extends CsvTokenizer {
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private MappedByteBuffer buffer;
+    // file offset of the first byte in the buffer
+    private long windowStart = 0;
+    private int windowLimit = 0;
+    private int position = 0;
+    private long nextLineNumber = 1;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param csvFile the file to read
+     * @param separator the field separator
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCsvTokenizer(File csvFile, char separator) throws IOException {
+        this(csvFile, separator, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedCsvTokenizer(File csvFile, char separator, int windowSize) throws IOException {
+        super(separator);
+        this.file = new RandomAccessFile(csvFile, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        // skip the UTF-8 byte order mark
+        byte[] start = new byte[3];
+        boolean byteOrderMark = fileSize >= 3 && file.read(start) == 3
+                && (start[0] & 0xff) == 0xef && (start[1] & 0xff) == 0xbb
+                && (start[2] & 0xff) == 0xbf;
+        map(byteOrderMark ? 3 : 0, windowSize);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            if (windowStart + position >= fileSize) {
+                fieldCount = 0;
+                return false;
+            }
+            lineNumber = nextLineNumber;
+            int end = parseRecord();
+            if (end == -1) {
+                // the record doesn't end in this window, map again from its start
+                int size = (position == 0) ? windowLimit * 2 : windowSize;
+                if (size < 0) {
+                    throw new IOException("Record at line " + lineNumber + " is too long");
+                }
+                map(windowStart + position, size);
+                continue;
+            }
+            position = end;
+            if (!isEmptyLine()) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public double getFractionRead() {
+        return (fileSize == 0) ? 1 : (double) (windowStart + position) / fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        file.close();
+    }
+
+    @Override
+    protected int charAt(int bufferPosition) {
+        return buffer.get(bufferPosition) & 0xff;
+    }
+
+    @Override
+    protected String decode(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int written = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            scratch[written++] = b;
+            if (b == QUOTE && i + 1 < end && buffer.get(i + 1) == QUOTE) {
+                i++;
+            }
+        }
+        return new String(scratch, 0, written, StandardCharsets.UTF_8);
+    }
+
+    private void map(long start, int size) throws IOException {
+        long mapSize = Math.min((long) size, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, mapSize);
+        windowStart = start;
+        windowLimit = (int) mapSize;
+        position = 0;
+    }
+
+    /**
+     * Parse the record starting at position
+     * @return the position after the record or -1 if the record doesn't end in the window
+     */
+    private int parseRecord() {
+        fieldCount = 0;
+        boolean lastWindow = windowStart + windowLimit >= fileSize;
+        int limit = windowLimit;
+        int pos = position;
+        int lines = 1;
+        while (true) {
+            int start = pos;
+            int end;
+            boolean decode = false;
+            if (pos < limit && buffer.get(pos) == QUOTE) {
+                pos++;
+                start = pos;
+                while (true) {
+                    if (pos >= limit) {
+                        if (!lastWindow) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    byte b = buffer.get(pos);
+                    if (b == QUOTE) {
+                        if (pos + 1 < limit && buffer.get(pos + 1) == QUOTE) {
+                            decode = true;
+                            pos += 2;
+                            continue;
+                        }
+                        if (pos + 1 >= limit && !lastWindow) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    if (b == LINE_FEED) {
+                        lines++;
+                    } else if (b < 0) {
+                        decode = true;
+                    }
+                    pos++;
+                }
+                end = pos;
+                // skip the closing quote and anything up to the separator
+                while (pos < limit) {
+                    byte b = buffer.get(pos);
+                    if (b == separator || b == LINE_FEED) {
+                        break;
+                    }
+                    pos++;
+                }
+            } else {
+                while (pos < limit) {
+                    byte b = buffer.get(pos);
+                    if (b == separator || b == LINE_FEED) {
+                        break;
+                    } else if (b < 0) {
+                        decode = true;
+                    }
+                    pos++;
+                }
+                end = pos;
+                if (end > start && buffer.get(end - 1) == CARRIAGE_RETURN) {
+                    end--;
+                }
+            }
+            if (pos >= limit && !lastWindow) {
+                return -1;
+            }
+            addField(start, end, decode);
+            if (pos >= limit) {
+                nextLineNumber += lines;
+                return limit;
+            }
+            if (buffer.get(pos) == LINE_FEED) {
+                nextLineNumber += lines;
+                return pos + 1;
+            }
+            if (fieldCount > lastColumn) {
+                return skipLine(pos + 1, limit, lastWindow, lines);
+            }
+            // separator
+            pos++;
+        }
+    }
+
+    /**
+     * Skip the fields not in the projection
+     * @return the position after the line end or -1 if the line doesn't end in the window
+     */
+    private int skipLine(int pos, int limit, boolean lastWindow, int lines) {
+        boolean quoted = false;
+        while (pos < limit) {
+            byte b = buffer.get(pos++);
+            if (b == QUOTE) {
+                quoted = !quoted;
+            } else if (b == LINE_FEED) {
+                if (!quoted) {
+                    nextLineNumber += lines;
+                    return pos;
+                }
+                lines++;
+            }
+        }
+        if (!lastWindow) {
+            return -1;
+        }
+        nextLineNumber += lines;
+        return limit;
+    }
+}
@@ -0,0 +1,125 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Reads integers and decimals from a char range, e.g. a {@link CsvField}, without creating
+ * a String and without using exceptions for the values which are not numbers.
+ * @author Daniela Butano
+ */
+public final class NumberLexer {
+    /** Returned when the value is not a number */
+    public static final long INVALID = Long.MIN_VALUE;
+    // more digits could overflow a long
+    private static final int MAX_DIGITS = 18;
+
+    private NumberLexer() {
+    }
+
+    /**
+     * @param value an optionally signed integer, e.g. 1234 or -3
+     * @return the value, or INVALID if it's empty or not an integer
+     */
+    public static long parseInteger(CharSequence value) {
+        return parseInteger(value, 0, value.length());
+    }
+
+    /**
+     * @param value the chars
+     * @param start the start of the integer
+     * @param end the end of the integer (exclusive)
+     * @return the value, or INVALID if the range is empty or not an integer
+     */
+    public static long parseInteger(CharSequence value, int start, int end) {
+        boolean negative = false;
+        int pos = start;
+        if (pos < end && (value.charAt(pos) == '-' || value.charAt(pos) == '+')) {
+            negative = value.charAt(pos) == '-';
+            pos++;
+        }
+        if (pos == end || end - pos > MAX_DIGITS) {
+            return INVALID;
+        }
+        long number = 0;
+        for (; pos < end; pos++) {
+            int digit = value.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            number = number * 10 + digit;
+        }
+        return negative ? -number : number;
+    }
+
+    /**
+     * Round a decimal to the closest integer the way Math.round(Double.parseDouble(value))
+     * does: halves are rounded up, so 2.5 is 3 and -2.5 is -2.
+     * @param value an optionally signed decimal, e.g. 1234.0, -0.5 or 12
+     * @return the rounded value, or INVALID if it's empty or not a decimal
+     */
+    public static long roundDecimal(CharSequence value) {
+        return roundDecimal(value, 0, value.length());
+    }
+
+    /**
+     * @param value the chars
+     * @param start the start of the decimal
+     * @param end the end of the decimal (exclusive)
+     * @return the rounded value, or INVALID if the range is empty or not a decimal
+     * @see #roundDecimal(CharSequence)
+     */
+    public static long roundDecimal(CharSequence value, int start, int end) {
+        int point = start;
+        while (point < end && value.charAt(point) != '.') {
+            point++;
+        }
+        if (point == end) {
+            return parseInteger(value, start, end);
+        }
+        boolean negative = start < end && value.charAt(start) == '-';
+        long integer = 0;
+        int integerStart = (negative || (start < end && value.charAt(start) == '+'))
+                ? start + 1 : start;
+        if (integerStart < point) {
+            char first = value.charAt(integerStart);
+            integer = parseInteger(value, integerStart, point);
+            if (integer == INVALID || first == '-' || first == '+') {
+                return INVALID;
+            }
+        }
+        // 1 if the fraction is above a half, 0 if exactly a half, -1 if below
+        int half = -1;
+        int pos = point + 1;
+        if (pos < end) {
+            int digit = value.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            half = Integer.signum(digit - 5);
+            for (pos++; pos < end; pos++) {
+                digit = value.charAt(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                if (half == 0 && digit > 0) {
+                    half = 1;
+                }
+            }
+        } else if (integerStart == point) {
+            // only a point
+            return INVALID;
+        }
+        if (negative) {
+            return (half > 0) ? -integer - 1 : -integer;
+        }
+        return (half >= 0) ? integer + 1 : integer;
+    }
+}
@@ -0,0 +1,62 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a batch of rows parsed: a GISAID daily report, or
+ * {@link LoadMetrics#PARSE_BATCH_ROWS} rows of a csv file. When the rows are converted as
+ * they are read the event lasts for both, the parse time is the time in the parser only.
+ * @author Daniela Butano
+ */
+@Name("org.intermine.bio.dataconversion.ParseBatch")
+@Label("Parse Batch")
+@Category({"InterMine", "Data Conversion"})
+@Description("A batch of rows parsed by a converter")
+@StackTrace(false)
+public class ParseBatchEvent extends jdk.jfr.Event {
+    @Label("Source")
+    String source;
+
+    @Label("File")
+    String fileName;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseTime;
+
+    /**
+     * @param source the name of the source, e.g. gisaid-csv
+     * @param fileName the name of the file, null if not known
+     */
+    public ParseBatchEvent(String source, String fileName) {
+        this.source = source;
+        this.fileName = fileName;
+    }
+
+    /**
+     * @param rows the rows parsed
+     * @param parseTime the nanoseconds spent parsing them
+     */
+    public void setParsed(long rows, long parseTime) {
+        this.rows = rows;
+        this.parseTime = parseTime;
+    }
+}
@@ -0,0 +1,247 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent record of the files a directory converter has already loaded (name, size,
+ * last modified time and content hash), so that the next run only needs to read the new
+ * or changed files.
+ * The manifest also keeps a free form state, which the converters use to remember the
+ * identifiers of the items emitted by the previous runs.
+ * Delete the manifest file to force a full reload.
+ * @author Daniela Butano
+ */
+public class ProcessedFileManifest {
+    private static final Logger LOG = Logger.getLogger(ProcessedFileManifest.class);
+    private static final String FILE_PREFIX = "file.";
+    private static final String STATE_PREFIX = "state.";
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final File manifestFile;
+    private final Properties entries = new Properties();
+    private final Map<String, String> hashes = new HashMap<>();
+
+    /**
+     * Load the manifest if it exists, otherwise start with an empty one
+     * @param manifestFile the file the manifest is read from and saved to
+     * @throws IOException if the manifest exists but can't be read
+     */
+    public ProcessedFileManifest(File manifestFile) throws IOException {
+        this.manifestFile = manifestFile;
+        if (manifestFile.exists()) {
+            InputStream is = new FileInputStream(manifestFile);
+            try {
+                entries.load(is);
+            } finally {
+                is.close();
+            }
+            LOG.info("Loaded manifest " + manifestFile + " with "
+                    + getProcessedFileNames().size() + " processed files");
+        }
+    }
+
+    /**
+     * @return true if the manifest doesn't record any processed file
+     */
+    public boolean isEmpty() {
+        return getProcessedFileNames().isEmpty();
+    }
+
+    /**
+     * A file is unchanged if it has been processed before with the same size and either
+     * the same last modified time or, if it has only been touched, the same content.
+     * @param file the file to check
+     * @return true if the file doesn't need to be processed again
+     * @throws IOException if the file can't be read
+     */
+    public boolean isUnchanged(File file) throws IOException {
+        FileEntry entry = getEntry(file.getName());
+        if (entry == null || entry.size != file.length()) {
+            return false;
+        }
+        if (entry.lastModified == file.lastModified()) {
+            return true;
+        }
+        if (entry.hash.equals(getContentHash(file))) {
+            // same content, remember the new time so we don't hash it again next time
+            putEntry(file.getName(), new FileEntry(file.length(), file.lastModified(),
+                    entry.hash));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param fileName the name of a file, without the directory
+     * @return true if a file with this name has been processed before, changed or not
+     */
+    public boolean isProcessed(String fileName) {
+        return entries.containsKey(FILE_PREFIX + fileName);
+    }
+
+    /**
+     * Record the file as processed. Call it once the items read from the file have been stored.
+     * @param file the file processed
+     * @throws IOException if the file can't be read
+     */
+    public void markProcessed(File file) throws IOException {
+        putEntry(file.getName(), new FileEntry(file.length(), file.lastModified(),
+                getContentHash(file)));
+    }
+
+    /**
+     * @return the names of all the processed files
+     */
+    public Set<String> getProcessedFileNames() {
+        Set<String> fileNames = new TreeSet<>();
+        for (String key : entries.stringPropertyNames()) {
+            if (key.startsWith(FILE_PREFIX)) {
+                fileNames.add(key.substring(FILE_PREFIX.length()));
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * @param key the state key
+     * @return the value stored by a previous run or null
+     */
+    public String getState(String key) {
+        return entries.getProperty(STATE_PREFIX + key);
+    }
+
+    /**
+     * @param key the state key
+     * @param value the value, null to remove the key
+     */
+    public void setState(String key, String value) {
+        if (value == null) {
+            entries.remove(STATE_PREFIX + key);
+        } else {
+            entries.setProperty(STATE_PREFIX + key, value);
+        }
+    }
+
+    /**
+     * @param prefix the prefix of the state keys wanted
+     * @return the state keys starting with the prefix, without the prefix
+     */
+    public Set<String> getStateKeys(String prefix) {
+        Set<String> keys = new TreeSet<>();
+        String fullPrefix = STATE_PREFIX + prefix;
+        for (String key : entries.stringPropertyNames()) {
+            if (key.startsWith(fullPrefix)) {
+                keys.add(key.substring(fullPrefix.length()));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Write the manifest. The new content is written to a temporary file which then replaces
+     * the old manifest, so a failed run never leaves a half written manifest behind.
+     * @throws IOException if the manifest can't be written
+     */
+    public void save() throws IOException {
+        File parent = manifestFile.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile(manifestFile.getName(), ".tmp", parent);
+        OutputStream os = new FileOutputStream(tmpFile);
+        try {
+            entries.store(os, "Files processed by the covidmine converters");
+        } finally {
+            os.close();
+        }
+        Files.move(tmpFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileEntry getEntry(String fileName) {
+        String value = entries.getProperty(FILE_PREFIX + fileName);
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split(",");
+        if (fields.length != 3) {
+            LOG.warn("Ignoring malformed manifest entry for " + fileName + ": " + value);
+            return null;
+        }
+        return new FileEntry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+    }
+
+    private void putEntry(String fileName, FileEntry entry) {
+        entries.setProperty(FILE_PREFIX + fileName,
+                entry.size + "," + entry.lastModified + "," + entry.hash);
+    }
+
+    private String getContentHash(File file) throws IOException {
+        String key = file.getAbsolutePath() + "," + file.length() + "," + file.lastModified();
+        String hash = hashes.get(key);
+        if (hash == null) {
+            hash = computeContentHash(file);
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static String computeContentHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream is = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class FileEntry {
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        FileEntry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collects the rows a converter rejects instead of loading them, e.g. a row with a date
+ * which can't be parsed. The converters check the values with the sentinels returned by
+ * {@link DateCodec} and {@link NumberLexer}, so a clean row costs no more than before and a
+ * bad row doesn't throw: it is handed here with a {@link RowError} and skipped.
+ * <p>
+ * Each rejected row is written to the quarantine file, if any, as a tab separated line with
+ * the file, the line, the error, the field and the value. The rejected rows are counted by
+ * the {@link LoadMetrics} of the load by error.
+ * <p>
+ * The error budget is the number of rows which can be rejected, e.g. 100, or the percentage
+ * of the rows read, e.g. 0.5%. Past a number the load fails straight away, a percentage is
+ * checked by finish(). By default there is no limit.
+ * @author Daniela Butano
+ */
+public class Quarantine implements Closeable {
+    private static final Logger LOG = Logger.getLogger(Quarantine.class);
+    // rejected rows logged when there is no quarantine file
+    private static final int MAX_LOGGED = 10;
+
+    /**
+     * Why a row is rejected
+     */
+    public enum RowError {
+        /** the date is empty or not a valid date */
+        BAD_DATE,
+        /** a count is not a number */
+        BAD_NUMBER,
+        /** the row has no location, e.g. an empty country */
+        MISSING_LOCATION,
+        /** the date in the name of a daily report file is not valid, the whole file is skipped */
+        BAD_FILE_NAME;
+
+        /**
+         * @return the reason the rows are counted by in the load report, e.g. "bad date"
+         */
+        public String getReason() {
+            return name().toLowerCase().replace('_', ' ');
+        }
+    }
+
+    private final String source;
+    private final LoadMetrics metrics;
+    private Writer out;
+    private String path;
+    private long maxErrors = -1;
+    private double maxFraction = -1;
+    private long errors = 0;
+
+    /**
+     * @param source the name of the source, e.g. owid-csv
+     * @param metrics counts the rejected rows
+     */
+    public Quarantine(String source, LoadMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Write the rejected rows to a file, which is replaced
+     * @param path the path of the file, null to only log the first rejected rows
+     * @throws IOException if the file can't be created
+     */
+    public void open(String path) throws IOException {
+        if (path == null) {
+            return;
+        }
+        this.path = path;
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(path)),
+                StandardCharsets.UTF_8));
+        out.write("file\tline\terror\tfield\tvalue\n");
+    }
+
+    /**
+     * @param errorBudget the number of rows which can be rejected, e.g. 100, or their
+     * percentage of the rows read, e.g. 0.5%. Empty or negative for no limit.
+     */
+    public void setErrorBudget(String errorBudget) {
+        String budget = (errorBudget == null) ? "" : errorBudget.trim();
+        maxErrors = -1;
+        maxFraction = -1;
+        if (budget.endsWith("%")) {
+            maxFraction = Double.parseDouble(budget.substring(0, budget.length() - 1)) / 100;
+        } else if (!budget.isEmpty()) {
+            maxErrors = Long.parseLong(budget);
+        }
+    }
+
+    /**
+     * Reject a row. The caller skips it.
+     * @param error why
+     * @param file the name of the file of the row, null if not known
+     * @param line the line of the row, 0 for the whole file
+     * @param field the field with the error
+     * @param value the value of the field
+     * @throws IllegalStateException if the error budget is spent
+     */
+    public synchronized void reject(RowError error, String file, long line, String field,
+            CharSequence value) {
+        errors++;
+        metrics.rowSkipped(error.getReason());
+        StringBuilder entry = new StringBuilder();
+        entry.append((file == null) ? "-" : file).append('\t').append(line).append('\t')
+                .append(error.name()).append('\t').append(field).append('\t');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            entry.append((c == '\t' || c == '\n' || c == '\r') ? ' ' : c);
+        }
+        if (out != null) {
+            try {
+                out.write(entry.append('\n').toString());
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing the quarantine file " + path, e);
+            }
+        } else if (errors <= MAX_LOGGED) {
+            LOG.warn(source + " rejected row " + entry);
+        }
+        if (maxErrors >= 0 && errors > maxErrors) {
+            throw new IllegalStateException(source + ": " + errors + " rows rejected, more"
+                    + " than the error budget of " + maxErrors + describeFile());
+        }
+    }
+
+    /**
+     * @return the number of rows rejected
+     */
+    public synchronized long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Check the error budget against all the rows read and close the quarantine file
+     * @throws IOException if the quarantine file can't be written
+     * @throws IllegalStateException if the error budget is spent
+     */
+    public synchronized void finish() throws IOException {
+        close();
+        if (errors > 0) {
+            LOG.warn(source + ": " + errors + " rows rejected" + describeFile());
+        }
+        long rows = metrics.getRowsRead();
+        if (maxFraction >= 0 && errors > 0 && errors > maxFraction * rows) {
+            throw new IllegalStateException(source + ": " + errors + " of " + rows
+                    + " rows rejected, more than the error budget of " + (maxFraction * 100)
+                    + "%" + describeFile());
+        }
+    }
+
+    /**
+     * Close the quarantine file
+     * @throws IOException if the quarantine file can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private String describeFile() {
+        return (path == null) ? "" : ", see " + path;
+    }
+}
@@ -0,0 +1,197 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an input stream ahead on its own thread, a chunk at a time, so that reading it
+ * (e.g. decompressing a file) and using the bytes overlap. At most a fixed number of chunks
+ * are read ahead, the chunks are reused.
+ * @author Daniela Butano
+ */
+public class ReadAheadInputStream extends InputStream {
+    /** Default size of a chunk */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    /** Default number of chunks read ahead */
+    public static final int DEFAULT_CHUNKS = 4;
+
+    private final InputStream in;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> full;
+    private final Thread thread;
+    private volatile IOException failure;
+    private Chunk current;
+    private int position = 0;
+    private boolean ended = false;
+    private boolean closed = false;
+
+    /**
+     * @param in the stream to read, closed by the read ahead thread when it stops
+     * @param name the name of the read ahead thread
+     */
+    public ReadAheadInputStream(InputStream in, String name) {
+        this(in, name, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+
+    ReadAheadInputStream(InputStream in, String name, int chunkSize, int chunks) {
+        this.in = in;
+        // one more chunk than the queue holds, the one being read
+        this.free = new ArrayBlockingQueue<>(chunks + 1);
+        this.full = new ArrayBlockingQueue<>(chunks + 1);
+        for (int i = 0; i <= chunks; i++) {
+            free.add(new Chunk(new byte[chunkSize]));
+        }
+        thread = new Thread(this::readAhead, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int read = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (current == null) ? 0 : current.length - position;
+    }
+
+    /**
+     * Stop the read ahead thread, it closes the stream
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || position == current.length) {
+            if (ended) {
+                return false;
+            }
+            if (current != null) {
+                free.add(current);
+                current = null;
+            }
+            Chunk chunk;
+            try {
+                chunk = full.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ahead");
+            }
+            if (chunk.length == -1) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException("Problem reading ahead", failure);
+                }
+                return false;
+            }
+            current = chunk;
+            position = 0;
+        }
+        return true;
+    }
+
+    private void readAhead() {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                chunk.length = fill(chunk.data);
+                if (chunk.length > 0) {
+                    full.put(chunk);
+                }
+                if (chunk.length < chunk.data.length) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped by close()
+            closeInput();
+            return;
+        } catch (IOException e) {
+            failure = e;
+        }
+        closeInput();
+        try {
+            full.put(new Chunk(null));
+        } catch (InterruptedException e) {
+            // stopped by close()
+        }
+    }
+
+    /**
+     * @return the number of bytes read, less than the buffer size only at the end
+     */
+    private int fill(byte[] buffer) throws IOException {
+        int filled = 0;
+        while (filled < buffer.length) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read == -1) {
+                break;
+            }
+            filled += read;
+        }
+        return filled;
+    }
+
+    private void closeInput() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing more will be read
+        }
+    }
+
+    /**
+     * Bytes read ahead, length -1 at the end of the stream
+     */
+    private static final class Chunk {
+        private final byte[] data;
+        private int length;
+
+        Chunk(byte[] data) {
+            this.data = data;
+            this.length = (data == null) ? -1 : 0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * CsvTokenizer reading from a Reader into a char buffer. Used when there is no file to map,
+ * e.g. when BioFileConverter.process(Reader) isn't given a file.
+ * @author Daniela Butano
+ */
+public class ReaderCsvTokenizer extends CsvTokenizer {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private final Reader reader;
+    private char[] buffer;
+    private int limit = 0;
+    private int position = 0;
+    private boolean endOfInput = false;
+    private boolean started = false;
+    private long nextLineNumber = 1;
+    private DoubleSupplier fractionRead = () -> -1;
+
+    /**
+     * @param reader the reader
+     * @param separator the field separator
+     */
+    public ReaderCsvTokenizer(Reader reader, char separator) {
+        this(reader, separator, DEFAULT_BUFFER_SIZE);
+    }
+
+    ReaderCsvTokenizer(Reader reader, char separator, int bufferSize) {
+        super(separator);
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            fill();
+            if (limit > 0 && buffer[0] == BYTE_ORDER_MARK) {
+                position = 1;
+            }
+        }
+        while (true) {
+            if (position >= limit) {
+                if (endOfInput) {
+                    fieldCount = 0;
+                    return false;
+                }
+                fill();
+                continue;
+            }
+            lineNumber = nextLineNumber;
+            int end = parseRecord();
+            if (end == -1) {
+                fill();
+                continue;
+            }
+            position = end;
+            if (!isEmptyLine()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param fractionRead how much of the input the reader has read, when it knows
+     */
+    void setFractionRead(DoubleSupplier fractionRead) {
+        this.fractionRead = fractionRead;
+    }
+
+    @Override
+    public double getFractionRead() {
+        return fractionRead.getAsDouble();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    @Override
+    protected int charAt(int bufferPosition) {
+        return buffer[bufferPosition];
+    }
+
+    @Override
+    protected String decode(int start, int end) {
+        StringBuilder value = null;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == QUOTE && i + 1 < end && buffer[i + 1] == QUOTE) {
+                if (value == null) {
+                    value = new StringBuilder(end - start);
+                    value.append(buffer, start, i - start);
+                }
+                value.append('"');
+                i++;
+            } else if (value != null) {
+                value.append(buffer[i]);
+            }
+        }
+        return (value == null) ? new String(buffer, start, end - start) : value.toString();
+    }
+
+    /**
+     * Keep the unparsed part of the buffer, growing the buffer if it's all unparsed,
+     * and read more
+     */
+    private void fill() throws IOException {
+        if (endOfInput) {
+            return;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Parse the record starting at position
+     * @return the position after the record or -1 if more input is needed to end it
+     */
+    private int parseRecord() {
+        fieldCount = 0;
+        int pos = position;
+        int lines = 1;
+        while (true) {
+            int start = pos;
+            int end;
+            boolean decode = false;
+            if (pos < limit && buffer[pos] == QUOTE) {
+                pos++;
+                start = pos;
+                while (true) {
+                    if (pos >= limit) {
+                        if (!endOfInput) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    char c = buffer[pos];
+                    if (c == QUOTE) {
+                        if (pos + 1 < limit && buffer[pos + 1] == QUOTE) {
+                            decode = true;
+                            pos += 2;
+                            continue;
+                        }
+                        if (pos + 1 >= limit && !endOfInput) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    if (c == LINE_FEED) {
+                        lines++;
+                    }
+                    pos++;
+                }
+                end = pos;
+                while (pos < limit) {
+                    char c = buffer[pos];
+                    if (c == separator || c == LINE_FEED) {
+                        break;
+                    }
+                    pos++;
+                }
+            } else {
+                while (pos < limit) {
+                    char c = buffer[pos];
+                    if (c == separator || c == LINE_FEED) {
+                        break;
+                    }
+                    pos++;
+                }
+                end = pos;
+                if (end > start && buffer[end - 1] == CARRIAGE_RETURN) {
+                    end--;
+                }
+            }
+            if (pos >= limit && !endOfInput) {
+                return -1;
+            }
+            addField(start, end, decode);
+            if (pos >= limit) {
+                nextLineNumber += lines;
+                return limit;
+            }
+            if (buffer[pos] == LINE_FEED) {
+                nextLineNumber += lines;
+                return pos + 1;
+            }
+            if (fieldCount > lastColumn) {
+                return skipLine(pos + 1, lines);
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Skip the fields not in the projection
+     * @return the position after the line end or -1 if more input is needed to end it
+     */
+    private int skipLine(int pos, int lines) {
+        boolean quoted = false;
+        while (pos < limit) {
+            char c = buffer[pos++];
+            if (c == QUOTE) {
+                quoted = !quoted;
+            } else if (c == LINE_FEED) {
+                if (!quoted) {
+                    nextLineNumber += lines;
+                    return pos;
+                }
+                lines++;
+            }
+        }
+        if (!endOfInput) {
+            return -1;
+        }
+        nextLineNumber += lines;
+        return limit;
+    }
+}
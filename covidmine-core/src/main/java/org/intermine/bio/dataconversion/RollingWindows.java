@@ -0,0 +1,330 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Works out the 7 and 14 day averages of the new cases and deaths, their week over week
+ * growth and the doubling time of the confirmed cases of each day of each location while
+ * the rows are read. Each location keeps the last 14 days in primitive ring buffers.
+ * <p>
+ * The rows of a location must come in date order, oldest first (OWID) or newest first
+ * (COVID Tracking Project). With the oldest first a day is handed to the {@link Emitter} as
+ * soon as it is added. With the newest first a day is held until the 13 days before it have
+ * been added, or until finish(), so both orders give the same values.
+ * A value is only worked out when every day it needs has been added, e.g. the first 6 days
+ * of a location have no 7 day average.
+ * @param <T> what is emitted with the values of a day, e.g. the Cases item
+ * @author Daniela Butano
+ */
+public class RollingWindows<T> {
+    /** A day without a value, e.g. an empty field */
+    public static final long MISSING = Long.MIN_VALUE;
+    /** Number of days of a week */
+    public static final int WEEK = 7;
+    /** Number of days kept for each location */
+    public static final int DAYS = 2 * WEEK;
+    private static final double LN_2 = Math.log(2);
+
+    /**
+     * Receives the values of a day once all the days they depend on are known
+     * @param <T> what was added with the day
+     */
+    public interface Emitter<T> {
+        /**
+         * @param payload what was added with the day
+         * @param window the values of the day, only valid during the call
+         * @throws ObjectStoreException if the payload can't be stored
+         */
+        void emit(T payload, Window window) throws ObjectStoreException;
+    }
+
+    private final boolean newestFirst;
+    private final Emitter<T> emitter;
+    private final List<Location> locations = new ArrayList<>();
+    private final Window window = new Window();
+
+    /**
+     * @param newestFirst true if the rows of a location come newest first
+     * @param emitter receives the values of each day
+     */
+    public RollingWindows(boolean newestFirst, Emitter<T> emitter) {
+        this.newestFirst = newestFirst;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Add a day of a location
+     * @param locationId the location, a small int such as a {@link LocationIndex} id
+     * @param epochDay the day, from 1970-01-01
+     * @param newConfirmed the new confirmed cases, or MISSING
+     * @param newDeaths the new deaths, or MISSING
+     * @param totalConfirmed the confirmed cases so far, or MISSING
+     * @param payload emitted with the values of the day
+     * @throws ObjectStoreException if the emitter fails
+     */
+    public void add(int locationId, long epochDay, long newConfirmed, long newDeaths,
+            long totalConfirmed, T payload) throws ObjectStoreException {
+        while (locations.size() <= locationId) {
+            locations.add(null);
+        }
+        Location location = locations.get(locationId);
+        if (location == null) {
+            location = new Location();
+            locations.set(locationId, location);
+        }
+        int slot = slot(epochDay);
+        if (newestFirst) {
+            // the days with a window not reaching this one are complete
+            emitPending(location, epochDay + DAYS);
+        }
+        if (location.payloads[slot] != null) {
+            // out of order or a repeated day, don't lose what the slot holds
+            emit(location, slot);
+        }
+        location.days[slot] = epochDay;
+        location.newConfirmed[slot] = newConfirmed;
+        location.newDeaths[slot] = newDeaths;
+        location.totalConfirmed[slot] = totalConfirmed;
+        location.payloads[slot] = payload;
+        if (newestFirst) {
+            emitPending(location, epochDay + DAYS - 1);
+        } else {
+            emit(location, slot);
+        }
+    }
+
+    /**
+     * Emit the days still held, with the values known
+     * @throws ObjectStoreException if the emitter fails
+     */
+    public void finish() throws ObjectStoreException {
+        for (Location location : locations) {
+            if (location != null) {
+                emitPending(location, Long.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Emit, newest first, the days held from a day on
+     */
+    private void emitPending(Location location, long fromDay) throws ObjectStoreException {
+        while (true) {
+            int newest = -1;
+            for (int slot = 0; slot < DAYS; slot++) {
+                if (location.payloads[slot] != null && location.days[slot] >= fromDay
+                        && (newest == -1 || location.days[slot] > location.days[newest])) {
+                    newest = slot;
+                }
+            }
+            if (newest == -1) {
+                return;
+            }
+            emit(location, newest);
+        }
+    }
+
+    private void emit(Location location, int slot) throws ObjectStoreException {
+        long day = location.days[slot];
+        double confirmedWeek = sum(location, location.newConfirmed, day, 0, WEEK);
+        double confirmedWeekBefore = sum(location, location.newConfirmed, day, WEEK, WEEK);
+        double deathsWeek = sum(location, location.newDeaths, day, 0, WEEK);
+        double deathsWeekBefore = sum(location, location.newDeaths, day, WEEK, WEEK);
+        window.newConfirmedAverage7 = confirmedWeek / WEEK;
+        window.newConfirmedAverage14 = (confirmedWeek + confirmedWeekBefore) / DAYS;
+        window.newDeathsAverage7 = deathsWeek / WEEK;
+        window.newDeathsAverage14 = (deathsWeek + deathsWeekBefore) / DAYS;
+        window.newConfirmedGrowth = growth(confirmedWeek, confirmedWeekBefore);
+        window.newDeathsGrowth = growth(deathsWeek, deathsWeekBefore);
+        window.confirmedDoublingTime = doublingTime(value(location, location.totalConfirmed,
+                day), value(location, location.totalConfirmed, day - WEEK));
+        @SuppressWarnings("unchecked")
+        T payload = (T) location.payloads[slot];
+        location.payloads[slot] = null;
+        emitter.emit(payload, window);
+    }
+
+    /**
+     * @return the sum of the values of the days from day - offset - count + 1 to day - offset,
+     * NaN if one is missing
+     */
+    private static double sum(Location location, long[] values, long day, int offset,
+            int count) {
+        long sum = 0;
+        for (int i = offset; i < offset + count; i++) {
+            long value = value(location, values, day - i);
+            if (value == MISSING) {
+                return Double.NaN;
+            }
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static long value(Location location, long[] values, long day) {
+        int slot = slot(day);
+        return (location.days[slot] == day) ? values[slot] : MISSING;
+    }
+
+    private static double growth(double week, double weekBefore) {
+        return (weekBefore > 0) ? week / weekBefore - 1 : Double.NaN;
+    }
+
+    private static double doublingTime(long total, long totalWeekBefore) {
+        if (total == MISSING || totalWeekBefore == MISSING || totalWeekBefore <= 0
+                || total <= totalWeekBefore) {
+            return Double.NaN;
+        }
+        return WEEK * LN_2 / Math.log((double) total / totalWeekBefore);
+    }
+
+    private static int slot(long epochDay) {
+        return (int) Math.floorMod(epochDay, (long) DAYS);
+    }
+
+    /**
+     * The last days of a location, each in the slot of its day
+     */
+    private static final class Location {
+        private final long[] days = new long[DAYS];
+        private final long[] newConfirmed = new long[DAYS];
+        private final long[] newDeaths = new long[DAYS];
+        private final long[] totalConfirmed = new long[DAYS];
+        private final Object[] payloads = new Object[DAYS];
+
+        Location() {
+            Arrays.fill(days, MISSING);
+        }
+    }
+
+    /**
+     * The values of a day, NaN when they can't be worked out
+     */
+    public static final class Window {
+        private double newConfirmedAverage7;
+        private double newConfirmedAverage14;
+        private double newDeathsAverage7;
+        private double newDeathsAverage14;
+        private double newConfirmedGrowth;
+        private double newDeathsGrowth;
+        private double confirmedDoublingTime;
+
+        /**
+         * Set the values worked out as attributes of a Cases item
+         * @param cases the item
+         */
+        public void setAttributes(Item cases) {
+            setAttribute(cases, "newConfirmed7DayAverage", newConfirmedAverage7);
+            setAttribute(cases, "newConfirmed14DayAverage", newConfirmedAverage14);
+            setAttribute(cases, "newDeaths7DayAverage", newDeathsAverage7);
+            setAttribute(cases, "newDeaths14DayAverage", newDeathsAverage14);
+            setAttribute(cases, "newConfirmedWeeklyGrowth", newConfirmedGrowth);
+            setAttribute(cases, "newDeathsWeeklyGrowth", newDeathsGrowth);
+            setAttribute(cases, "confirmedDoublingTime", confirmedDoublingTime);
+        }
+
+        /**
+         * @return the average of the new confirmed cases of the day and the 6 days before
+         */
+        public double getNewConfirmedAverage7() {
+            return newConfirmedAverage7;
+        }
+
+        /**
+         * @return the average of the new confirmed cases of the day and the 13 days before
+         */
+        public double getNewConfirmedAverage14() {
+            return newConfirmedAverage14;
+        }
+
+        /**
+         * @return the average of the new deaths of the day and the 6 days before
+         */
+        public double getNewDeathsAverage7() {
+            return newDeathsAverage7;
+        }
+
+        /**
+         * @return the average of the new deaths of the day and the 13 days before
+         */
+        public double getNewDeathsAverage14() {
+            return newDeathsAverage14;
+        }
+
+        /**
+         * @return the new confirmed cases of the last 7 days over those of the 7 days before,
+         * minus 1, e.g. 0.5 for 50% more
+         */
+        public double getNewConfirmedGrowth() {
+            return newConfirmedGrowth;
+        }
+
+        /**
+         * @return the new deaths of the last 7 days over those of the 7 days before, minus 1
+         */
+        public double getNewDeathsGrowth() {
+            return newDeathsGrowth;
+        }
+
+        /**
+         * @return the days the confirmed cases take to double at the growth of the last 7 days
+         */
+        public double getConfirmedDoublingTime() {
+            return confirmedDoublingTime;
+        }
+
+        private static void setAttribute(Item item, String name, double value) {
+            if (!Double.isNaN(value)) {
+                item.setAttribute(name, formatDecimal(value));
+            }
+        }
+    }
+
+    /**
+     * Format a value with at most 3 decimals, which are plenty for an average of counts.
+     * Faster than Double.toString(), which is called a few times per row.
+     * @param value the value
+     * @return the value, e.g. 12.143, 3.5 or 7.0
+     */
+    static String formatDecimal(double value) {
+        long thousandths = Math.round(value * 1000);
+        if (Math.abs(thousandths) >= Long.MAX_VALUE / 10) {
+            return Double.toString(value);
+        }
+        StringBuilder decimal = new StringBuilder(16);
+        if (thousandths < 0) {
+            decimal.append('-');
+            thousandths = -thousandths;
+        }
+        decimal.append(thousandths / 1000).append('.');
+        int fraction = (int) (thousandths % 1000);
+        if (fraction == 0) {
+            return decimal.append('0').toString();
+        }
+        decimal.append((char) ('0' + fraction / 100));
+        fraction %= 100;
+        if (fraction != 0) {
+            decimal.append((char) ('0' + fraction / 10));
+            fraction %= 10;
+            if (fraction != 0) {
+                decimal.append((char) ('0' + fraction));
+            }
+        }
+        return decimal.toString();
+    }
+}
@@ -0,0 +1,302 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Adds up the daily rows of each location by week and by month while they are read, so that
+ * a rollup item (e.g. WeeklyCases) can be stored for each period next to the daily items.
+ * The "new" values (e.g. newConfirmed) of the days of a period are summed, the "total"
+ * values (e.g. totalConfirmed) are taken from the latest day of the period which has one.
+ * <p>
+ * Each location has one open period of each kind, the rows of a location must come in date
+ * order, oldest or newest first. A period is handed to the {@link Emitter} once a row of
+ * another period of the location is added, or by finish(). A row of a period already
+ * emitted is an error.
+ * @author Daniela Butano
+ */
+public class Rollups {
+    /** A day without a value, e.g. an empty field */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    /**
+     * The periods rolled up
+     */
+    public enum Period {
+        /** ISO week, from Monday to Sunday */
+        WEEK,
+        /** calendar month */
+        MONTH;
+
+        /**
+         * @param epochDay a day, from 1970-01-01
+         * @return the first day of the period of the day
+         */
+        public long getStart(long epochDay) {
+            if (this == WEEK) {
+                // 1970-01-01 was a Thursday
+                return Math.floorDiv(epochDay + 3, 7) * 7 - 3;
+            }
+            return LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+        }
+
+        /**
+         * @param start the first day of a period
+         * @return the first day of the next period
+         */
+        public long getEnd(long start) {
+            if (this == WEEK) {
+                return start + 7;
+            }
+            return LocalDate.ofEpochDay(start).plusMonths(1).toEpochDay();
+        }
+    }
+
+    /**
+     * Receives each period of a location once it is complete
+     */
+    public interface Emitter {
+        /**
+         * @param locationId the location id
+         * @param period the kind of period
+         * @param rollup the values of the period, only valid during the call
+         * @throws ObjectStoreException if the rollup can't be stored
+         */
+        void emit(int locationId, Period period, Rollup rollup) throws ObjectStoreException;
+    }
+
+    private final String[] sumNames;
+    private final String[] latestNames;
+    private final Emitter emitter;
+    private final List<Location> locations = new ArrayList<>();
+
+    /**
+     * @param sumNames the attributes summed, e.g. newConfirmed
+     * @param latestNames the attributes taken from the latest day, e.g. totalConfirmed
+     * @param emitter receives the complete periods
+     */
+    public Rollups(String[] sumNames, String[] latestNames, Emitter emitter) {
+        this.sumNames = sumNames;
+        this.latestNames = latestNames;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Add a row of a location
+     * @param locationId the location, a small int such as a {@link LocationIndex} id
+     * @param epochDay the day of the row
+     * @param values the values of the row, the summed ones first, in the order of the names
+     * given to the constructor. MISSING if the row has no value.
+     * @throws ObjectStoreException if the emitter fails
+     */
+    public void add(int locationId, long epochDay, long... values)
+        throws ObjectStoreException {
+        while (locations.size() <= locationId) {
+            locations.add(null);
+        }
+        Location location = locations.get(locationId);
+        if (location == null) {
+            location = new Location();
+            locations.set(locationId, location);
+        }
+        for (Period period : Period.values()) {
+            Rollup rollup = location.rollups[period.ordinal()];
+            if (epochDay < rollup.startDay || epochDay >= rollup.endDay) {
+                if (rollup.days > 0) {
+                    emitter.emit(locationId, period, rollup);
+                }
+                rollup.reset(period, epochDay);
+                if (location.firstDay <= rollup.endDay - 1 && location.lastDay >= rollup.startDay) {
+                    throw new IllegalStateException("The rows of location " + locationId
+                            + " are not in date order, a " + period.name().toLowerCase()
+                            + " has been rolled up before the row of day "
+                            + LocalDate.ofEpochDay(epochDay));
+                }
+            }
+            rollup.add(epochDay, values);
+        }
+        location.firstDay = Math.min(location.firstDay, epochDay);
+        location.lastDay = Math.max(location.lastDay, epochDay);
+    }
+
+    /**
+     * Emit the open periods of a location, e.g. when all its rows have been read. A row of
+     * the location added after is an error.
+     * @param locationId the location id
+     * @throws ObjectStoreException if the emitter fails
+     */
+    public void finish(int locationId) throws ObjectStoreException {
+        if (locationId >= locations.size() || locations.get(locationId) == null) {
+            return;
+        }
+        Location location = locations.get(locationId);
+        for (Period period : Period.values()) {
+            Rollup rollup = location.rollups[period.ordinal()];
+            if (rollup.days > 0) {
+                emitter.emit(locationId, period, rollup);
+                rollup.reset(period, MISSING);
+            }
+        }
+        // nothing can be added any more
+        location.firstDay = Long.MIN_VALUE;
+        location.lastDay = Long.MAX_VALUE;
+    }
+
+    /**
+     * Emit the open periods of all the locations
+     * @throws ObjectStoreException if the emitter fails
+     */
+    public void finish() throws ObjectStoreException {
+        for (int locationId = 0; locationId < locations.size(); locationId++) {
+            finish(locationId);
+        }
+    }
+
+    /**
+     * The periods of a location and the days added
+     */
+    private final class Location {
+        private final Rollup[] rollups = new Rollup[Period.values().length];
+        private long firstDay = Long.MAX_VALUE;
+        private long lastDay = Long.MIN_VALUE;
+
+        Location() {
+            for (int i = 0; i < rollups.length; i++) {
+                rollups[i] = new Rollup(sumNames, latestNames);
+            }
+        }
+    }
+
+    /**
+     * The values of a period of a location
+     */
+    public static final class Rollup {
+        private final String[] sumNames;
+        private final String[] latestNames;
+        private final long[] sums;
+        private final long[] latest;
+        private final long[] latestDays;
+        private long startDay = MISSING;
+        private long endDay = MISSING;
+        private int days = 0;
+        private long lastDay;
+
+        Rollup(String[] sumNames, String[] latestNames) {
+            this.sumNames = sumNames;
+            this.latestNames = latestNames;
+            sums = new long[sumNames.length];
+            latest = new long[latestNames.length];
+            latestDays = new long[latestNames.length];
+        }
+
+        private void reset(Period period, long epochDay) {
+            if (epochDay == MISSING) {
+                startDay = MISSING;
+                endDay = MISSING;
+            } else {
+                startDay = period.getStart(epochDay);
+                endDay = period.getEnd(startDay);
+            }
+            days = 0;
+            lastDay = MISSING;
+            Arrays.fill(sums, MISSING);
+            Arrays.fill(latest, MISSING);
+            Arrays.fill(latestDays, MISSING);
+        }
+
+        private void add(long epochDay, long[] values) {
+            if (epochDay != lastDay) {
+                // repeated rows of a day count once
+                days++;
+                lastDay = epochDay;
+            }
+            for (int i = 0; i < sums.length; i++) {
+                long value = values[i];
+                if (value != MISSING) {
+                    sums[i] = (sums[i] == MISSING) ? value : sums[i] + value;
+                }
+            }
+            for (int i = 0; i < latest.length; i++) {
+                long value = values[sums.length + i];
+                if (value != MISSING && epochDay >= latestDays[i]) {
+                    latest[i] = value;
+                    latestDays[i] = epochDay;
+                }
+            }
+        }
+
+        /**
+         * @return the first day of the period
+         */
+        public long getStartDay() {
+            return startDay;
+        }
+
+        /**
+         * @return the last day of the period
+         */
+        public long getEndDay() {
+            return endDay - 1;
+        }
+
+        /**
+         * @return the number of days of the period with a row
+         */
+        public int getDays() {
+            return days;
+        }
+
+        /**
+         * @param index the index of the summed value
+         * @return the sum of the value over the period, MISSING if no row has it
+         */
+        public long getSum(int index) {
+            return sums[index];
+        }
+
+        /**
+         * @param index the index of the value taken from the latest day
+         * @return the value of the latest day with one, MISSING if no row has it
+         */
+        public long getLatest(int index) {
+            return latest[index];
+        }
+
+        /**
+         * Set the period and the values as attributes of a rollup item: startDate, endDate,
+         * days and the names given to the {@link Rollups}
+         * @param item the item
+         */
+        public void setAttributes(Item item) {
+            item.setAttribute("startDate", Long.toString(TimeUnit.DAYS.toMillis(startDay)));
+            item.setAttribute("endDate", Long.toString(TimeUnit.DAYS.toMillis(endDay - 1)));
+            item.setAttribute("days", Integer.toString(days));
+            for (int i = 0; i < sums.length; i++) {
+                if (sums[i] != MISSING) {
+                    item.setAttribute(sumNames[i], Long.toString(sums[i]));
+                }
+            }
+            for (int i = 0; i < latest.length; i++) {
+                if (latest[i] != MISSING) {
+                    item.setAttribute(latestNames[i], Long.toString(latest[i]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.xml.full.Item;
+
+/**
+ * Collects the daily values of each location while the rows are read, so that a single
+ * TimeSeries item holding the whole history of the location can be stored with its
+ * GeoLocation. Each metric is a day by day series from the first to the last day of the
+ * location, encoded by {@link TimeSeriesCodec}.
+ * <p>
+ * The rows can come in any order, the values of a location are kept in primitive arrays
+ * growing at either end. A later row of a day replaces the values of the earlier one.
+ * @author Daniela Butano
+ */
+public class TimeSeriesBuilder {
+    /** A day without a value, e.g. an empty field */
+    public static final long MISSING = TimeSeriesCodec.MISSING;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Whether a converter stores TimeSeries items
+     */
+    public enum Mode {
+        /** only the daily items */
+        NONE,
+        /** a TimeSeries per location as well as the daily items */
+        ALONGSIDE,
+        /** a TimeSeries per location instead of the daily items */
+        ONLY;
+
+        /**
+         * @param timeSeries the value of a converter timeSeries property: true, false or only
+         * @return the mode
+         */
+        public static Mode forSource(String timeSeries) {
+            String value = timeSeries.trim();
+            if ("only".equalsIgnoreCase(value)) {
+                return ONLY;
+            }
+            return Boolean.parseBoolean(value) ? ALONGSIDE : NONE;
+        }
+    }
+
+    private final String[] names;
+    private final List<Series> locations = new ArrayList<>();
+
+    /**
+     * @param names the attributes of the TimeSeries, one per metric, e.g. totalConfirmed
+     */
+    public TimeSeriesBuilder(String[] names) {
+        this.names = names;
+    }
+
+    /**
+     * Add a row of a location
+     * @param locationId the location, a small int such as a {@link LocationIndex} id
+     * @param epochDay the day of the row
+     * @param values the values of the row in the order of the names given to the
+     * constructor, MISSING if the row has no value
+     */
+    public void add(int locationId, long epochDay, long... values) {
+        while (locations.size() <= locationId) {
+            locations.add(null);
+        }
+        Series series = locations.get(locationId);
+        if (series == null) {
+            series = new Series(names.length, epochDay);
+            locations.set(locationId, series);
+        }
+        series.set(epochDay, values);
+    }
+
+    /**
+     * Set the series of a location as attributes of a TimeSeries item: startDate, endDate,
+     * days and the names given to the constructor. The values of the location are dropped.
+     * @param locationId the location id
+     * @param item the item
+     * @return false if no row of the location has been added, the item is left alone
+     */
+    public boolean setAttributes(int locationId, Item item) {
+        if (locationId >= locations.size() || locations.get(locationId) == null) {
+            return false;
+        }
+        Series series = locations.get(locationId);
+        locations.set(locationId, null);
+        int offset = (int) (series.firstDay - series.origin);
+        int days = (int) (series.lastDay - series.firstDay + 1);
+        item.setAttribute("startDate", Long.toString(TimeUnit.DAYS.toMillis(series.firstDay)));
+        item.setAttribute("endDate", Long.toString(TimeUnit.DAYS.toMillis(series.lastDay)));
+        item.setAttribute("days", Integer.toString(days));
+        for (int i = 0; i < names.length; i++) {
+            item.setAttribute(names[i], TimeSeriesCodec.encode(series.values[i], offset, days));
+        }
+        return true;
+    }
+
+    /**
+     * The values of a location, values[metric][day - origin]
+     */
+    private static final class Series {
+        private long[][] values;
+        private long origin;
+        private long firstDay;
+        private long lastDay;
+
+        Series(int metrics, long epochDay) {
+            values = new long[metrics][INITIAL_CAPACITY];
+            for (long[] metric : values) {
+                Arrays.fill(metric, MISSING);
+            }
+            origin = epochDay;
+            firstDay = epochDay;
+            lastDay = epochDay;
+        }
+
+        private void set(long epochDay, long[] row) {
+            if (epochDay < origin || epochDay - origin >= values[0].length) {
+                grow(epochDay);
+            }
+            firstDay = Math.min(firstDay, epochDay);
+            lastDay = Math.max(lastDay, epochDay);
+            int index = (int) (epochDay - origin);
+            for (int i = 0; i < values.length; i++) {
+                values[i][index] = row[i];
+            }
+        }
+
+        /**
+         * Make room for a day, with as much room again in the direction the days go
+         */
+        private void grow(long epochDay) {
+            long first = Math.min(firstDay, epochDay);
+            long last = Math.max(lastDay, epochDay);
+            long span = last - first + 1;
+            if (span > Integer.MAX_VALUE / 2) {
+                throw new IllegalStateException("The rows of a location span " + span + " days");
+            }
+            int capacity = (int) Math.max(2 * span, values[0].length);
+            long newOrigin = (epochDay < origin) ? last - capacity + 1 : first;
+            for (int i = 0; i < values.length; i++) {
+                long[] metric = new long[capacity];
+                Arrays.fill(metric, MISSING);
+                System.arraycopy(values[i], (int) (firstDay - origin), metric,
+                        (int) (firstDay - newOrigin), (int) (lastDay - firstDay + 1));
+                values[i] = metric;
+            }
+            origin = newOrigin;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Packs the daily values of a metric into a short string attribute of a TimeSeries item.
+ * Each day is a varint: 0 for a day without a value, otherwise the zigzag encoded
+ * difference with the previous value, plus 1. Cumulative counts change little from a day
+ * to the next, so most days take one or two bytes. The bytes are written as base64
+ * (RFC 4648, without line breaks).
+ * @author Daniela Butano
+ */
+public final class TimeSeriesCodec {
+    /** A day without a value */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private TimeSeriesCodec() {
+        // don't instantiate
+    }
+
+    /**
+     * @param values the values of consecutive days, MISSING for a day without a value
+     * @return the encoded series
+     */
+    public static String encode(long[] values) {
+        return encode(values, 0, values.length);
+    }
+
+    /**
+     * @param values the values of consecutive days, MISSING for a day without a value
+     * @param offset the index of the first day
+     * @param length the number of days
+     * @return the encoded series
+     */
+    public static String encode(long[] values, int offset, int length) {
+        byte[] bytes = new byte[Math.max(16, length * 2)];
+        int size = 0;
+        long previous = 0;
+        for (int i = offset; i < offset + length; i++) {
+            long code = 0;
+            if (values[i] != MISSING) {
+                long delta = values[i] - previous;
+                code = ((delta << 1) ^ (delta >> 63)) + 1;
+                previous = values[i];
+            }
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((code & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((code & 0x7F) | 0x80);
+                code >>>= 7;
+            }
+            bytes[size++] = (byte) code;
+        }
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, size));
+    }
+
+    /**
+     * @param series a series returned by encode()
+     * @return the value of each day, MISSING for a day without a value
+     */
+    public static long[] decode(String series) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(series);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid time series " + series, e);
+        }
+        int days = 0;
+        for (byte b : bytes) {
+            if (b >= 0) {
+                days++;
+            }
+        }
+        if (bytes.length > 0 && bytes[bytes.length - 1] < 0) {
+            throw new IllegalArgumentException("Truncated time series " + series);
+        }
+        long[] values = new long[days];
+        long previous = 0;
+        int position = 0;
+        for (int day = 0; day < days; day++) {
+            long code = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                code |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (code == 0) {
+                values[day] = MISSING;
+            } else {
+                code--;
+                previous += (code >>> 1) ^ -(code & 1);
+                values[day] = previous;
+            }
+        }
+        return values;
+    }
+}
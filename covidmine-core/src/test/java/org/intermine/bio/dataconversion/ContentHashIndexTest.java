@@ -0,0 +1,75 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import junit.framework.TestCase;
+
+public class ContentHashIndexTest extends TestCase
+{
+    public ContentHashIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void testPutGet() throws Exception {
+        ContentHashIndex index = new ContentHashIndex();
+        String acgt = "db516c3913e179338b162b2476d1c23f";
+        assertEquals(ContentHashIndex.NOT_FOUND, index.get(acgt));
+        index.put(acgt, 0);
+        assertEquals(0, index.get(acgt));
+        // upper case is the same checksum
+        assertEquals(0, index.get(acgt.toUpperCase()));
+        index.put(acgt, 7);
+        assertEquals(7, index.get(acgt));
+        assertEquals(1, index.size());
+    }
+
+    public void testGrow() throws Exception {
+        ContentHashIndex index = new ContentHashIndex();
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            index.put(md5("sequence " + i), i);
+        }
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.get(md5("sequence " + i)));
+        }
+        assertEquals(ContentHashIndex.NOT_FOUND, index.get(md5("sequence " + count)));
+    }
+
+    public void testInvalidChecksum() throws Exception {
+        ContentHashIndex index = new ContentHashIndex();
+        try {
+            index.get("db516c39");
+            fail("too short");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            index.put("xb516c3913e179338b162b2476d1c23f", 1);
+            fail("not hexadecimal");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String md5(String value) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5")
+                .digest(value.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compare the Properties lookup CountryUtils used to do with the CountryNormaliser, on
+ * country names as found in the data: mostly exact, some with a different case or spacing.
+ * Run with: gradle :covidmine-core:benchmark -Pbenchmark=CountryNormaliserBenchmark
+ * Optional arguments: number of lookups per thread (default 10000000), threads (default 4)
+ * The time per lookup is the wall time divided by the lookups of all the threads.
+ * @author Daniela Butano
+ */
+public final class CountryNormaliserBenchmark {
+    private static final int COUNTRIES = 250;
+    private static final int ORDER_MASK = 65535;
+
+    private CountryNormaliserBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int lookups = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+        int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        final Properties aliases = new Properties();
+        String[] rawNames = new String[COUNTRIES * 4];
+        for (int i = 0; i < COUNTRIES; i++) {
+            aliases.setProperty("Alias of country " + i, "Country " + i);
+            rawNames[i * 4] = "Alias of country " + i;
+            rawNames[i * 4 + 1] = "Country " + i;
+            rawNames[i * 4 + 2] = "ALIAS OF COUNTRY " + i;
+            rawNames[i * 4 + 3] = " alias of  country " + i;
+        }
+        final CountryNormaliser normaliser = new CountryNormaliser(aliases);
+        int propertiesHits = 0;
+        int normaliserHits = 0;
+        for (String name : rawNames) {
+            propertiesHits += (aliases.getProperty(name) != null) ? 1 : 0;
+            normaliserHits += normaliser.isKnown(name) ? 1 : 0;
+        }
+        System.out.println(rawNames.length + " raw names: Properties resolves "
+                + propertiesHits + " aliases, CountryNormaliser " + normaliserHits
+                + " aliases or names");
+        for (int round = 0; round < 3; round++) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                measure("Properties", threads, lookups, rawNames, new Lookup() {
+                    @Override
+                    public String get(String country) {
+                        String newCountry = aliases.getProperty(country);
+                        return (newCountry == null) ? country : newCountry;
+                    }
+                });
+                measure("Normaliser", threads, lookups, rawNames, new Lookup() {
+                    @Override
+                    public String get(String country) {
+                        return normaliser.normalise(country);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void measure(String name, int threads, final int lookups,
+            final String[] rawNames, final Lookup lookup) throws Exception {
+        Random random = new Random(42);
+        final int[] order = new int[ORDER_MASK + 1];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = random.nextInt(rawNames.length);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int thread = 0; thread < threads; thread++) {
+            results.add(pool.submit(() -> {
+                int length = 0;
+                for (int i = 0; i < lookups; i++) {
+                    length += lookup.get(rawNames[order[i & ORDER_MASK]]).length();
+                }
+                return length;
+            }));
+        }
+        for (Future<Integer> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        System.out.println(String.format("%-11s %d threads %8.1f ns/lookup %8d ms", name,
+                threads, (double) elapsed / lookups / threads, elapsed / 1000000));
+    }
+
+    private interface Lookup {
+        String get(String country);
+    }
+}
@@ -0,0 +1,57 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class CountryNormaliserTest extends TestCase
+{
+    private CountryNormaliser normaliser;
+
+    public CountryNormaliserTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        Properties aliases = new Properties();
+        aliases.setProperty("Mainland China", "China");
+        aliases.setProperty("US", "United States");
+        aliases.setProperty("Korea, South", "South Korea");
+        aliases.setProperty("Ivory Coast", "Cote d'Ivoire");
+        normaliser = new CountryNormaliser(aliases);
+    }
+
+    public void testAliases() {
+        assertEquals("China", normaliser.normalise("Mainland China"));
+        assertEquals("China", normaliser.normalise(" mainland  CHINA"));
+        assertEquals("United States", normaliser.normalise("us"));
+        assertEquals("South Korea", normaliser.normalise("Korea,South"));
+        assertEquals("Cote d'Ivoire", normaliser.normalise("IVORY COAST"));
+    }
+
+    public void testCanonicalNames() {
+        assertEquals("United States", normaliser.normalise("united states"));
+        assertEquals("Cote d'Ivoire", normaliser.normalise("C\u00f4te d\u2019Ivoire"));
+        assertEquals("Cote d'Ivoire", normaliser.normalise("cote divoire"));
+        assertTrue(normaliser.isKnown("south-korea"));
+    }
+
+    public void testUnknown() {
+        assertEquals("Italy", normaliser.normalise("Italy"));
+        assertEquals(" italy", normaliser.normalise(" italy"));
+        assertNull(normaliser.normalise(null));
+        assertFalse(normaliser.isKnown("Italy"));
+        // memoised
+        assertEquals("Italy", normaliser.normalise("Italy"));
+    }
+}
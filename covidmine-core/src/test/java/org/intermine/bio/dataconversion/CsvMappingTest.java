@@ -0,0 +1,171 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class CsvMappingTest extends TestCase
+{
+    private static final String MAPPING = "fields = state, country, day, total, new, note\n"
+            + "state.column = state\n"
+            + "state.lookup = codes.properties\n"
+            + "country.value = United States\n"
+            + "day.column = date\n"
+            + "day.type = date\n"
+            + "day.format = yyyyMMdd\n"
+            + "total.column = positive | total_cases\n"
+            + "total.type = count\n"
+            + "new.column = positiveIncrease\n"
+            + "new.type = integer\n"
+            + "new.required = false\n"
+            + "note.column = Notes\n"
+            + "note.match = contains\n"
+            + "note.required = false\n"
+            + "rows.newestFirst = true\n";
+
+    // serves the lookup table of the mapping
+    private static final ClassLoader LOADER = new ClassLoader() {
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if ("codes.properties".equals(name)) {
+                return new ByteArrayInputStream("AK=Alaska\nAL=Alabama\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            }
+            return null;
+        }
+    };
+
+    public CsvMappingTest(String arg) {
+        super(arg);
+    }
+
+    public void testCompile() throws Exception {
+        CsvMapping mapping = load(MAPPING);
+        assertEquals(Arrays.asList("state", "country", "day", "total", "new", "note"),
+                mapping.getFieldNames());
+        assertEquals("true", mapping.getProperty("rows.newestFirst", "false"));
+        assertEquals("x", mapping.getProperty("separator", "x"));
+        CsvColumns columns = mapping.compile(new String[] {"DATE", "hash", "State",
+            "Total_Cases", "Public Notes"});
+        assertEquals(0, columns.get("day").getPosition());
+        assertEquals(2, columns.get("state").getPosition());
+        assertEquals(3, columns.get("total").getPosition());
+        assertEquals(4, columns.get("note").getPosition());
+        // not required
+        assertEquals(-1, columns.get("new").getPosition());
+        assertEquals(-1, columns.get("country").getPosition());
+        assertFalse(columns.contains("hash"));
+        CsvProjection projection = columns.getProjection();
+        assertFalse(projection.includes(1));
+        assertEquals(4, projection.getLastColumn());
+        try {
+            mapping.compile(new String[] {"date", "positive"});
+            fail("the state is missing");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Missing columns [state]"));
+        }
+    }
+
+    public void testFirstFieldMatches() throws Exception {
+        CsvMapping mapping = load("fields = province, state\n"
+                + "province.column = Admin\nprovince.match = contains\n"
+                + "province.required = false\n"
+                + "state.column = State\nstate.match = contains\n");
+        CsvColumns columns = mapping.compile(new String[] {"Admin2", "Province_State"});
+        assertEquals(0, columns.get("province").getPosition());
+        assertEquals(1, columns.get("state").getPosition());
+        columns = mapping.compile(new String[] {"Province/State"});
+        assertEquals(-1, columns.get("province").getPosition());
+        assertEquals(0, columns.get("state").getPosition());
+    }
+
+    public void testColumns() throws Exception {
+        CsvColumns columns = load(MAPPING).compile(new String[] {"date", "state", "positive",
+            "positiveIncrease"});
+        CsvTokenizer row = CsvTokenizer.open(new StringReader("20200305,AK, 12.6 ,3\n"
+                + "20200231,XX,n/a,2.0\n"
+                + ",AL,,\n"), ',');
+        CsvColumn day = columns.get("day");
+        CsvColumn state = columns.get("state");
+        CsvColumn total = columns.get("total");
+        CsvColumn newCount = columns.get("new");
+        CsvColumn note = columns.get("note");
+        assertTrue(row.next());
+        assertEquals(DateCodec.toEpochDay(2020, 3, 5), day.getLong(row));
+        assertEquals("Alaska", state.getString(row));
+        assertEquals("Alaska", state.getField(row).toString());
+        assertTrue(state.isLookup());
+        assertEquals("United States", columns.get("country").getString(row));
+        assertEquals(13, total.getLong(row));
+        assertEquals(3, newCount.getLong(row));
+        assertEquals("", note.getString(row));
+        assertFalse(total.isInvalid(row));
+        try {
+            note.getLong(row);
+            fail("not a count");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertTrue(row.next());
+        assertEquals(CsvColumn.INVALID, day.getLong(row));
+        assertTrue(day.isInvalid(row));
+        assertNull(state.getString(row));
+        assertEquals(0, state.getField(row).length());
+        assertEquals(CsvColumn.INVALID, total.getLong(row));
+        assertTrue(total.isInvalid(row));
+        // an integer count can't be a decimal
+        assertTrue(newCount.isInvalid(row));
+
+        assertTrue(row.next());
+        // empty, not invalid
+        assertEquals(CsvColumn.INVALID, day.getLong(row));
+        assertFalse(day.isInvalid(row));
+        assertEquals(CsvColumn.INVALID, total.getLong(row));
+        assertFalse(total.isInvalid(row));
+        assertEquals("Alabama", state.getString(row));
+        row.close();
+    }
+
+    public void testInvalidMapping() throws Exception {
+        try {
+            load("fields = a\na.type = count\n");
+            fail("a has no column");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            load("fields = a\na.column = a\na.type = money\n");
+            fail("unknown type");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            CsvMapping.load("missing_mapping.properties", LOADER);
+            fail("no such file");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private CsvMapping load(String mapping) throws Exception {
+        Properties properties = new Properties();
+        properties.load(new StringReader(mapping));
+        return new CsvMapping("test", properties, LOADER);
+    }
+}
@@ -0,0 +1,145 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Compare opencsv CSVReader with the memory mapped CsvTokenizer reading 6 of the 60 columns
+ * of a synthetic OWID like file, the way OwidCsvConverter does, with and without a
+ * CsvProjection of the columns read.
+ * Run with: gradle :covidmine-core:benchmark -Pbenchmark=CsvTokenizerBenchmark
+ * Optional arguments: number of rows (default 1000000)
+ * @author Daniela Butano
+ */
+public final class CsvTokenizerBenchmark {
+    private static final int COLUMNS = 60;
+    private static final int[] READ_COLUMNS = {1, 3, 4, 5, 7, 8};
+
+    private CsvTokenizerBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        File file = File.createTempFile("owid-benchmark", ".csv");
+        file.deleteOnExit();
+        writeFile(file, rows);
+        System.out.println(rows + " rows, " + COLUMNS + " columns, " + file.length() + " bytes");
+        for (int round = 0; round < 3; round++) {
+            measure("opencsv", rows, new Benchmark() {
+                @Override
+                public long run() throws IOException {
+                    return readOpenCsv(file);
+                }
+            });
+            measure("CsvTokenizer", rows, new Benchmark() {
+                @Override
+                public long run() throws IOException {
+                    return readTokenizer(file, null);
+                }
+            });
+            measure("projected", rows, new Benchmark() {
+                @Override
+                public long run() throws IOException {
+                    return readTokenizer(file, new CsvProjection(READ_COLUMNS));
+                }
+            });
+        }
+        file.delete();
+    }
+
+    static void writeFile(File file, int rows) throws IOException {
+        Random random = new Random(42);
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int column = 0; column < COLUMNS; column++) {
+                writer.write((column == 0) ? "iso_code" : ",column" + column);
+            }
+            writer.write('\n');
+            for (int row = 0; row < rows; row++) {
+                writer.write("C" + (row / 300));
+                writer.write(",Country " + (row / 300));
+                writer.write(",Continent");
+                writer.write(",2020-" + (1 + row % 12) + "-" + (1 + row % 28));
+                for (int column = 4; column < COLUMNS; column++) {
+                    writer.write(',');
+                    if (random.nextInt(10) > 0) {
+                        writer.write(Double.toString(random.nextInt(100000) / 10.0));
+                    }
+                }
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static long readOpenCsv(File file) throws IOException {
+        long length = 0;
+        CSVReader reader = new CSVReader(new FileReader(file), ',');
+        try {
+            String[] line = reader.readNext();
+            while ((line = reader.readNext()) != null) {
+                for (int column : READ_COLUMNS) {
+                    length += line[column].trim().length();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return length;
+    }
+
+    private static long readTokenizer(File file, CsvProjection projection) throws IOException {
+        long length = 0;
+        CsvTokenizer reader = CsvTokenizer.open(file, ',');
+        try {
+            reader.next();
+            if (projection != null) {
+                reader.setProjection(projection);
+            }
+            while (reader.next()) {
+                for (int column : READ_COLUMNS) {
+                    length += reader.getField(column).length();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return length;
+    }
+
+    private static void measure(String name, int rows, Benchmark benchmark) throws IOException {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        benchmark.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.println(String.format("%-14s %8.1f ns/row %10.1f bytes/row %8d ms",
+                name, (double) elapsed / rows, (double) allocated / rows, elapsed / 1000000));
+    }
+
+    private interface Benchmark {
+        long run() throws IOException;
+    }
+}
@@ -0,0 +1,166 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+public class CsvTokenizerTest extends TestCase
+{
+    private static final String CSV = "\uFEFFiso_code,location,date,total_cases\r\n"
+            + "AFG,Afghanistan,2020-02-24, 1.0 \r\n"
+            + "\r\n"
+            + "CIV,\"Cote d'Ivoire\",2020-03-11,1\n"
+            + "CUW,Cura\u00e7ao,2020-03-13,\n"
+            + "XXX,\"Quoted \"\"name\"\", with comma\",\"2020-03-14\",3\n"
+            + "YYY,\"two\nlines\",2020-03-15,4";
+
+    private static final String[][] EXPECTED = {
+        {"iso_code", "location", "date", "total_cases"},
+        {"AFG", "Afghanistan", "2020-02-24", "1.0"},
+        {"CIV", "Cote d'Ivoire", "2020-03-11", "1"},
+        {"CUW", "Cura\u00e7ao", "2020-03-13", ""},
+        {"XXX", "Quoted \"name\", with comma", "2020-03-14", "3"},
+        {"YYY", "two\nlines", "2020-03-15", "4"},
+    };
+
+    public CsvTokenizerTest(String arg) {
+        super(arg);
+    }
+
+    public void testReader() throws Exception {
+        assertRecords(new ReaderCsvTokenizer(new StringReader(CSV), ',', 8));
+        assertRecords(CsvTokenizer.open(new StringReader(CSV), ','));
+    }
+
+    public void testMappedFile() throws Exception {
+        File file = writeFile(CSV);
+        try {
+            // tiny windows to make records cross the window boundaries
+            for (int windowSize = 1; windowSize < 20; windowSize++) {
+                assertRecords(new MappedCsvTokenizer(file, ',', windowSize));
+            }
+            assertRecords(CsvTokenizer.open(file, ','));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testCompressedFile() throws Exception {
+        for (String extension : new String[] {".gz", ".zst", ".xz"}) {
+            File file = File.createTempFile("csv-tokenizer", ".csv" + extension);
+            try {
+                try (OutputStream os = compress(new FileOutputStream(file), extension)) {
+                    os.write(CSV.getBytes(StandardCharsets.UTF_8));
+                }
+                assertTrue(CompressedInput.isCompressed(file));
+                CsvTokenizer tokenizer = CsvTokenizer.open(file, ',');
+                assertTrue(tokenizer instanceof ReaderCsvTokenizer);
+                assertRecords(tokenizer);
+                assertEquals(1.0, tokenizer.getFractionRead());
+            } finally {
+                file.delete();
+            }
+        }
+        assertEquals("01-22-2020.csv", CompressedInput.getUncompressedName("01-22-2020.csv.gz"));
+        assertEquals("daily.csv", CompressedInput.getUncompressedName("daily.csv.ZSTD"));
+        assertEquals("daily.csv", CompressedInput.getUncompressedName("daily.csv"));
+    }
+
+    public void testFieldView() throws Exception {
+        CsvTokenizer tokenizer = CsvTokenizer.open(new StringReader(CSV), ',');
+        tokenizer.next();
+        tokenizer.next();
+        CsvField cases = tokenizer.getField(3);
+        assertEquals(3, cases.length());
+        assertEquals('.', cases.charAt(1));
+        assertTrue(tokenizer.getField(1).contentEquals("Afghanistan"));
+        assertTrue(tokenizer.getField(10).isEmpty());
+        assertEquals(2, tokenizer.getLineNumber());
+        tokenizer.next();
+        assertEquals(4, tokenizer.getLineNumber());
+        tokenizer.close();
+    }
+
+    public void testProjection() throws Exception {
+        File file = writeFile(CSV);
+        try {
+            for (int windowSize = 1; windowSize < 20; windowSize++) {
+                assertProjection(new MappedCsvTokenizer(file, ',', windowSize));
+            }
+            assertProjection(new ReaderCsvTokenizer(new StringReader(CSV), ',', 8));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertProjection(CsvTokenizer tokenizer) throws IOException {
+        tokenizer.next();
+        tokenizer.setProjection(new CsvProjection(1, -1, 0));
+        int row = 1;
+        while (tokenizer.next()) {
+            assertEquals(2, tokenizer.getFieldCount());
+            assertEquals(EXPECTED[row][0], tokenizer.getString(0));
+            assertEquals(EXPECTED[row][1], tokenizer.getString(1));
+            assertEquals("", tokenizer.getString(2));
+            row++;
+        }
+        tokenizer.close();
+        assertEquals(EXPECTED.length, row);
+    }
+
+    private void assertRecords(CsvTokenizer tokenizer) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        while (tokenizer.next()) {
+            records.add(tokenizer.toStringArray());
+        }
+        tokenizer.close();
+        assertEquals(EXPECTED.length, records.size());
+        for (int i = 0; i < EXPECTED.length; i++) {
+            assertEquals(Arrays.asList(EXPECTED[i]), Arrays.asList(records.get(i)));
+        }
+    }
+
+    private OutputStream compress(OutputStream os, String extension) throws IOException {
+        switch (extension) {
+            case ".gz":
+                return new GZIPOutputStream(os);
+            case ".zst":
+                return new ZstdCompressorOutputStream(os);
+            default:
+                return new XZCompressorOutputStream(os);
+        }
+    }
+
+    private File writeFile(String content) throws IOException {
+        File file = File.createTempFile("csv-tokenizer", ".csv");
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+}
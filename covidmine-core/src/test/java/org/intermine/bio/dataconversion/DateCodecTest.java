@@ -0,0 +1,59 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class DateCodecTest extends TestCase
+{
+    public DateCodecTest(String arg) {
+        super(arg);
+    }
+
+    public void testPatterns() throws Exception {
+        assertEquals(utc("yyyy-MM-dd", "2020-02-24"), DateCodec.ISO_DATE.parseMillis("2020-02-24"));
+        assertEquals(utc("yyyyMMdd", "20200229"), DateCodec.BASIC_DATE.parseMillis("20200229"));
+        assertEquals(utc("MM-dd-yyyy", "12-31-2020"), DateCodec.US_DATE.parseMillis("12-31-2020"));
+        assertEquals(utc("yyyy-MM-dd", "2020-3-5"), DateCodec.ISO_DATE.parseMillis("2020-3-5"));
+        assertEquals(0, DateCodec.ISO_DATE.parseEpochDay("1970-01-01"));
+        assertEquals(-1, DateCodec.ISO_DATE.parseEpochDay("1969-12-31"));
+    }
+
+    public void testEveryDay() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (long day = -800; day < 60000; day++) {
+            String value = format.format(new java.util.Date(day * 24 * 60 * 60 * 1000));
+            assertEquals(value, day, DateCodec.BASIC_DATE.parseEpochDay(value));
+            // again, from the memo
+            assertEquals(value, day, DateCodec.BASIC_DATE.parseEpochDay(value));
+        }
+    }
+
+    public void testInvalid() throws Exception {
+        String[] values = {"", "2020-02-30", "2021-02-29", "2020-13-01", "2020-00-10",
+            "2020-01-32", "2020/01/01", "2020-01-01x", "x2020-01-01", "2020--01"};
+        for (String value : values) {
+            assertEquals(value, DateCodec.INVALID, DateCodec.ISO_DATE.parseMillis(value));
+        }
+        assertEquals(DateCodec.INVALID, DateCodec.BASIC_DATE.parseMillis("202001"));
+        assertEquals(DateCodec.INVALID, DateCodec.BASIC_DATE.parseMillis("2020-01-01"));
+    }
+
+    private long utc(String pattern, String value) throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(value).getTime();
+    }
+}
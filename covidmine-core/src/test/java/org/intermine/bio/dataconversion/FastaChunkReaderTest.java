@@ -0,0 +1,112 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FastaChunkReaderTest extends TestCase
+{
+    private static final String FASTA = "\n>NC_045512 |China|refseq| complete\n"
+            + "ATTAAAGGTT\nTATACC\n"
+            + ">MT000001 |Albania|complete\r\n"
+            + "ATTA\r\nNNNG\r\n\r\n"
+            + ">MT000002 |C\u00f4te d'Ivoire|\n"
+            + ">MT000003 |Peru|partial\n"
+            + "acgt";
+
+    private File file;
+
+    public FastaChunkReaderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        file = File.createTempFile("chunks", ".fa");
+        Files.write(file.toPath(), FASTA.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void tearDown() {
+        file.delete();
+    }
+
+    public void testRead() throws Exception {
+        List<FastaRecord> records = read(1, FastaChunkReader.DEFAULT_CHUNK_SIZE);
+        assertEquals(4, records.size());
+        FastaRecord reference = records.get(0);
+        assertEquals("NC_045512 |China|refseq| complete", reference.getHeader());
+        assertEquals("ATTAAAGGTTTATACC", reference.getResidues());
+        assertEquals(16, reference.getLength());
+        assertEquals(1, reference.getOffset());
+        assertEquals("MT000001 |Albania|complete", records.get(1).getHeader());
+        assertEquals("ATTANNNG", records.get(1).getResidues());
+        assertEquals("MT000002 |C\u00f4te d'Ivoire|", records.get(2).getHeader());
+        assertEquals("", records.get(2).getResidues());
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", records.get(2).getMd5checksum());
+        assertEquals("acgt", records.get(3).getResidues());
+        assertEquals("db516c3913e179338b162b2476d1c23f", records.get(3).getMd5checksum());
+        assertEquals(FASTA.getBytes(StandardCharsets.UTF_8).length
+                - "MT000003 |Peru|partial\nacgt".length() - 1, records.get(3).getOffset());
+    }
+
+    public void testChunks() throws Exception {
+        List<FastaRecord> expected = read(1, FastaChunkReader.DEFAULT_CHUNK_SIZE);
+        // chunks smaller than a record still hold a whole record
+        for (int chunkSize = 1; chunkSize < 60; chunkSize += 7) {
+            for (int threads = 1; threads <= 3; threads++) {
+                List<FastaRecord> records = read(threads, chunkSize);
+                assertEquals(expected.size(), records.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).toString(), records.get(i).toString());
+                    assertEquals(expected.get(i).getMd5checksum(),
+                            records.get(i).getMd5checksum());
+                }
+            }
+        }
+    }
+
+    public void testResume() throws Exception {
+        List<FastaRecord> expected = read(1, FastaChunkReader.DEFAULT_CHUNK_SIZE);
+        for (int i = 0; i < expected.size(); i++) {
+            try (FastaChunkReader reader = new FastaChunkReader(file, 2, 20,
+                    expected.get(i).getEnd())) {
+                for (int j = i + 1; j < expected.size(); j++) {
+                    assertEquals(expected.get(j).toString(), reader.next().toString());
+                }
+                assertNull(reader.next());
+            }
+        }
+    }
+
+    public void testEmptyFile() throws Exception {
+        Files.write(file.toPath(), new byte[0]);
+        assertTrue(read(2, 10).isEmpty());
+    }
+
+    private List<FastaRecord> read(int threads, int chunkSize) throws Exception {
+        List<FastaRecord> records = new ArrayList<>();
+        try (FastaChunkReader reader = new FastaChunkReader(file, threads, chunkSize)) {
+            FastaRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+            assertEquals(1.0, reader.getFractionRead(), 0);
+        }
+        return records;
+    }
+}
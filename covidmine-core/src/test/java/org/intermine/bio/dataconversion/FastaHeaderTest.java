@@ -0,0 +1,76 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class FastaHeaderTest extends TestCase
+{
+    private FastaHeader header = new FastaHeader();
+
+    public FastaHeaderTest(String arg) {
+        super(arg);
+    }
+
+    public void testNcbiVirus() throws Exception {
+        assertHeader(">MT123291 |China|complete", "MT123291", "China", false,
+                FastaHeader.Completeness.COMPLETE);
+        assertHeader("NC_045512 |China|refseq| complete", "NC_045512", "China", true,
+                FastaHeader.Completeness.COMPLETE);
+        // the same instance, the previous fields are dropped
+        assertHeader("MW000001.1|USA: CA, San Diego|partial", "MW000001.1", "USA", false,
+                FastaHeader.Completeness.PARTIAL);
+        assertHeader("MW000002 | Viet Nam |", "MW000002", "Viet Nam", false,
+                FastaHeader.Completeness.UNKNOWN);
+        assertHeader("MW000003 ||complete", "MW000003", null, false,
+                FastaHeader.Completeness.COMPLETE);
+        assertHeader("MW000004 |Italy", "MW000004", "Italy", false,
+                FastaHeader.Completeness.UNKNOWN);
+        // any other flag has always been read as complete
+        assertHeader("MW000005 |Italy|unverified", "MW000005", "Italy", false,
+                FastaHeader.Completeness.COMPLETE);
+        assertHeader("MW000006 |Italy|unverified|partial", "MW000006", "Italy", false,
+                FastaHeader.Completeness.PARTIAL);
+        assertHeader("MW000007 |Italy| |", "MW000007", "Italy", false,
+                FastaHeader.Completeness.UNKNOWN);
+    }
+
+    public void testGenBank() throws Exception {
+        assertHeader(">MN908947.3 Severe acute respiratory syndrome coronavirus 2 isolate"
+                + " Wuhan-Hu-1, complete genome", "MN908947.3", null, false,
+                FastaHeader.Completeness.COMPLETE);
+        assertHeader("MT000005.1 SARS-CoV-2/human/USA/CA-1/2020 ORF1ab, partial cds",
+                "MT000005.1", null, false, FastaHeader.Completeness.PARTIAL);
+        assertHeader("MT000006 incomplete", "MT000006", null, false,
+                FastaHeader.Completeness.UNKNOWN);
+        assertHeader("MT000007", "MT000007", null, false, FastaHeader.Completeness.UNKNOWN);
+        assertHeader("", "", null, false, FastaHeader.Completeness.UNKNOWN);
+    }
+
+    public void testFlags() throws Exception {
+        assertEquals("Y", FastaHeader.Completeness.COMPLETE.getFlag());
+        assertEquals("N", FastaHeader.Completeness.PARTIAL.getFlag());
+        assertEquals("N/A", FastaHeader.Completeness.UNKNOWN.getFlag());
+    }
+
+    private void assertHeader(String line, String identifier, String country,
+            boolean reference, FastaHeader.Completeness completeness) {
+        header.parse(line);
+        assertEquals(identifier, header.getIdentifier().toString());
+        if (country == null) {
+            assertNull(header.getCountry());
+        } else {
+            assertEquals(country, header.getCountry().toString());
+        }
+        assertEquals(reference, header.isReference());
+        assertEquals(completeness, header.getCompleteness());
+    }
+}
@@ -0,0 +1,116 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FastaIndexTest extends TestCase
+{
+    private static final String FASTA = ">NC_045512 |China|refseq| complete\n"
+            + "ATTAA\nAGGTT\nTA\n"
+            + ">MT000001 |Albania|complete\r\n"
+            + "ATTA\r\nNNNG\r\n"
+            + ">MT000002\n"
+            + "\n"
+            + ">MT000003 |Peru|partial\n"
+            + "ACGTA\nC";
+
+    private File file;
+
+    public FastaIndexTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        file = File.createTempFile("index", ".fa");
+        write(FASTA);
+    }
+
+    @Override
+    public void tearDown() {
+        FastaIndex.getIndexFile(file).delete();
+        file.delete();
+    }
+
+    public void testBuild() throws Exception {
+        FastaIndex index = FastaIndex.build(file);
+        assertEquals(4, index.size());
+        assertEquals("NC_045512\t12\t35\t5\t6", index.getEntries().get(0).toString());
+        assertEquals("MT000001\t8\t79\t4\t6", index.get("MT000001").toString());
+        assertEquals("MT000002\t0\t101\t0\t0", index.get("MT000002").toString());
+        FastaIndex.Entry last = index.get("MT000003");
+        assertEquals("MT000003\t6\t126\t5\t6", last.toString());
+        assertEquals(FASTA.length(), last.getEnd());
+        assertEquals(35 + 14, index.getEntries().get(0).getEnd());
+        assertNull(index.get("MT000004"));
+    }
+
+    public void testIrregularLines() throws Exception {
+        write(">MT000001\nACG\nACGT\n");
+        try {
+            FastaIndex.build(file);
+            fail("a line is longer than the first one");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("MT000001"));
+        }
+        write(">MT000001\nACGT\n\nACGT\n");
+        try {
+            FastaIndex.build(file);
+            fail("residues after a blank line");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLoad() throws Exception {
+        File indexFile = FastaIndex.getIndexFile(file);
+        assertFalse(indexFile.exists());
+        FastaIndex built = FastaIndex.load(file);
+        assertTrue(indexFile.exists());
+        FastaIndex read = FastaIndex.load(file);
+        assertEquals(built.getEntries().toString(), read.getEntries().toString());
+        assertEquals(126, read.get("MT000003").getOffset());
+    }
+
+    public void testReadEntries() throws Exception {
+        FastaIndex index = FastaIndex.build(file);
+        List<FastaIndex.Entry> entries = Arrays.asList(index.get("MT000001"),
+                index.get("MT000003"));
+        for (int threads = 1; threads <= 2; threads++) {
+            List<FastaRecord> records = new ArrayList<>();
+            try (FastaChunkReader reader = new FastaChunkReader(file, entries, threads, 10)) {
+                FastaRecord record;
+                while ((record = reader.next()) != null) {
+                    records.add(record);
+                }
+            }
+            assertEquals(2, records.size());
+            assertEquals("MT000001 |Albania|complete", records.get(0).getHeader());
+            assertEquals("ATTANNNG", records.get(0).getResidues());
+            assertEquals(50, records.get(0).getOffset());
+            assertEquals("ACGTAC", records.get(1).getResidues());
+            assertEquals(FASTA.length(), records.get(1).getEnd());
+        }
+    }
+
+    private void write(String fasta) throws Exception {
+        Files.write(file.toPath(), fasta.getBytes(StandardCharsets.UTF_8));
+    }
+}
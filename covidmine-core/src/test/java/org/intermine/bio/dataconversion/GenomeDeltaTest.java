@@ -0,0 +1,115 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GenomeDeltaTest extends TestCase
+{
+    private static final String BASES = "ACGT";
+    private GenomeDelta codec;
+    private String reference;
+
+    public GenomeDeltaTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder residues = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            residues.append(BASES.charAt(random.nextInt(4)));
+        }
+        reference = residues.toString();
+        codec = new GenomeDelta(reference);
+    }
+
+    public void testSame() {
+        assertEquals("", codec.encode(reference));
+        assertEquals(reference, codec.decode(""));
+    }
+
+    public void testVariants() {
+        StringBuilder genome = new StringBuilder(reference);
+        // from the end, so that the positions of the reference don't move
+        genome.insert(1500, "GAG");
+        genome.delete(1099, 1108);
+        for (int i = 599; i < 700; i++) {
+            genome.setCharAt(i, 'N');
+        }
+        genome.setCharAt(240, other(reference.charAt(240)));
+        genome.delete(0, 10);
+        genome.setLength(genome.length() - 5);
+        String delta = codec.encode(genome);
+        // the reference has a G at 1501, so GAG inserted before it is AGG inserted after it
+        assertEquals('G', reference.charAt(1500));
+        assertEquals("del1-10," + reference.charAt(240) + "241" + other(reference.charAt(240))
+                + ",N600-700,del1100-1108,ins1501:AGG,del1996-2000", delta);
+        assertEquals(genome.toString(), codec.decode(delta));
+        assertEquals(genome.toString(), GenomeDelta.decode(reference, delta));
+    }
+
+    public void testRandomGenomes() {
+        Random random = new Random(7);
+        for (int test = 0; test < 200; test++) {
+            StringBuilder genome = new StringBuilder(reference);
+            int variants = random.nextInt(20);
+            for (int v = 0; v < variants; v++) {
+                int position = random.nextInt(genome.length());
+                switch (random.nextInt(4)) {
+                    case 0:
+                        genome.setCharAt(position, BASES.charAt(random.nextInt(4)));
+                        break;
+                    case 1:
+                        genome.delete(position, Math.min(genome.length(),
+                                position + 1 + random.nextInt(30)));
+                        break;
+                    case 2:
+                        genome.insert(position, BASES.charAt(random.nextInt(4)));
+                        break;
+                    default:
+                        for (int i = position; i < Math.min(genome.length(), position + 50);
+                                i++) {
+                            genome.setCharAt(i, 'N');
+                        }
+                }
+            }
+            String delta = codec.encode(genome);
+            assertEquals(delta, genome.toString(), codec.decode(delta));
+            assertTrue(delta, delta.length() < genome.length() / 4);
+        }
+    }
+
+    public void testUnrelatedGenome() {
+        String genome = "ACGTTTGCANNNRYACGT";
+        assertEquals(genome, codec.decode(codec.encode(genome)));
+    }
+
+    public void testInvalidDelta() {
+        String[] invalid = {"X241T", "del5-2", "del3000", "ins10", "N5-3000", "C",
+            "del10,del5", "ins:AC"};
+        for (String delta : invalid) {
+            try {
+                codec.decode(delta);
+                fail(delta);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static char other(char base) {
+        return BASES.charAt((BASES.indexOf(base) + 1) % 4);
+    }
+}
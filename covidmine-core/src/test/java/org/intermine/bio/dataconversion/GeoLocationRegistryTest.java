@@ -0,0 +1,84 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class GeoLocationRegistryTest extends TestCase
+{
+    public GeoLocationRegistryTest(String arg) {
+        super(arg);
+    }
+
+    public void testResolve() throws Exception {
+        GeoLocationRegistry registry = new GeoLocationRegistry();
+        int italy = registry.resolve("Italy", null, null);
+        assertEquals(0, italy);
+        assertEquals(italy, registry.resolve(" italy ", "", null));
+        assertEquals(italy, registry.resolve("ITALY", null, "  "));
+        int ontario = registry.resolve("Canada", "Ontario", null);
+        assertEquals(ontario, registry.resolve("canada", " ontario  ", ""));
+        int toronto = registry.resolve("Canada", "Ontario", "Greater  Toronto");
+        assertFalse(ontario == toronto);
+        assertEquals(3, registry.size());
+        assertEquals("Italy", registry.getCountry(italy));
+        assertNull(registry.getState(italy));
+        assertEquals("Ontario", registry.getState(toronto));
+        assertEquals("Greater Toronto", registry.getProvince(toronto));
+        assertEquals("canada|ontario|greater toronto", registry.getKey(toronto));
+    }
+
+    public void testKeyIsTheSameForEverySource() throws Exception {
+        // each converter has its own registry, the locations are seen in another order
+        GeoLocationRegistry owid = new GeoLocationRegistry();
+        GeoLocationRegistry gisaid = new GeoLocationRegistry();
+        int owidItaly = owid.resolve("Italy", null, null);
+        int owidToronto = owid.resolve("Canada", "Ontario", "Toronto");
+        gisaid.resolve("France", null, null);
+        int gisaidToronto = gisaid.resolve(" canada", "ONTARIO", "toronto ");
+        int gisaidItaly = gisaid.resolve("italy", "", "  ");
+        assertFalse(owidItaly == gisaidItaly);
+        assertEquals(owid.getKey(owidItaly), gisaid.getKey(gisaidItaly));
+        assertEquals(owid.getKey(owidToronto), gisaid.getKey(gisaidToronto));
+        assertEquals("italy||", gisaid.getKey(gisaidItaly));
+        // a state is not its country
+        int ontario = gisaid.resolve("Canada", "Ontario", null);
+        assertFalse(gisaid.getKey(ontario).equals(owid.getKey(owidToronto)));
+    }
+
+    public void testFieldViews() throws Exception {
+        GeoLocationRegistry registry = new GeoLocationRegistry();
+        CsvTokenizer tokenizer = CsvTokenizer.open(new StringReader(
+                "Italy,Lazio\n\"italy\", lazio \nFrance,\n"), ',');
+        int[] ids = new int[3];
+        for (int row = 0; tokenizer.next(); row++) {
+            ids[row] = registry.resolve(tokenizer.getField(0), tokenizer.getField(1), null);
+        }
+        tokenizer.close();
+        assertEquals(ids[0], ids[1]);
+        assertEquals(1, ids[2]);
+        assertEquals("Lazio", registry.getState(ids[1]));
+        assertNull(registry.getState(ids[2]));
+    }
+
+    public void testManyLocations() throws Exception {
+        GeoLocationRegistry registry = new GeoLocationRegistry();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, registry.resolve("Country " + (i / 100), "State " + i, null));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, registry.resolve("country " + (i / 100), "state " + i, null));
+        }
+        assertEquals(5000, registry.size());
+    }
+}
@@ -0,0 +1,133 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+public class ItemPipelineTest extends TestCase
+{
+    private List<String> written;
+
+    public ItemPipelineTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        written = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    public void testOrder() throws Exception {
+        final ItemPipeline<Integer> pipeline = new ItemPipeline<>("test", 3, 2,
+                items -> record(items));
+        pipeline.run(rows(100), row -> pipeline.store(newItem("1_" + row)));
+        pipeline.store(newItem("2_1"));
+        pipeline.finish();
+        assertEquals(101, written.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("1_" + i, written.get(i));
+        }
+        assertEquals("2_1", written.get(100));
+    }
+
+    public void testWriterFailure() throws Exception {
+        final ItemPipeline<Integer> pipeline = new ItemPipeline<>("test", 2, 1, items -> {
+            throw new ObjectStoreException("disk full");
+        });
+        try {
+            pipeline.run(rows(100000), row -> pipeline.store(newItem("1_" + row)));
+            pipeline.finish();
+            fail("Expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    public void testReaderFailure() throws Exception {
+        final ItemPipeline<Integer> pipeline = new ItemPipeline<>("test", 2, 1,
+                items -> record(items));
+        final Iterator<Integer> rows = rows(10);
+        try {
+            pipeline.run(() -> {
+                Integer row = rows.next();
+                if (row == 5) {
+                    throw new IOException("truncated file");
+                }
+                return row;
+            }, row -> pipeline.store(newItem("1_" + row)));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("truncated file", e.getMessage());
+        }
+    }
+
+    public void testBuilderFailure() throws Exception {
+        final ItemPipeline<Integer> pipeline = new ItemPipeline<>("test", 2, 1,
+                items -> record(items));
+        try {
+            pipeline.run(rows(100000), row -> {
+                if (row == 10) {
+                    throw new RuntimeException("bad row");
+                }
+            });
+            fail("Expected a RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals("bad row", e.getMessage());
+        }
+    }
+
+    private static RowIterator rows(int count) {
+        return new RowIterator(count);
+    }
+
+    private void record(List<Item> items) {
+        for (Item item : items) {
+            written.add(item.getIdentifier());
+        }
+    }
+
+    private static Item newItem(String identifier) {
+        return new Item(identifier, "Cases", "");
+    }
+
+    private static final class RowIterator implements Iterator<Integer>,
+            ItemPipeline.RowReader<Integer> {
+        private final int count;
+        private int next = 0;
+
+        RowIterator(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public Integer next() {
+            return next++;
+        }
+
+        @Override
+        public Integer read() {
+            return hasNext() ? next() : null;
+        }
+    }
+}
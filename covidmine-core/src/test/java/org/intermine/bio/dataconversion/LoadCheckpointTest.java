@@ -0,0 +1,41 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class LoadCheckpointTest extends TestCase
+{
+    public LoadCheckpointTest(String arg) {
+        super(arg);
+    }
+
+    public void testResume() throws Exception {
+        File file = File.createTempFile("checkpoint", ".properties");
+        file.delete();
+        LoadCheckpoint checkpoint = new LoadCheckpoint(file);
+        assertEquals(0, checkpoint.getResumeOffset("sequences.fasta", 1000));
+        checkpoint.save("sequences.fasta", 1000, 250);
+        checkpoint.save("more.fasta", 10, 10);
+
+        checkpoint = new LoadCheckpoint(file);
+        assertEquals(250, checkpoint.getResumeOffset("sequences.fasta", 1000));
+        assertEquals(10, checkpoint.getResumeOffset("more.fasta", 10));
+        // not the same file
+        assertEquals(0, checkpoint.getResumeOffset("sequences.fasta", 2000));
+
+        checkpoint.delete();
+        assertFalse(file.exists());
+        assertEquals(0, checkpoint.getResumeOffset("more.fasta", 10));
+    }
+}
@@ -0,0 +1,94 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+public class LoadMetricsTest extends TestCase
+{
+    public LoadMetricsTest(String arg) {
+        super(arg);
+    }
+
+    public void testCounters() throws Exception {
+        LoadMetrics metrics = new LoadMetrics("test");
+        metrics.setProgressInterval(0);
+        metrics.setFractionDone(() -> 0.5);
+        for (int i = 0; i < 3000; i++) {
+            metrics.rowRead();
+        }
+        metrics.rowsRead(10);
+        metrics.rowSkipped("no state");
+        metrics.rowSkipped("no state");
+        metrics.rowSkipped("bad \"date\"");
+        metrics.rowWarning("delta not reversible");
+        metrics.itemStored("Cases");
+        metrics.itemStored("Cases");
+        metrics.itemStored("GeoLocation");
+        assertEquals(3010, metrics.getRowsRead());
+        assertEquals(3, metrics.getRowsSkipped());
+        assertEquals(1, metrics.getRowWarnings());
+        assertEquals(2, metrics.getItemsStored("Cases"));
+        assertEquals(0, metrics.getItemsStored("Distribution"));
+        String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{\"source\":\"test\","));
+        assertTrue(json, json.contains("\"rowsRead\":3010,"));
+        assertTrue(json, json.contains(
+                "\"rowsSkippedByReason\":{\"bad \\\"date\\\"\":1,\"no state\":2},"
+                + "\"rowWarnings\":1,\"rowWarningsByReason\":{\"delta not reversible\":1}"));
+        assertTrue(json, json.contains(
+                "\"itemsStored\":3,\"itemsByClass\":{\"Cases\":2,\"GeoLocation\":1}"));
+        assertTrue(json, json.contains("\"stageMillis\":{\"parse\":"));
+    }
+
+    public void testStages() throws Exception {
+        final LoadMetrics metrics = new LoadMetrics("test");
+        assertNull(metrics.enter(LoadMetrics.Stage.PARSE));
+        Thread.sleep(20);
+        assertEquals(LoadMetrics.Stage.PARSE, metrics.enter(LoadMetrics.Stage.STORE));
+        Thread.sleep(20);
+        // another thread has its own stage
+        Thread writer = new Thread(() -> {
+            metrics.enter(LoadMetrics.Stage.STORE);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                // the time is checked below
+            }
+            metrics.enter(null);
+        });
+        writer.start();
+        writer.join();
+        assertEquals(LoadMetrics.Stage.STORE, metrics.enter(null));
+        assertTrue(metrics.getStageMillis(LoadMetrics.Stage.PARSE) >= 20);
+        assertTrue(metrics.getStageMillis(LoadMetrics.Stage.STORE) >= 60);
+        assertEquals(0, metrics.getStageMillis(LoadMetrics.Stage.CONVERT));
+    }
+
+    public void testReport() throws Exception {
+        LoadMetrics metrics = new LoadMetrics("test");
+        metrics.rowRead();
+        File report = File.createTempFile("load-report", ".json");
+        try {
+            metrics.finish(report.getPath());
+            String json = new String(Files.readAllBytes(report.toPath()),
+                    StandardCharsets.UTF_8);
+            assertEquals(metrics.toJson() + "\n", json);
+            assertTrue(json, json.contains("\"rowsRead\":1,"));
+        } finally {
+            report.delete();
+        }
+    }
+}
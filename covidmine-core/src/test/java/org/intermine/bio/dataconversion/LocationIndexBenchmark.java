@@ -0,0 +1,114 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare the copy on append distribution id cache the converters used to have with the
+ * LocationIndex, on a synthetic input of rows spread over locations.
+ * Run with: gradle :covidmine-core:benchmark -Pbenchmark=LocationIndexBenchmark
+ * Optional arguments: number of rows (default 2000000), number of locations (default 2000)
+ * @author Daniela Butano
+ */
+public final class LocationIndexBenchmark {
+    private static final String ID_PREFIX = "3_";
+
+    private LocationIndexBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+        int locationCount = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        String[] locationKeys = new String[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            locationKeys[i] = "location" + i;
+        }
+        // rows come date by date, one per location, as in the COVID Tracking file
+        String[] rowLocations = new String[rows];
+        String[] rowIds = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            rowLocations[row] = locationKeys[row % locationCount];
+            rowIds[row] = ID_PREFIX + (row + 1);
+        }
+        System.out.println(rows + " rows, " + locationCount + " locations");
+        // the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            measure("copy on append", rows, new Runnable() {
+                @Override
+                public void run() {
+                    copyOnAppend(rowLocations, rowIds);
+                }
+            });
+            measure("LocationIndex", rows, new Runnable() {
+                @Override
+                public void run() {
+                    locationIndex(rowLocations, rowIds);
+                }
+            });
+        }
+    }
+
+    private static long copyOnAppend(String[] rowLocations, String[] rowIds) {
+        Map<String, List<String>> locationDistributionIds = new HashMap<>();
+        for (int row = 0; row < rowLocations.length; row++) {
+            String geoLocationKey = rowLocations[row];
+            if (locationDistributionIds.containsKey(geoLocationKey)) {
+                List<String> ids = locationDistributionIds.get(geoLocationKey);
+                List<String> updatedIds = new ArrayList<>(ids);
+                updatedIds.add(rowIds[row]);
+                locationDistributionIds.put(geoLocationKey, updatedIds);
+            } else {
+                List<String> ids = Arrays.asList(rowIds[row]);
+                locationDistributionIds.put(geoLocationKey, ids);
+            }
+        }
+        long length = 0;
+        for (List<String> ids : locationDistributionIds.values()) {
+            for (String id : ids) {
+                length += id.length();
+            }
+        }
+        return length;
+    }
+
+    private static long locationIndex(String[] rowLocations, String[] rowIds) {
+        LocationIndex index = new LocationIndex();
+        for (int row = 0; row < rowLocations.length; row++) {
+            index.addChild(index.intern(rowLocations[row]), rowIds[row]);
+        }
+        long length = 0;
+        for (int locationId = 0; locationId < index.size(); locationId++) {
+            for (String id : index.getChildIds(locationId)) {
+                length += id.length();
+            }
+        }
+        return length;
+    }
+
+    private static void measure(String name, int rows, Runnable benchmark) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        benchmark.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.println(String.format("%-16s %10.1f ns/row %12.1f bytes/row %8d ms",
+                name, (double) elapsed / rows, (double) allocated / rows, elapsed / 1000000));
+    }
+}
@@ -0,0 +1,98 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LocationIndexTest extends TestCase
+{
+    public LocationIndexTest(String arg) {
+        super(arg);
+    }
+
+    public void testIntern() throws Exception {
+        LocationIndex index = new LocationIndex();
+        assertEquals(-1, index.getId("Italy"));
+        assertEquals(0, index.intern("Italy"));
+        assertEquals(1, index.intern("Spain"));
+        assertEquals(0, index.intern("Italy"));
+        // more than the initial capacity
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 2, index.intern("Country " + i));
+        }
+        assertEquals(0, index.intern("Italy"));
+        assertEquals(1, index.getId("Spain"));
+        assertEquals(501, index.getId("Country 499"));
+        assertEquals("Country 499", index.getKey(501));
+        assertEquals(1002, index.size());
+        try {
+            index.getKey(1002);
+            fail("no such location");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testChildren() throws Exception {
+        LocationIndex index = new LocationIndex();
+        int italy = index.intern("Italy");
+        int spain = index.intern("Spain");
+        List<String> expected = new ArrayList<>();
+        // the int array grows several times
+        for (int i = 0; i < 100; i++) {
+            String identifier = "3_" + (1000 - i * 7);
+            index.addChild(italy, identifier);
+            expected.add(identifier);
+        }
+        index.addChildren(spain, Arrays.asList("3_5", "3_0"));
+        assertEquals(expected, index.getChildIds(italy));
+        assertEquals("3_1000", index.getChildIds(italy).get(0));
+        assertEquals(Arrays.asList("3_5", "3_0"), index.getChildIds(spain));
+        assertEquals(100, index.getChildCount(italy));
+        assertEquals(2, index.getChildCount(spain));
+        assertEquals(102, index.getTotalChildCount());
+
+        index.clearChildren(italy);
+        assertTrue(index.getChildIds(italy).isEmpty());
+        assertEquals(2, index.getTotalChildCount());
+        index.addChild(italy, "3_42");
+        assertEquals(Arrays.asList("3_42"), index.getChildIds(italy));
+        assertEquals(3, index.getTotalChildCount());
+    }
+
+    public void testInvalidChild() throws Exception {
+        LocationIndex index = new LocationIndex();
+        int italy = index.intern("Italy");
+        index.addChild(italy, "3_1");
+        String[] invalid = new String[] {"4_2", "13_2", "3_2a", "3_", "3_-2"};
+        for (String identifier : invalid) {
+            try {
+                index.addChild(italy, identifier);
+                fail(identifier + " is not valid");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(Arrays.asList("3_1"), index.getChildIds(italy));
+        assertEquals(1, index.getChildCount(italy));
+        assertEquals(1, index.getTotalChildCount());
+        try {
+            index.addChild(1, "3_2");
+            fail("no such location");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+}
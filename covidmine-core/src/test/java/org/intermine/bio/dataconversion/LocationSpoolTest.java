@@ -0,0 +1,87 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LocationSpoolTest extends TestCase
+{
+    private List<String> emitted;
+
+    public LocationSpoolTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() {
+        emitted = new ArrayList<>();
+    }
+
+    public void testAll() throws Exception {
+        LocationIndex index = newIndex();
+        LocationSpool spool = new LocationSpool(index, LocationSpool.Mode.ALL, this::record);
+        spool.addChild(1, "2_1");
+        spool.addChild(0, "2_2");
+        spool.addChild(1, "2_3");
+        assertTrue(emitted.isEmpty());
+        spool.finish();
+        assertEquals(Arrays.asList("0:[2_2]", "1:[2_1, 2_3]", "2:[]"), emitted);
+    }
+
+    public void testGrouped() throws Exception {
+        LocationIndex index = newIndex();
+        LocationSpool spool = new LocationSpool(index, LocationSpool.Mode.GROUPED,
+                this::record);
+        spool.addChild(1, "2_1");
+        spool.addChild(1, "2_2");
+        assertTrue(emitted.isEmpty());
+        spool.addChild(0, "2_3");
+        assertEquals(Arrays.asList("1:[2_1, 2_2]"), emitted);
+        assertEquals(1, index.getTotalChildCount());
+        try {
+            spool.addChild(1, "2_4");
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        spool.finish();
+        assertEquals(Arrays.asList("1:[2_1, 2_2]", "0:[2_3]", "2:[]"), emitted);
+    }
+
+    public void testSpill() throws Exception {
+        LocationIndex index = newIndex();
+        LocationSpool spool = new LocationSpool(index, LocationSpool.Mode.SPILL, 3,
+                this::record);
+        String[] rows = {"1", "0", "1", "1", "2", "1", "0"};
+        for (int i = 0; i < rows.length; i++) {
+            spool.addChild(Integer.parseInt(rows[i]), "2_" + i);
+            assertTrue(index.getTotalChildCount() < 3);
+        }
+        spool.finish();
+        assertEquals(Arrays.asList("0:[2_1, 2_6]", "1:[2_0, 2_2, 2_3, 2_5]", "2:[2_4]"),
+                emitted);
+    }
+
+    private LocationIndex newIndex() {
+        LocationIndex index = new LocationIndex();
+        index.intern("italy||");
+        index.intern("france||");
+        index.intern("spain||");
+        return index;
+    }
+
+    private void record(int locationId, List<String> childIds) {
+        emitted.add(locationId + ":" + new ArrayList<>(childIds));
+    }
+}
@@ -0,0 +1,52 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NumberLexerTest extends TestCase
+{
+    public NumberLexerTest(String arg) {
+        super(arg);
+    }
+
+    public void testParseInteger() throws Exception {
+        assertEquals(1234, NumberLexer.parseInteger("1234"));
+        assertEquals(-3, NumberLexer.parseInteger("-3"));
+        assertEquals(7, NumberLexer.parseInteger("+007"));
+        assertEquals(34, NumberLexer.parseInteger("x1234x", 3, 5));
+        String[] invalid = {"", "-", "1.0", "12a", " 1", "1234567890123456789"};
+        for (String value : invalid) {
+            assertEquals(value, NumberLexer.INVALID, NumberLexer.parseInteger(value));
+        }
+    }
+
+    public void testRoundDecimal() throws Exception {
+        String[] values = {"0", "12", "-12", "1234.0", "2.5", "-2.5", "-2.51", "2.49", "-0.5",
+            "-.5", ".5", "5.", "0.05", "-1.5000001", "-1.5000000", "99999.99"};
+        for (String value : values) {
+            assertEquals(value, Math.round(Double.parseDouble(value)),
+                    NumberLexer.roundDecimal(value));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String value = Double.toString((random.nextInt(2000000) - 1000000) / 100.0);
+            assertEquals(value, Math.round(Double.parseDouble(value)),
+                    NumberLexer.roundDecimal(value));
+        }
+        String[] invalid = {"", ".", "-", "-.", "1.2.3", "1,5", "nan", "1e5", "--1.5", "+-1.0"};
+        for (String value : invalid) {
+            assertEquals(value, NumberLexer.INVALID, NumberLexer.roundDecimal(value));
+        }
+    }
+}
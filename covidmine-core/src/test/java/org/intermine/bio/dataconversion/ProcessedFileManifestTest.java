@@ -0,0 +1,156 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class ProcessedFileManifestTest extends TestCase
+{
+    private File dir;
+    private File manifestFile;
+
+    public ProcessedFileManifestTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("manifest", "");
+        dir.delete();
+        dir.mkdir();
+        manifestFile = new File(dir, "manifest.properties");
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testUnchanged() throws Exception {
+        File report = write("01-22-2020.csv", "a,b\n1,2\n");
+        ProcessedFileManifest manifest = new ProcessedFileManifest(manifestFile);
+        assertTrue(manifest.isEmpty());
+        assertFalse(manifest.isUnchanged(report));
+        manifest.markProcessed(report);
+        assertTrue(manifest.isUnchanged(report));
+        assertTrue(manifest.isProcessed("01-22-2020.csv"));
+
+        // touched, same content
+        report.setLastModified(report.lastModified() - 60000);
+        assertTrue(manifest.isUnchanged(report));
+
+        // same size and time: trusted, the content is not hashed again
+        long lastModified = report.lastModified();
+        write("01-22-2020.csv", "a,b\n3,4\n");
+        report.setLastModified(lastModified);
+        assertTrue(manifest.isUnchanged(report));
+
+        // same size, new time and content
+        report.setLastModified(lastModified - 60000);
+        assertFalse(manifest.isUnchanged(report));
+
+        // new size
+        manifest.markProcessed(report);
+        assertTrue(manifest.isUnchanged(report));
+        write("01-22-2020.csv", "a,b\n3,4\n5,6\n");
+        report.setLastModified(lastModified - 60000);
+        assertFalse(manifest.isUnchanged(report));
+        assertTrue(manifest.isProcessed("01-22-2020.csv"));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        File first = write("01-22-2020.csv", "a\n1\n");
+        File second = write("01-23-2020.csv", "a\n2\n");
+        ProcessedFileManifest manifest = new ProcessedFileManifest(manifestFile);
+        manifest.markProcessed(first);
+        manifest.markProcessed(second);
+        manifest.setState("lastIdentifier.Distribution", "12");
+        manifest.setState("geoLocation.Italy", "1");
+        manifest.setState("geoLocation.Spain", "2");
+        manifest.setState("report.01-22-2020.csv", "3,7");
+        manifest.save();
+        manifest.setState("geoLocation.France", "4");
+
+        // a new save replaces the previous manifest, no temporary file is left
+        manifest.save();
+        String[] files = dir.list();
+        Arrays.sort(files);
+        assertEquals(Arrays.asList("01-22-2020.csv", "01-23-2020.csv", "manifest.properties"),
+                Arrays.asList(files));
+
+        manifest = new ProcessedFileManifest(manifestFile);
+        assertFalse(manifest.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("01-22-2020.csv", "01-23-2020.csv")),
+                manifest.getProcessedFileNames());
+        assertTrue(manifest.isUnchanged(first));
+        assertTrue(manifest.isUnchanged(second));
+        assertEquals("12", manifest.getState("lastIdentifier.Distribution"));
+        assertEquals("3,7", manifest.getState("report.01-22-2020.csv"));
+        assertEquals(new HashSet<>(Arrays.asList("France", "Italy", "Spain")),
+                manifest.getStateKeys("geoLocation."));
+        assertEquals("4", manifest.getState("geoLocation.France"));
+    }
+
+    public void testMissingAndStaleState() throws Exception {
+        ProcessedFileManifest manifest = new ProcessedFileManifest(manifestFile);
+        assertNull(manifest.getState("lastIdentifier.Distribution"));
+        assertTrue(manifest.getStateKeys("geoLocation.").isEmpty());
+
+        manifest.setState("report.01-22-2020.csv", "3,7");
+        manifest.setState("geoLocation.Italy", "1");
+        manifest.setState("locationKeys", "country,state");
+        manifest.save();
+
+        manifest = new ProcessedFileManifest(manifestFile);
+        // a reloaded report replaces its range, an empty one removes it
+        manifest.setState("report.01-22-2020.csv", "8,9");
+        manifest.setState("geoLocation.Italy", null);
+        manifest.save();
+
+        manifest = new ProcessedFileManifest(manifestFile);
+        assertEquals("8,9", manifest.getState("report.01-22-2020.csv"));
+        assertNull(manifest.getState("geoLocation.Italy"));
+        assertTrue(manifest.getStateKeys("geoLocation.").isEmpty());
+        // kept as written, the converter compares it with its own keys to find it stale
+        assertEquals("country,state", manifest.getState("locationKeys"));
+        // states and files don't mix
+        assertTrue(manifest.isEmpty());
+        assertFalse(manifest.isProcessed("01-22-2020.csv"));
+    }
+
+    public void testMissingManifest() throws Exception {
+        ProcessedFileManifest manifest = new ProcessedFileManifest(manifestFile);
+        assertFalse(manifestFile.exists());
+        assertTrue(manifest.getProcessedFileNames().isEmpty());
+        manifest.save();
+        assertTrue(manifestFile.exists());
+        assertTrue(new ProcessedFileManifest(manifestFile).isEmpty());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(dir, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
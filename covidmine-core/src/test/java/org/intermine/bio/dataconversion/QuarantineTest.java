@@ -0,0 +1,94 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class QuarantineTest extends TestCase
+{
+    private File file;
+
+    public QuarantineTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        file = File.createTempFile("quarantine", ".tsv");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testReject() throws Exception {
+        LoadMetrics metrics = new LoadMetrics("test");
+        Quarantine quarantine = new Quarantine("test", metrics);
+        quarantine.open(file.getPath());
+        quarantine.reject(Quarantine.RowError.BAD_DATE, "owid.csv", 12, "date", "2020-02-30");
+        quarantine.reject(Quarantine.RowError.BAD_NUMBER, "owid.csv", 40, "deaths", "n/a\t1");
+        quarantine.reject(Quarantine.RowError.BAD_NUMBER, null, 41, "deaths", "");
+        quarantine.finish();
+        assertEquals(3, quarantine.getErrors());
+        assertEquals(3, metrics.getRowsSkipped());
+        assertTrue(metrics.toJson().contains("\"bad number\":2"));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("file\tline\terror\tfield\tvalue", lines.get(0));
+        assertEquals("owid.csv\t12\tBAD_DATE\tdate\t2020-02-30", lines.get(1));
+        // the value can't break the columns
+        assertEquals("owid.csv\t40\tBAD_NUMBER\tdeaths\tn/a 1", lines.get(2));
+        assertEquals("-\t41\tBAD_NUMBER\tdeaths\t", lines.get(3));
+    }
+
+    public void testErrorCount() throws Exception {
+        Quarantine quarantine = new Quarantine("test", new LoadMetrics("test"));
+        quarantine.setErrorBudget("2");
+        quarantine.reject(Quarantine.RowError.BAD_DATE, "a.csv", 1, "date", "x");
+        quarantine.reject(Quarantine.RowError.BAD_DATE, "a.csv", 2, "date", "x");
+        try {
+            quarantine.reject(Quarantine.RowError.BAD_DATE, "a.csv", 3, "date", "x");
+            fail("the budget is 2 rows");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        quarantine.close();
+    }
+
+    public void testErrorPercentage() throws Exception {
+        LoadMetrics metrics = new LoadMetrics("test");
+        metrics.rowsRead(200);
+        Quarantine quarantine = new Quarantine("test", metrics);
+        quarantine.setErrorBudget(" 1% ");
+        // only checked at the end
+        quarantine.reject(Quarantine.RowError.MISSING_LOCATION, "a.csv", 1, "country", "");
+        quarantine.reject(Quarantine.RowError.MISSING_LOCATION, "a.csv", 2, "country", "");
+        quarantine.finish();
+
+        quarantine = new Quarantine("test", metrics);
+        quarantine.setErrorBudget("1%");
+        for (int i = 0; i < 3; i++) {
+            quarantine.reject(Quarantine.RowError.MISSING_LOCATION, "a.csv", i, "country", "");
+        }
+        try {
+            quarantine.finish();
+            fail("3 rows of 200 are more than 1%");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
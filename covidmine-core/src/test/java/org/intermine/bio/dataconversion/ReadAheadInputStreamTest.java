@@ -0,0 +1,109 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ReadAheadInputStreamTest extends TestCase
+{
+    public ReadAheadInputStreamTest(String arg) {
+        super(arg);
+    }
+
+    public void testRead() throws Exception {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        // chunk sizes that do and don't divide the input
+        for (int chunkSize : new int[] {1, 7, 1000, 20000}) {
+            ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data),
+                    "test", chunkSize, 2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(data[0] & 0xff, in.read());
+            out.write(data[0]);
+            byte[] buffer = new byte[333];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertEquals(-1, in.read());
+            in.close();
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+        }
+        ReadAheadInputStream empty = new ReadAheadInputStream(
+                new ByteArrayInputStream(new byte[0]), "test");
+        assertEquals(-1, empty.read());
+        empty.close();
+    }
+
+    public void testFailure() throws Exception {
+        InputStream failing = new InputStream() {
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ >= 100) {
+                    throw new IOException("corrupt input");
+                }
+                return 'a';
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(failing, "test", 16, 2);
+        int read = 0;
+        try {
+            while (in.read() != -1) {
+                read++;
+            }
+            fail("the failure should be thrown by the reader");
+        } catch (IOException e) {
+            assertEquals("corrupt input", e.getCause().getMessage());
+        }
+        // the full chunks before the failure are read
+        assertEquals(96, read);
+        in.close();
+    }
+
+    public void testClose() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 'a';
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(endless, "test", 16, 2);
+        assertEquals('a', in.read());
+        in.close();
+        try {
+            in.read();
+            fail("a closed stream can't be read");
+        } catch (IOException e) {
+            // expected
+        }
+        // the read ahead thread stops and closes its input
+        for (int i = 0; i < 100 && !closed[0]; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(closed[0]);
+    }
+}
@@ -0,0 +1,118 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class RollingWindowsTest extends TestCase
+{
+    private static final int DAYS = 30;
+
+    public RollingWindowsTest(String arg) {
+        super(arg);
+    }
+
+    public void testOldestFirst() throws Exception {
+        List<String> emitted = new ArrayList<>();
+        RollingWindows<String> windows = newWindows(false, emitted);
+        for (int day = 0; day < DAYS; day++) {
+            add(windows, day);
+            // emitted as soon as added
+            assertEquals(day + 1, emitted.size());
+        }
+        windows.finish();
+        assertEquals(DAYS, emitted.size());
+        // day 1 has no full week
+        assertEquals("1:NaN/NaN/NaN/NaN/NaN", emitted.get(1));
+        // new confirmed 10 * day, new deaths 1 a day, total confirmed 5 * day * (day + 1)
+        assertEquals("6:30.0/NaN/1.0/NaN/NaN", emitted.get(6));
+        assertEquals("7:40.0/NaN/1.0/NaN/" + doublingTime(7), emitted.get(7));
+        assertEquals("13:100.0/65.0/1.0/" + (700.0 / 210 - 1) + "/" + doublingTime(13),
+                emitted.get(13));
+    }
+
+    public void testNewestFirst() throws Exception {
+        List<String> oldestFirst = new ArrayList<>();
+        RollingWindows<String> windows = newWindows(false, oldestFirst);
+        for (int day = 0; day < DAYS; day++) {
+            add(windows, day);
+        }
+        windows.finish();
+
+        List<String> newestFirst = new ArrayList<>();
+        windows = newWindows(true, newestFirst);
+        for (int day = DAYS - 1; day >= 0; day--) {
+            add(windows, day);
+            // held until the 13 days before are added
+            assertEquals(Math.max(0, DAYS - day - RollingWindows.DAYS + 1), newestFirst.size());
+        }
+        windows.finish();
+        Collections.reverse(newestFirst);
+        assertEquals(oldestFirst, newestFirst);
+    }
+
+    public void testMissingDays() throws Exception {
+        List<String> emitted = new ArrayList<>();
+        RollingWindows<String> windows = newWindows(true, emitted);
+        for (int day = DAYS - 1; day >= 0; day--) {
+            if (day != 10) {
+                windows.add(0, day, (day == 20) ? RollingWindows.MISSING : 10 * day, 1,
+                        5 * day * (day + 1), Integer.toString(day));
+            }
+        }
+        // another location in between
+        windows.add(1, 5, 1, 1, 1, "other");
+        windows.finish();
+        assertEquals(DAYS, emitted.size());
+        for (String value : emitted) {
+            String[] fields = value.split("[:/]");
+            if ("other".equals(fields[0])) {
+                continue;
+            }
+            int day = Integer.parseInt(fields[0]);
+            boolean weekComplete = day >= 6 && (day < 10 || day > 16) && (day < 20 || day > 26);
+            assertEquals(value, weekComplete, !"NaN".equals(fields[1]));
+            // the deaths don't miss day 20
+            assertEquals(value, day >= 6 && (day < 10 || day > 16), !"NaN".equals(fields[3]));
+        }
+    }
+
+    public void testFormatDecimal() throws Exception {
+        assertEquals("7.0", RollingWindows.formatDecimal(7));
+        assertEquals("12.143", RollingWindows.formatDecimal(85.0 / 7));
+        assertEquals("12.05", RollingWindows.formatDecimal(12.0504));
+        assertEquals("0.005", RollingWindows.formatDecimal(0.005));
+        assertEquals("-0.25", RollingWindows.formatDecimal(-0.25));
+        assertEquals("1.5E30", RollingWindows.formatDecimal(1.5e30));
+    }
+
+    private RollingWindows<String> newWindows(boolean newestFirst, final List<String> emitted) {
+        return new RollingWindows<>(newestFirst, (day, window) -> emitted.add(day + ":"
+                + window.getNewConfirmedAverage7() + "/" + window.getNewConfirmedAverage14()
+                + "/" + window.getNewDeathsAverage7() + "/" + window.getNewConfirmedGrowth()
+                + "/" + window.getConfirmedDoublingTime()));
+    }
+
+    private void add(RollingWindows<String> windows, int day) throws Exception {
+        windows.add(0, day, 10 * day, 1, 5 * day * (day + 1), Integer.toString(day));
+    }
+
+    private static double doublingTime(int day) {
+        double total = 5.0 * day * (day + 1);
+        double totalWeekBefore = 5.0 * (day - 7) * (day - 6);
+        return (totalWeekBefore <= 0) ? Double.NaN
+                : 7 * Math.log(2) / Math.log(total / totalWeekBefore);
+    }
+}
@@ -0,0 +1,121 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class RollupsTest extends TestCase
+{
+    // a Wednesday
+    private static final long FIRST_DAY = LocalDate.of(2020, 1, 29).toEpochDay();
+    private static final int DAYS = 10;
+
+    public RollupsTest(String arg) {
+        super(arg);
+    }
+
+    public void testPeriods() throws Exception {
+        assertEquals(LocalDate.of(2020, 1, 27).toEpochDay(),
+                Rollups.Period.WEEK.getStart(FIRST_DAY));
+        assertEquals(LocalDate.of(2020, 1, 27).toEpochDay(), Rollups.Period.WEEK.getStart(
+                LocalDate.of(2020, 2, 2).toEpochDay()));
+        assertEquals(LocalDate.of(1969, 12, 29).toEpochDay(), Rollups.Period.WEEK.getStart(0));
+        assertEquals(LocalDate.of(2020, 1, 1).toEpochDay(),
+                Rollups.Period.MONTH.getStart(FIRST_DAY));
+        assertEquals(LocalDate.of(2020, 3, 1).toEpochDay(), Rollups.Period.MONTH.getEnd(
+                LocalDate.of(2020, 2, 1).toEpochDay()));
+    }
+
+    public void testOldestFirst() throws Exception {
+        List<String> emitted = new ArrayList<>();
+        Rollups rollups = newRollups(emitted);
+        for (int day = 0; day < DAYS; day++) {
+            add(rollups, 0, day);
+        }
+        // the first week and January
+        assertEquals(2, emitted.size());
+        rollups.finish();
+        assertEquals(4, emitted.size());
+        Collections.sort(emitted);
+        // the new cases of a day are its number, day 3 (1 February) has no total
+        assertEquals("MONTH 0 2020-01-01..2020-01-31 3 days 3 2", emitted.get(0));
+        assertEquals("MONTH 0 2020-02-01..2020-02-29 7 days 42 9", emitted.get(1));
+        assertEquals("WEEK 0 2020-01-27..2020-02-02 5 days 10 4", emitted.get(2));
+        assertEquals("WEEK 0 2020-02-03..2020-02-09 5 days 35 9", emitted.get(3));
+    }
+
+    public void testNewestFirst() throws Exception {
+        List<String> oldestFirst = new ArrayList<>();
+        Rollups rollups = newRollups(oldestFirst);
+        for (int day = 0; day < DAYS; day++) {
+            add(rollups, 0, day);
+            add(rollups, 1, day);
+        }
+        rollups.finish();
+        List<String> newestFirst = new ArrayList<>();
+        rollups = newRollups(newestFirst);
+        for (int day = DAYS - 1; day >= 0; day--) {
+            add(rollups, 1, day);
+            add(rollups, 0, day);
+            // a repeated row counts once
+            add(rollups, 0, day);
+        }
+        rollups.finish();
+        assertEquals(8, oldestFirst.size());
+        Collections.sort(oldestFirst);
+        Collections.sort(newestFirst);
+        for (int i = 0; i < oldestFirst.size(); i++) {
+            // the repeated rows add to the sums
+            String expected = oldestFirst.get(i);
+            assertEquals(expected.substring(0, expected.indexOf(" days")),
+                    newestFirst.get(i).substring(0, newestFirst.get(i).indexOf(" days")));
+        }
+    }
+
+    public void testNotInOrder() throws Exception {
+        Rollups rollups = newRollups(new ArrayList<String>());
+        add(rollups, 0, 0);
+        add(rollups, 0, 7);
+        try {
+            add(rollups, 0, 1);
+            fail("the first week has been rolled up");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        rollups.finish(0);
+        try {
+            add(rollups, 0, 20);
+            fail("the location has been finished");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // another location
+        add(rollups, 1, 1);
+    }
+
+    private Rollups newRollups(final List<String> emitted) {
+        return new Rollups(new String[] {"newConfirmed"}, new String[] {"totalConfirmed"},
+            (locationId, period, rollup) -> emitted.add(period + " " + locationId + " "
+                + LocalDate.ofEpochDay(rollup.getStartDay()) + ".."
+                + LocalDate.ofEpochDay(rollup.getEndDay()) + " " + rollup.getDays() + " days "
+                + rollup.getSum(0) + " " + rollup.getLatest(0)));
+    }
+
+    private void add(Rollups rollups, int locationId, int day) throws Exception {
+        rollups.add(locationId, FIRST_DAY + day, day,
+                (day == 3) ? Rollups.MISSING : day);
+    }
+}
@@ -0,0 +1,119 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.intermine.xml.full.Item;
+
+public class TimeSeriesBuilderTest extends TestCase
+{
+    private static final long MISSING = TimeSeriesBuilder.MISSING;
+    private static final long FIRST_DAY = LocalDate.of(2020, 1, 22).toEpochDay();
+    private static final int DAYS = 200;
+
+    public TimeSeriesBuilderTest(String arg) {
+        super(arg);
+    }
+
+    public void testCodec() throws Exception {
+        long[] values = {0, 5, MISSING, 3, 1000000, 999999, MISSING, MISSING, -7,
+            Long.MAX_VALUE / 2, 0};
+        String series = TimeSeriesCodec.encode(values);
+        assertTrue(Arrays.equals(values, TimeSeriesCodec.decode(series)));
+        assertEquals(0, TimeSeriesCodec.decode(TimeSeriesCodec.encode(new long[0])).length);
+        // small steps take a byte a day
+        long[] cumulative = new long[60];
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] = 100000 + 20 * i;
+        }
+        series = TimeSeriesCodec.encode(cumulative, 1, 59);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(cumulative, 1, 60),
+                TimeSeriesCodec.decode(series)));
+        assertTrue(series.length() < 3 + (3 + 59) * 4 / 3);
+        try {
+            TimeSeriesCodec.decode("gA==");
+            fail("the last varint is not complete");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testMode() throws Exception {
+        assertEquals(TimeSeriesBuilder.Mode.NONE, TimeSeriesBuilder.Mode.forSource("false"));
+        assertEquals(TimeSeriesBuilder.Mode.ALONGSIDE,
+                TimeSeriesBuilder.Mode.forSource(" true"));
+        assertEquals(TimeSeriesBuilder.Mode.ONLY, TimeSeriesBuilder.Mode.forSource("Only"));
+    }
+
+    public void testAnyOrder() throws Exception {
+        TimeSeriesBuilder oldestFirst = new TimeSeriesBuilder(new String[] {"total", "new"});
+        for (int day = 0; day < DAYS; day++) {
+            add(oldestFirst, 0, day);
+        }
+        TimeSeriesBuilder newestFirst = new TimeSeriesBuilder(new String[] {"total", "new"});
+        for (int day = DAYS - 1; day >= 0; day--) {
+            add(newestFirst, 1, day);
+            add(newestFirst, 0, day);
+        }
+        // from the middle out
+        TimeSeriesBuilder unsorted = new TimeSeriesBuilder(new String[] {"total", "new"});
+        for (int i = 0; i < DAYS; i++) {
+            int day = (i % 2 == 0) ? DAYS / 2 + i / 2 : DAYS / 2 - 1 - i / 2;
+            add(unsorted, 0, day);
+        }
+        for (TimeSeriesBuilder builder : new TimeSeriesBuilder[] {oldestFirst, newestFirst,
+            unsorted}) {
+            Item item = new Item();
+            assertTrue(builder.setAttributes(0, item));
+            assertEquals(Long.toString(TimeUnit.DAYS.toMillis(FIRST_DAY)),
+                    item.getAttribute("startDate").getValue());
+            assertEquals(Long.toString(TimeUnit.DAYS.toMillis(FIRST_DAY + DAYS - 1)),
+                    item.getAttribute("endDate").getValue());
+            assertEquals(Integer.toString(DAYS), item.getAttribute("days").getValue());
+            long[] total = TimeSeriesCodec.decode(item.getAttribute("total").getValue());
+            long[] newValues = TimeSeriesCodec.decode(item.getAttribute("new").getValue());
+            assertEquals(DAYS, total.length);
+            for (int day = 0; day < DAYS; day++) {
+                assertEquals(5L * day * (day + 1), total[day]);
+                assertEquals((day == 3) ? MISSING : 10 * day, newValues[day]);
+            }
+            // the values are dropped
+            assertFalse(builder.setAttributes(0, new Item()));
+        }
+        assertFalse(oldestFirst.setAttributes(1, new Item()));
+    }
+
+    public void testGaps() throws Exception {
+        TimeSeriesBuilder builder = new TimeSeriesBuilder(new String[] {"total"});
+        builder.add(2, FIRST_DAY + 10, 7);
+        builder.add(2, FIRST_DAY, 1);
+        builder.add(2, FIRST_DAY + 5, 3);
+        // a later row of a day replaces the earlier one
+        builder.add(2, FIRST_DAY + 5, 4);
+        Item item = new Item();
+        assertTrue(builder.setAttributes(2, item));
+        assertEquals("11", item.getAttribute("days").getValue());
+        long[] expected = {1, MISSING, MISSING, MISSING, MISSING, 4, MISSING, MISSING, MISSING,
+            MISSING, 7};
+        assertTrue(Arrays.equals(expected,
+                TimeSeriesCodec.decode(item.getAttribute("total").getValue())));
+    }
+
+    private void add(TimeSeriesBuilder builder, int locationId, int day) {
+        builder.add(locationId, FIRST_DAY + day, 5L * day * (day + 1),
+                (day == 3) ? MISSING : 10 * day);
+    }
+}
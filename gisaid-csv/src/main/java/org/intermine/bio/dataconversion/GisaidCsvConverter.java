@@ -11,187 +11,706 @@ package org.intermine.bio.dataconversion;
  */
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import au.com.bytecode.opencsv.CSVReader;
 import org.apache.commons.lang.StringUtils;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Attribute;
 import org.intermine.xml.full.Item;
 import org.apache.log4j.Logger;
 
 /**
- * 
+ * Converter to read the daily reports provided by Johns Hopkins CSSE, one csv file per day.
+ * If the threads property is greater than 1 the daily reports are parsed in parallel but
+ * the items are still created in report order, so the output is the same as a serial run.
+ * If the incremental property is true only the reports not loaded by a previous run, or
+ * changed since, are read. The previous runs are recorded in a {@link ProcessedFileManifest}.
+ * The GeoLocations are integrated on their canonical key and the Distributions on their
+ * GeoLocation and date, so the items of an incremental run merge with the ones already
+ * loaded, and a changed report updates its Distributions.
+ * If the boundedMemory property is true the distribution identifiers are spilled to disk
+ * instead of being held until the end of the load, see {@link LocationSpool}.
+ * If the pipeline property is true the daily reports are parsed on another thread and the
+ * items are written in batches on a third one, see {@link ItemPipeline}.
+ * The rows, items and time of the load are counted by a {@link LoadMetrics}, its run report
+ * is written to the loadReport file or else to the log. Each daily report read is recorded
+ * as a {@link FileReadEvent} and a {@link ParseBatchEvent} when Flight Recorder is on.
+ * The daily reports can be compressed, e.g. 01-22-2020.csv.gz, see {@link CompressedInput}.
+ * Unless the load is incremental the Distributions of each location are also rolled up by
+ * week and by month, see {@link Rollups}. Likewise, if the timeSeries property is true the
+ * whole history of each location is also stored in one TimeSeries item, if it is "only" the
+ * TimeSeries replace the Distributions, see {@link TimeSeriesBuilder}.
+ * The rows with a bad count or no country, and the daily reports with a bad date in their
+ * name, are skipped and written to the quarantine file, within the error budget, see
+ * {@link Quarantine}. The columns read are in gisaid-csv_mapping.properties, see
+ * {@link CsvMapping}.
  * @author Daniela Butano
  */
 public class GisaidCsvConverter extends BioDirectoryConverter {
     private static final Logger LOG = Logger.getLogger(GisaidCsvConverter.class);
-    private static final String FILE_NAME_PATTERN = "MM-dd-yyyy";
+    private static final DateCodec FILE_NAME_DATE_CODEC = DateCodec.US_DATE;
     private static final String FILE_EXTENSION = ".csv";
     private static final char FILE_SEPARATOR = ',';
-    private GsaidHeaderMap header;
-    private Map<String, Item> locations = new HashMap<>();
-    private Map<String, List<String>> locationDistributionIds = new HashMap<>();
+    private static final int REPORTS_IN_FLIGHT_PER_THREAD = 2;
+    private static final String MANIFEST_FILE_NAME = ".gisaid-csv.manifest";
+    private static final String GEOLOCATION = "GeoLocation";
+    private static final String DISTRIBUTION = "Distribution";
+    // the columns of the daily reports
+    private static final CsvMapping MAPPING = CsvMapping.load("gisaid-csv_mapping.properties",
+            GisaidCsvConverter.class.getClassLoader());
+    private GeoLocationRegistry geoLocations = new GeoLocationRegistry();
+    private LocationIndex locationIndex = new LocationIndex();
+    private List<Item> locations = new ArrayList<>();
+    private int threads = 1;
+    private boolean incremental = false;
+    private String manifestPath = null;
+    private LocationSpool.Mode spoolMode = LocationSpool.Mode.ALL;
+    private LocationSpool spool;
+    private Rollups rollups;
+    private TimeSeriesBuilder.Mode timeSeriesMode = TimeSeriesBuilder.Mode.NONE;
+    private TimeSeriesBuilder timeSeries;
+    private boolean pipelined = false;
+    private int pipelineBatchSize = ItemPipeline.DEFAULT_BATCH_SIZE;
+    private ItemPipeline<ParsedReport> pipeline;
+    private String loadReport = null;
+    private LoadMetrics metrics;
+    private String quarantinePath = null;
+    private String errorBudget = null;
+    private Quarantine quarantine;
+    // only used in incremental mode
+    private ProcessedFileManifest manifest = null;
 
     public GisaidCsvConverter(ItemWriter writer, Model model) {
         super(writer, model, "GISAID ", "Data set by Johns Hopkins CSSE");
     }
 
+    /**
+     * Set the number of threads used to parse the daily reports
+     * @param threads the number of threads, 1 to parse the files serially
+     */
+    public void setThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+        if (this.threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+        }
+    }
+
+    /**
+     * Set whether to load only the daily reports new or changed since the previous run
+     * @param incremental true for incremental loading
+     */
+    public void setIncremental(String incremental) {
+        this.incremental = Boolean.parseBoolean(incremental.trim());
+    }
+
+    /**
+     * Set where the manifest of the processed files is kept, by default in the data directory
+     * @param manifestPath the path of the manifest file
+     */
+    public void setManifest(String manifestPath) {
+        this.manifestPath = manifestPath;
+    }
+
+    /**
+     * Keep the memory used flat whatever the number of daily reports: the identifiers of the
+     * distributions are spilled to disk and merged at the end of the load.
+     * @param boundedMemory true to spill the distribution identifiers to disk
+     */
+    public void setBoundedMemory(String boundedMemory) {
+        spoolMode = LocationSpool.Mode.forSource(boundedMemory, false);
+    }
+
+    /**
+     * Store a TimeSeries per GeoLocation, alongside the Distributions or instead of them.
+     * Ignored by incremental loads.
+     * @param timeSeries true to store the TimeSeries too, only to store no Distributions
+     */
+    public void setTimeSeries(String timeSeries) {
+        timeSeriesMode = TimeSeriesBuilder.Mode.forSource(timeSeries);
+    }
+
+    /**
+     * Parse the daily reports on another thread and write the items in batches on a third
+     * one, see {@link ItemPipeline}
+     * @param pipeline true to run the load as a pipeline
+     */
+    public void setPipeline(String pipeline) {
+        this.pipelined = Boolean.parseBoolean(pipeline.trim());
+    }
+
+    /**
+     * @param pipelineBatchSize the number of items written together by the pipeline
+     */
+    public void setPipelineBatchSize(String pipelineBatchSize) {
+        this.pipelineBatchSize = Integer.parseInt(pipelineBatchSize.trim());
+    }
+
+    /**
+     * Write the JSON run report of the load to a file instead of the log
+     * @param loadReport the path of the report
+     */
+    public void setLoadReport(String loadReport) {
+        this.loadReport = loadReport;
+    }
+
+    /**
+     * Write the rows skipped because of an error to a file, see {@link Quarantine}
+     * @param quarantinePath the path of the quarantine file
+     */
+    public void setQuarantine(String quarantinePath) {
+        this.quarantinePath = quarantinePath;
+    }
+
+    /**
+     * @param errorBudget the number of rows which can be skipped because of an error, e.g. 100,
+     * or their percentage of the rows read, e.g. 0.5%. No limit by default.
+     */
+    public void setErrorBudget(String errorBudget) {
+        this.errorBudget = errorBudget;
+    }
+
     @Override
     public void process(File dataDir) throws Exception {
         LOG.warn("GisaidCsvConverter process files started..");
         if (dataDir.isDirectory()) {
-            for (File dailyReport : dataDir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File file, String s) {
-                    return s.toLowerCase().endsWith(FILE_EXTENSION);
+            metrics = new LoadMetrics("gisaid-csv");
+            quarantine = new Quarantine("gisaid-csv", metrics);
+            quarantine.setErrorBudget(errorBudget);
+            quarantine.open(quarantinePath);
+            try {
+                processDailyReports(dataDir);
+                quarantine.finish();
+            } finally {
+                quarantine.close();
+            }
+        }
+        LOG.warn("GisaidCsvConverter process files completed.");
+    }
+
+    private void processDailyReports(File dataDir) throws Exception {
+        File[] dailyReports = listDailyReports(dataDir);
+        spool = new LocationSpool(locationIndex, spoolMode, this::storeGeoLocation);
+        if (incremental) {
+            File manifestFile = (manifestPath != null) ? new File(manifestPath)
+                    : new File(dataDir, MANIFEST_FILE_NAME);
+            manifest = new ProcessedFileManifest(manifestFile);
+            dailyReports = selectChangedReports(dailyReports);
+            if (timeSeriesMode != TimeSeriesBuilder.Mode.NONE) {
+                LOG.warn("timeSeries is ignored by incremental loads");
+                timeSeriesMode = TimeSeriesBuilder.Mode.NONE;
+            }
+        } else {
+            // a run loading some of the reports would only roll up part of a period
+            rollups = new Rollups(new String[0], new String[] {"totalConfirmed",
+                    "totalDeaths", "totalRecovered", "totalActive"}, this::storeRollup);
+            if (timeSeriesMode != TimeSeriesBuilder.Mode.NONE) {
+                timeSeries = new TimeSeriesBuilder(new String[] {"totalConfirmed",
+                    "totalDeaths", "totalRecovered", "totalActive"});
+            }
+        }
+        if (pipelined) {
+            pipeline = new ItemPipeline<>("gisaid-csv", pipelineBatchSize,
+                    ItemPipeline.DEFAULT_QUEUE_CAPACITY, this::storeBatch);
+            // a row of the pipeline is a whole daily report
+            pipeline.setRowBatchSize(1);
+        }
+        DailyReportReader reader = new DailyReportReader(dailyReports);
+        metrics.setFractionDone(reader::getFractionRead);
+        try {
+            if (pipeline != null) {
+                pipeline.run(reader, report -> storeDistributions(report.file, report.rows));
+            } else {
+                ParsedReport report;
+                while ((report = reader.read()) != null) {
+                    storeDistributions(report.file, report.rows);
                 }
-            })) {
-                storeDistributions(dailyReport);
             }
             storeGeoLocations();
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+        } finally {
+            reader.close();
+            if (pipeline != null) {
+                pipeline.close();
+            }
         }
+        if (incremental) {
+            manifest.save();
+        }
+        metrics.finish(loadReport);
     }
 
-    private void storeDistributions(File dailyReportFile) {
-        String dailyReportFileName = dailyReportFile.getName();
-        System.out.println("Processing " + dailyReportFileName);
+    private File[] listDailyReports(File dataDir) {
+        File[] dailyReports = dataDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String s) {
+                String name = CompressedInput.getUncompressedName(s);
+                if (!name.toLowerCase().endsWith(FILE_EXTENSION)) {
+                    return false;
+                }
+                // a report unpacked next to its compressed file is only read once
+                return name.equals(s) || !new File(dir, name).exists();
+            }
+        });
+        // listFiles() order is platform dependent, sort by report date to get a stable output
+        Arrays.sort(dailyReports, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long date1 = FILE_NAME_DATE_CODEC.parseEpochDay(getDateAsString(file1));
+                long date2 = FILE_NAME_DATE_CODEC.parseEpochDay(getDateAsString(file2));
+                if (date1 != date2) {
+                    if (date1 == DateCodec.INVALID) {
+                        return 1;
+                    } else if (date2 == DateCodec.INVALID) {
+                        return -1;
+                    }
+                    return Long.compare(date1, date2);
+                }
+                return file1.getName().compareTo(file2.getName());
+            }
+        });
+        // the reports with an invalid date are sorted last
+        int valid = 0;
+        while (valid < dailyReports.length && FILE_NAME_DATE_CODEC.parseEpochDay(
+                getDateAsString(dailyReports[valid])) != DateCodec.INVALID) {
+            valid++;
+        }
+        for (int i = valid; i < dailyReports.length; i++) {
+            String name = dailyReports[i].getName();
+            quarantine.reject(Quarantine.RowError.BAD_FILE_NAME, name, 0, "file name", name);
+        }
+        return Arrays.copyOf(dailyReports, valid);
+    }
+
+    /**
+     * Reads the daily reports in report order. With more than one thread they are parsed on
+     * a bounded pool: at most REPORTS_IN_FLIGHT_PER_THREAD reports per thread are parsed
+     * ahead of the one being read.
+     */
+    private class DailyReportReader implements ItemPipeline.RowReader<ParsedReport> {
+        private final File[] dailyReports;
+        private final ExecutorService pool;
+        private final Deque<Future<List<DailyReportRow>>> inFlight = new ArrayDeque<>();
+        private int next = 0;
+        private int read = 0;
+
+        DailyReportReader(File[] dailyReports) {
+            this.dailyReports = dailyReports;
+            this.pool = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+        }
+
+        @Override
+        public ParsedReport read() throws Exception {
+            if (read == dailyReports.length) {
+                return null;
+            }
+            File dailyReport = dailyReports[read++];
+            ParsedReport report = new ParsedReport(dailyReport, parse(dailyReport));
+            metrics.rowsRead(report.rows.size());
+            return report;
+        }
+
+        /**
+         * @return the fraction of the daily reports read
+         */
+        double getFractionRead() {
+            return (dailyReports.length == 0) ? 1 : (double) read / dailyReports.length;
+        }
+
+        private List<DailyReportRow> parse(File dailyReport) throws Exception {
+            if (pool == null) {
+                return parseDailyReport(dailyReport);
+            }
+            while (next < dailyReports.length
+                    && inFlight.size() < threads * REPORTS_IN_FLIGHT_PER_THREAD) {
+                final File nextReport = dailyReports[next++];
+                inFlight.add(pool.submit(() -> parseDailyReport(nextReport)));
+            }
+            try {
+                return inFlight.poll().get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+
+        void close() {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
 
-        String[] drLine = null;
-        CSVReader reader = null;
-        String dateAsString = dailyReportFileName.substring(0,
-                dailyReportFileName.indexOf(".csv"));
+    /**
+     * A daily report parsed, waiting to be stored
+     */
+    private static final class ParsedReport {
+        final File file;
+        final List<DailyReportRow> rows;
+
+        ParsedReport(File file, List<DailyReportRow> rows) {
+            this.file = file;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Read a daily report file. Safe to call from several threads, it doesn't touch
+     * the converter state.
+     */
+    private List<DailyReportRow> parseDailyReport(File dailyReportFile) {
+        String dailyReportFileName = dailyReportFile.getName();
+        LOG.info("Processing " + dailyReportFileName);
+
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.PARSE);
+        FileReadEvent fileRead = new FileReadEvent("gisaid-csv", dailyReportFileName,
+                dailyReportFile.length());
+        fileRead.begin();
+        ParseBatchEvent parseBatch = new ParseBatchEvent("gisaid-csv", dailyReportFileName);
+        parseBatch.begin();
+        long parseStart = System.nanoTime();
+        List<DailyReportRow> dailyReport = new ArrayList<>();
+        CsvTokenizer reader = null;
+        // the date is the same for every row of the report, format it once
+        String date = convertDate(getDateAsString(dailyReportFile));
         try {
-            reader = new CSVReader(new FileReader(dailyReportFile.getAbsolutePath()),
-                    FILE_SEPARATOR);
-            header = new GsaidHeaderMap(reader.readNext());
-            while ((drLine = reader.readNext()) != null) {
-                storeDistribution(drLine, dateAsString);
+            reader = CsvTokenizer.open(dailyReportFile, FILE_SEPARATOR);
+            if (reader.next()) {
+                ReportColumns columns = new ReportColumns(MAPPING.compile(reader.toStringArray()));
+                reader.setProjection(columns.projection);
+                while (reader.next()) {
+                    dailyReport.add(new DailyReportRow(columns, reader, date));
+                }
             }
         } catch (IOException ex) {
-            ex.printStackTrace();
-            System.out.println("Problem reading file " + dailyReportFileName);
-        }
-    }
-
-    private void storeDistribution(String[] dailyReport, String dateAsString) {
-        GeoLocation location = new GeoLocation(dailyReport);
-        Item geoLocation = createGeoLocation(location);
-        Item distribution = createItem("Distribution");
-        Date date = convertDate(dateAsString);
-        distribution.setAttributeIfNotNull("date", Long.toString(date.getTime()));
-        String confirmed = getFieldValue(Header.CONFIRMED, dailyReport);
-        distribution.setAttributeIfNotNull("totalConfirmed", confirmed);
-        String deaths = getFieldValue(Header.DEATHS, dailyReport);
-        distribution.setAttributeIfNotNull("totalDeaths", deaths);
-        String recovered = getFieldValue(Header.RECOVERED, dailyReport);
-        distribution.setAttributeIfNotNull("totalRecovered", recovered);
-        String active = getFieldValue(Header.ACTIVE, dailyReport);
-        if (active.equals(StringUtils.EMPTY) || "0".equals(active)) {
-            active = calculateActive(confirmed, recovered, deaths);
-        }
-        distribution.setAttribute("totalActive", active);
+            // a report read in part must not be stored as if it were complete
+            throw new RuntimeException("Problem reading file " + dailyReportFileName, ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    LOG.warn("Problem closing file " + dailyReportFileName, ex);
+                }
+            }
+            fileRead.setRows(dailyReport.size());
+            fileRead.commit();
+            parseBatch.end();
+            if (parseBatch.shouldCommit()) {
+                parseBatch.setParsed(dailyReport.size(), System.nanoTime() - parseStart);
+                parseBatch.commit();
+            }
+            metrics.enter(previous);
+        }
+        return dailyReport;
+    }
+
+    private String getDateAsString(File dailyReportFile) {
+        String dailyReportFileName = dailyReportFile.getName();
+        return dailyReportFileName.substring(0,
+                dailyReportFileName.toLowerCase().indexOf(FILE_EXTENSION));
+    }
+
+    private void storeDistributions(File dailyReportFile, List<DailyReportRow> dailyReport)
+        throws IOException {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
         try {
-            distribution.setReference("geoLocation", geoLocation);
-            store(distribution);
-            cacheDistributionIds(location.locationKey, distribution.getIdentifier());
-        } catch (ObjectStoreException e) {
-            e.printStackTrace();
+            storeReportDistributions(dailyReportFile, dailyReport);
+        } finally {
+            metrics.enter(previous);
         }
     }
 
-    private Item createGeoLocation(GeoLocation location) {
-        String locationKey = location.locationKey;
-        if (locations.containsKey(locationKey)) {
-            return locations.get(locationKey);
-        } else {
-            Item geoLocationItem = createItem("GeoLocation");
-            geoLocationItem.setAttributeIfNotNull("latitude", location.latitude);
-            geoLocationItem.setAttributeIfNotNull("longitude", location.longitude);
-            geoLocationItem.setAttributeIfNotNull("province", location.province);
-            geoLocationItem.setAttributeIfNotNull("state", location.state);
-            geoLocationItem.setAttributeIfNotNull("country", location.country);
-            locations.put(locationKey, geoLocationItem);
-            return geoLocationItem;
+    private void storeReportDistributions(File dailyReportFile,
+            List<DailyReportRow> dailyReport) throws IOException {
+        for (DailyReportRow row : dailyReport) {
+            if (row.error != null) {
+                quarantine.reject(row.error, dailyReportFile.getName(), row.line, row.errorField,
+                        row.errorValue);
+                continue;
+            }
+            storeDistribution(row);
+        }
+        if (manifest != null) {
+            manifest.markProcessed(dailyReportFile);
         }
     }
 
-    private Date convertDate(String dateAsString) {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(FILE_NAME_PATTERN);
-        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        Date date = null;
+    private void storeDistribution(DailyReportRow row) {
+        GeoLocation location = row.location;
+        int locationId = createGeoLocation(location);
         try {
-            date = simpleDateFormat.parse(dateAsString);
-        } catch (ParseException ex) {
-            ex.printStackTrace();
-        } finally {
-            return date;
+            if (timeSeriesMode != TimeSeriesBuilder.Mode.ONLY) {
+                Item distribution = createItem(DISTRIBUTION);
+                distribution.setAttribute("date", row.date);
+                setCount(distribution, "totalConfirmed", row.confirmed);
+                setCount(distribution, "totalDeaths", row.deaths);
+                setCount(distribution, "totalRecovered", row.recovered);
+                distribution.setAttribute("totalActive", row.active);
+                distribution.setReference("geoLocation", locations.get(locationId));
+                storeItem(distribution);
+                spool.addChild(locationId, distribution.getIdentifier());
+            }
+            if (rollups != null) {
+                long epochDay = TimeUnit.MILLISECONDS.toDays(Long.parseLong(row.date));
+                long confirmed = NumberLexer.parseInteger(row.confirmed);
+                long deaths = NumberLexer.parseInteger(row.deaths);
+                long recovered = NumberLexer.parseInteger(row.recovered);
+                long active = NumberLexer.parseInteger(row.active);
+                rollups.add(locationId, epochDay, confirmed, deaths, recovered, active);
+                if (timeSeries != null) {
+                    timeSeries.add(locationId, epochDay, confirmed, deaths, recovered, active);
+                }
+            }
+        } catch (ObjectStoreException | IOException e) {
+            throw new RuntimeException("Error storing distribution ", e);
+        }
+    }
+
+    private static void setCount(Item item, String name, String value) {
+        // an empty field or a missing column, an attribute can't be empty
+        if (!value.isEmpty()) {
+            item.setAttribute(name, value);
         }
     }
 
-    private void cacheDistributionIds(String geoLocationKey, String distributionId) {
-        if (locationDistributionIds.containsKey(geoLocationKey)) {
-            List<String> ids = locationDistributionIds.get(geoLocationKey);
-            List<String> updatedIds = new ArrayList<>(ids);
-            updatedIds.add(distributionId);
-            locationDistributionIds.put(geoLocationKey, updatedIds);
+    private void storeRollup(int locationId, Rollups.Period period, Rollups.Rollup rollup)
+        throws ObjectStoreException {
+        Item item = createItem((period == Rollups.Period.WEEK) ? "WeeklyDistribution"
+                : "MonthlyDistribution");
+        rollup.setAttributes(item);
+        item.setReference("geoLocation", locations.get(locationId));
+        storeItem(item);
+    }
+
+    private void storeTimeSeries(int locationId, Item geoLocation) throws ObjectStoreException {
+        Item item = createItem("TimeSeries");
+        if (timeSeries.setAttributes(locationId, item)) {
+            item.setReference("geoLocation", geoLocation);
+            geoLocation.setReference("timeSeries", item);
+            storeItem(item);
+        }
+    }
+
+    private int createGeoLocation(GeoLocation location) {
+        int locationId = geoLocations.resolve(location.country, location.state,
+                location.province);
+        if (locationId < locations.size()) {
+            setCoordinates(locations.get(locationId), location);
+            return locationId;
         } else {
-            List<String> ids = Arrays.asList(distributionId);
-            locationDistributionIds.put(geoLocationKey, ids);
+            Item geoLocationItem = createItem(GEOLOCATION);
+            String locationKey = geoLocations.getKey(locationId);
+            locationIndex.intern(locationKey);
+            // the same for every source, the GeoLocations are merged on it
+            geoLocationItem.setAttribute("canonicalKey", locationKey);
+            setCoordinates(geoLocationItem, location);
+            geoLocationItem.setAttributeIfNotNull("province", geoLocations.getProvince(locationId));
+            geoLocationItem.setAttributeIfNotNull("state", geoLocations.getState(locationId));
+            geoLocationItem.setAttributeIfNotNull("country", geoLocations.getCountry(locationId));
+            locations.add(geoLocationItem);
+            return locationId;
         }
     }
 
+    /**
+     * The daily reports are read oldest first and the coordinates of a location are corrected
+     * from time to time, so the coordinates of the latest report are kept
+     */
+    private void setCoordinates(Item geoLocation, GeoLocation location) {
+        setCoordinate(geoLocation, "latitude", location.latitude);
+        setCoordinate(geoLocation, "longitude", location.longitude);
+    }
+
+    private void setCoordinate(Item geoLocation, String name, String value) {
+        if (value == null || value.isEmpty()) {
+            // the older reports have no coordinates
+            return;
+        }
+        Attribute previous = geoLocation.getAttribute(name);
+        if (previous != null && !previous.getValue().equals(value)) {
+            LOG.info("The " + name + " of " + geoLocation.getAttribute("canonicalKey").getValue()
+                    + " changes from " + previous.getValue() + " to " + value);
+        }
+        geoLocation.setAttribute(name, value);
+    }
+
+    private String convertDate(String dateAsString) {
+        long date = FILE_NAME_DATE_CODEC.parseMillis(dateAsString);
+        if (date == DateCodec.INVALID) {
+            throw new RuntimeException("Error parsing the date " + dateAsString);
+        }
+        return Long.toString(date);
+    }
+
     private void storeGeoLocations() {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
         try {
-            for (String locationKey : locations.keySet()) {
-                Item geoLocation = locations.get(locationKey);
-                geoLocation.setCollection("distributions",
-                        locationDistributionIds.get(locationKey));
-                store(geoLocation);
-            }
-        } catch (ObjectStoreException e) {
-            e.printStackTrace();
+            spool.finish();
+        } catch (ObjectStoreException | IOException e) {
+            throw new RuntimeException("Error storing geoLocation ", e);
+        } finally {
+            spool.close();
+            metrics.enter(previous);
         }
     }
 
-    private String getFieldValue(Header label, String[] fields) {
-        int pos;
-        pos = header.getPosition(label);
-        if (pos != -1) {
-            return fields[pos].trim();
+    private void storeGeoLocation(int locationId, List<String> distributionIds)
+        throws ObjectStoreException {
+        Item geoLocation = locations.get(locationId);
+        if (!distributionIds.isEmpty()) {
+            geoLocation.setCollection("distributions", distributionIds);
+        }
+        if (timeSeries != null) {
+            storeTimeSeries(locationId, geoLocation);
+        }
+        storeItem(geoLocation);
+        if (rollups != null) {
+            rollups.finish(locationId);
+        }
+    }
+
+    private void storeItem(Item item) throws ObjectStoreException {
+        metrics.itemStored(item.getClassName());
+        if (pipeline != null) {
+            pipeline.store(item);
+            return;
+        }
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.STORE);
+        ItemStoreEvent event = new ItemStoreEvent("gisaid-csv", item.getClassName(), 1);
+        event.begin();
+        try {
+            store(item);
+        } finally {
+            event.commit();
+            metrics.enter(previous);
         }
-        return StringUtils.EMPTY;
     }
 
-    private String getCountry(Header label, String[] fields) {
-        String originalCountry = getFieldValue(label, fields);
-        return CountryUtils.getCountry(originalCountry);
+    private void storeBatch(List<Item> items) throws ObjectStoreException {
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.STORE);
+        ItemStoreEvent event = new ItemStoreEvent("gisaid-csv", items.get(0).getClassName(),
+                items.size());
+        event.begin();
+        try {
+            store(items);
+        } finally {
+            event.commit();
+            metrics.enter(previous);
+        }
+    }
+
+    /**
+     * Keep only the reports new or changed since the previous run. A changed report is loaded
+     * again, its Distributions are merged with the ones of the previous run on their
+     * GeoLocation and date.
+     */
+    private File[] selectChangedReports(File[] dailyReports) throws IOException {
+        List<File> changedReports = new ArrayList<>();
+        for (File dailyReport : dailyReports) {
+            if (manifest.isUnchanged(dailyReport)) {
+                continue;
+            }
+            if (manifest.isProcessed(dailyReport.getName())) {
+                LOG.warn("Daily report " + dailyReport.getName() + " has changed, reloading it");
+            }
+            changedReports.add(dailyReport);
+        }
+        LOG.warn("Loading " + changedReports.size() + " of " + dailyReports.length
+                + " daily reports, the others are unchanged since the previous run");
+        return changedReports.toArray(new File[changedReports.size()]);
     }
 
     private String calculateActive(String confirmed, String recovered, String deaths) {
-        int active = 0;
-        if (!confirmed.isEmpty()) {
-            active = Integer.parseInt(confirmed);
+        long active = 0;
+        long value = NumberLexer.parseInteger(confirmed);
+        if (value != NumberLexer.INVALID) {
+            active = value;
             if (active == 0) {
-                return Integer.toString(active);
+                return Long.toString(active);
             }
         }
-        if (!recovered.isEmpty()) {
-            active = active - Integer.parseInt(recovered);
+        value = NumberLexer.parseInteger(recovered);
+        if (value != NumberLexer.INVALID) {
+            active = active - value;
         }
-        if (!deaths.isEmpty()) {
-            active = active - Integer.parseInt(deaths);
+        value = NumberLexer.parseInteger(deaths);
+        if (value != NumberLexer.INVALID) {
+            active = active - value;
         }
         if (active < 0) {
             active = 0;
         }
-        return Integer.toString(active);
+        return Long.toString(active);
+    }
+
+    /**
+     * A row of a daily report, checked while it is parsed. A row with an error is not stored.
+     */
+    private class DailyReportRow {
+        GeoLocation location;
+        String date;
+        String confirmed;
+        String deaths;
+        String recovered;
+        String active;
+        long line;
+        Quarantine.RowError error;
+        String errorField;
+        String errorValue;
+
+        public DailyReportRow(ReportColumns columns, CsvTokenizer fields, String date) {
+            location = new GeoLocation(columns, fields);
+            this.date = date;
+            line = fields.getLineNumber();
+            if (location.country.isEmpty()) {
+                setError(Quarantine.RowError.MISSING_LOCATION, columns.country, location.country);
+            }
+            confirmed = getCount(columns.confirmed, fields);
+            deaths = getCount(columns.deaths, fields);
+            recovered = getCount(columns.recovered, fields);
+            active = getCount(columns.active, fields);
+            if (error == null && (active.equals(StringUtils.EMPTY) || "0".equals(active))) {
+                active = calculateActive(confirmed, recovered, deaths);
+            }
+        }
+
+        /**
+         * @return the count, rounded if it is a decimal, empty if the field is
+         */
+        private String getCount(CsvColumn column, CsvTokenizer fields) {
+            long value = column.getLong(fields);
+            if (value != CsvColumn.INVALID) {
+                return Long.toString(value);
+            }
+            if (column.isInvalid(fields)) {
+                String field = column.getString(fields);
+                setError(Quarantine.RowError.BAD_NUMBER, column, field);
+                return field;
+            }
+            return StringUtils.EMPTY;
+        }
+
+        private void setError(Quarantine.RowError error, CsvColumn column, String value) {
+            if (this.error == null) {
+                this.error = error;
+                errorField = column.getName();
+                errorValue = value;
+            }
+        }
     }
 
     private class GeoLocation {
@@ -200,16 +719,42 @@ public class GisaidCsvConverter extends BioDirectoryConverter {
         String province;
         String state;
         String country;
-        String locationKey;
-
-        public GeoLocation(String[] fields) {
-            latitude = getFieldValue(Header.LATITUDE, fields);
-            longitude = getFieldValue(Header.LONGITUDE, fields);
-            province = getFieldValue(Header.PROVINCE, fields);
-            state = getFieldValue(Header.STATE, fields);
-            country = getCountry(Header.COUNTRY, fields);
-            locationKey = latitude + longitude + province + state + country;
-            locationKey = StringUtils.deleteWhitespace(locationKey);
+
+        public GeoLocation(ReportColumns columns, CsvTokenizer fields) {
+            latitude = columns.latitude.getString(fields);
+            longitude = columns.longitude.getString(fields);
+            province = columns.province.getString(fields);
+            state = columns.state.getString(fields);
+            country = columns.country.getString(fields);
+        }
+    }
+
+    /**
+     * The columns of a daily report, the older reports have fewer
+     */
+    private static final class ReportColumns {
+        final CsvColumn province;
+        final CsvColumn state;
+        final CsvColumn country;
+        final CsvColumn latitude;
+        final CsvColumn longitude;
+        final CsvColumn confirmed;
+        final CsvColumn deaths;
+        final CsvColumn recovered;
+        final CsvColumn active;
+        final CsvProjection projection;
+
+        ReportColumns(CsvColumns columns) {
+            province = columns.get("province");
+            state = columns.get("state");
+            country = columns.get("country");
+            latitude = columns.get("latitude");
+            longitude = columns.get("longitude");
+            confirmed = columns.get("totalConfirmed");
+            deaths = columns.get("totalDeaths");
+            recovered = columns.get("totalRecovered");
+            active = columns.get("totalActive");
+            projection = columns.getProjection();
         }
     }
 
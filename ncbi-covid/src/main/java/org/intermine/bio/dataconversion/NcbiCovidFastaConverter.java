@@ -12,6 +12,8 @@ package org.intermine.bio.dataconversion;
 
 import org.apache.log4j.Logger;
 import org.biojava.nbio.core.sequence.template.Sequence;
+import org.intermine.dataloader.DirectDataLoader;
+import org.intermine.dataloader.IntegrationWriter;
 import org.intermine.metadata.Model;
 import org.intermine.model.bio.BioEntity;
 import org.intermine.model.bio.DataSet;
@@ -19,40 +21,515 @@ import org.intermine.model.bio.GeoLocation;
 import org.intermine.model.bio.Organism;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.PendingClob;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 
 /**
  * See https://intermine.readthedocs.io/en/latest/database/data-sources/library/fasta/
  * for details on the FASTA source.
+ * With more than one thread, a file is read by a {@link FastaChunkReader} instead of the
+ * FASTA loader: it is cut into chunks at record boundaries and the chunks are parsed on a
+ * pool, while the objects are built and stored in file order on the loading thread, so the
+ * DirectDataLoader and the GeoLocation cache are only used by one thread.
+ * The FastaChunkReader is also used to load some of the records of a file, through the
+ * {@link FastaIndex} of the file (sequences.fasta.fai, built if needed): the accessions
+ * selected, or the ones not in the database yet. With a checkpoint file the load is
+ * committed every CHECKPOINT_RECORDS records and a failed load restarts after the last
+ * record committed. With deduplicate, the residues of identical sequences, found by their
+ * MD5 checksum, are stored once: the Sequence of a duplicate only has the checksum, the
+ * Sequence.key_md5checksum integration key merges it with the stored one, so the entities
+ * reference the same Sequence. With a
+ * deltaReference, the genomes are stored as their variants against a reference genome, see
+ * {@link GenomeDelta}, instead of their residues.
  * @author
  */
 public class NcbiCovidFastaConverter extends FastaLoaderTask
 {
     protected static final Logger LOG = Logger.getLogger(NcbiCovidFastaConverter.class);
-    private static final String REFSEQ = "refseq";
-    private Map<String, GeoLocation> geoMap = new HashMap<String, GeoLocation>();
+    private static final int CHECKPOINT_RECORDS = 10000;
+    // the residues are stored if the variants are longer than this fraction of them
+    private static final int MAX_DELTA_FRACTION = 4;
+    private GeoLocationRegistry geoLocationRegistry = new GeoLocationRegistry();
+    // the GeoLocation objects, by registry id
+    private List<GeoLocation> geoLocations = new ArrayList<GeoLocation>();
+    private String entityClassName = "Sequence";
+    private String className = null;
+    private String classAttribute = "primaryIdentifier";
+    private String taxonId = null;
+    private Organism organism = null;
+    private int threads = 1;
+    private int chunkSize = FastaChunkReader.DEFAULT_CHUNK_SIZE;
+    // the accessions to load, null to load them all
+    private Set<String> accessions = null;
+    private boolean skipExisting = false;
+    private Set<String> storedIdentifiers = null;
+    private LoadCheckpoint checkpoint = null;
+    private boolean deduplicate = false;
+    // the checksums of the residues stored, with the ids of their Sequence objects
+    private final ContentHashIndex sequenceIds = new ContentHashIndex();
+    private GenomeDelta genomeDelta = null;
+    private String loadReport = null;
+    private LoadMetrics metrics = new LoadMetrics("ncbi-covid");
+    // reused for every sequence
+    private final FastaHeader header = new FastaHeader();
+
+    /**
+     * Write the JSON run report of the load to a file instead of the log, see
+     * {@link LoadMetrics}
+     * @param loadReport the path of the report
+     */
+    public void setLoadReport(String loadReport) {
+        this.loadReport = loadReport;
+    }
+
+    /**
+     * Set the number of threads parsing a file
+     * @param threads the number of threads, 1 to read the files with the FASTA loader
+     */
+    public void setThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+        if (this.threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+        }
+    }
+
+    /**
+     * Set the size of the chunks parsed by each thread, used with more than one thread
+     * @param chunkSize the size in bytes, see {@link FastaChunkReader#DEFAULT_CHUNK_SIZE}
+     */
+    public void setChunkSize(String chunkSize) {
+        this.chunkSize = Integer.parseInt(chunkSize.trim());
+        if (this.chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1, was " + chunkSize);
+        }
+    }
+
+    /**
+     * Only load some accessions
+     * @param accessions the accessions, separated by commas or spaces
+     */
+    public void setAccessions(String accessions) {
+        for (String accession : accessions.split("[,\\s]+")) {
+            addAccession(accession);
+        }
+    }
+
+    /**
+     * Only load the accessions listed in a file
+     * @param accessionsFile the file, with one accession per line
+     */
+    public void setAccessionsFile(String accessionsFile) {
+        try {
+            for (String line : Files.readAllLines(new File(accessionsFile).toPath(),
+                    StandardCharsets.UTF_8)) {
+                addAccession(line);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading the accessions in " + accessionsFile, e);
+        }
+    }
+
+    private void addAccession(String accession) {
+        if (accessions == null) {
+            accessions = new HashSet<>();
+        }
+        if (!accession.trim().isEmpty()) {
+            accessions.add(accession.trim());
+        }
+    }
+
+    /**
+     * Skip the records already in the database, e.g. to add the new sequences of a dump
+     * @param skipExisting true to skip the records whose identifier is stored
+     */
+    public void setSkipExisting(String skipExisting) {
+        this.skipExisting = Boolean.parseBoolean(skipExisting.trim());
+    }
+
+    /**
+     * Commit the load regularly and record how far it has gone in a file, which is read
+     * when the load is run again after a failure. The file is deleted when the load succeeds.
+     * @param checkpoint the path of the checkpoint file
+     */
+    public void setCheckpoint(String checkpoint) {
+        try {
+            this.checkpoint = new LoadCheckpoint(new File(checkpoint));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading the checkpoint " + checkpoint, e);
+        }
+    }
+
+    /**
+     * Store the residues of identical sequences once, the entities with the same residues
+     * reference the same Sequence
+     * @param deduplicate true to deduplicate the sequences
+     */
+    public void setDeduplicate(String deduplicate) {
+        this.deduplicate = Boolean.parseBoolean(deduplicate.trim());
+    }
+
+    /**
+     * Store the genomes as their variants against a reference genome, in the referenceDelta
+     * attribute, instead of storing their residues. The residues of a genome are rebuilt
+     * from the ones of the reference with {@link GenomeDelta#decode(CharSequence, String)}.
+     * The reference sequence, refseq in its header, and the genomes too different from it
+     * are stored with their residues.
+     * @param deltaReference the path of a FASTA file, its first sequence is the reference,
+     * e.g. NC_045512
+     */
+    public void setDeltaReference(String deltaReference) {
+        try (FastaChunkReader reader = new FastaChunkReader(new File(deltaReference.trim()), 1,
+                FastaChunkReader.DEFAULT_CHUNK_SIZE)) {
+            FastaRecord reference = reader.next();
+            if (reference == null) {
+                throw new IllegalArgumentException("No sequence in " + deltaReference);
+            }
+            genomeDelta = new GenomeDelta(reference.getResidues());
+            LOG.info("Storing the genomes as variants against " + reference.getHeader());
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading the reference " + deltaReference, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClassName(String className) {
+        super.setClassName(className);
+        this.className = className;
+        entityClassName = className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClassAttribute(String classAttribute) {
+        super.setClassAttribute(classAttribute);
+        this.classAttribute = classAttribute;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFastaTaxonId(String fastaTaxonId) {
+        super.setFastaTaxonId(fastaTaxonId);
+        this.taxonId = fastaTaxonId.trim();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() {
+        metrics = new LoadMetrics("ncbi-covid");
+        super.execute();
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+        try {
+            metrics.finish(loadReport);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing the load report ", e);
+        }
+    }
+
+    /**
+     * Process a FASTA file, possibly compressed, e.g. sequences.fasta.gz. The FASTA loader
+     * reads the file it is given by name, so a compressed file is decompressed to a temporary
+     * file (deleted when the file has been loaded) with a {@link CompressedInput}.
+     * @param file the FASTA file
+     */
+    @Override
+    public void processFile(File file) {
+        FileReadEvent fileRead = new FileReadEvent("ncbi-covid", file.getName(), file.length());
+        fileRead.begin();
+        long rowsRead = metrics.getRowsRead();
+        File decompressed = null;
+        try {
+            File fastaFile = file;
+            if (CompressedInput.isCompressed(file)) {
+                decompressed = decompress(file);
+                fastaFile = decompressed;
+            }
+            if (readsChunks()) {
+                processChunks(fastaFile, file);
+            } else {
+                super.processFile(fastaFile);
+            }
+        } finally {
+            if (decompressed != null) {
+                decompressed.delete();
+            }
+            fileRead.setRows(metrics.getRowsRead() - rowsRead);
+            fileRead.commit();
+        }
+    }
+
+    /**
+     * @return true if the files are read by a FastaChunkReader, the options need it
+     */
+    private boolean readsChunks() {
+        return threads > 1 || accessions != null || skipExisting || checkpoint != null
+                || deduplicate || genomeDelta != null;
+    }
+
+    /**
+     * Load a file with a {@link FastaChunkReader}, storing the objects as the FASTA loader
+     * does
+     * @param fastaFile the file read, decompressed
+     * @param file the file of the load, the key of its checkpoint
+     */
+    private void processChunks(File fastaFile, File file) {
+        Class<? extends BioEntity> entityClass;
+        try {
+            entityClass = Class.forName(className).asSubclass(BioEntity.class);
+        } catch (ClassNotFoundException | NullPointerException e) {
+            throw new RuntimeException("Unknown className " + className, e);
+        }
+        String name = file.getName();
+        long resumeOffset = 0;
+        if (checkpoint != null) {
+            resumeOffset = checkpoint.getResumeOffset(name, file.length());
+            if (resumeOffset > 0) {
+                LOG.info("Resuming the load of " + name + " at offset " + resumeOffset);
+            }
+        }
+        try (FastaChunkReader reader = openReader(fastaFile, fastaFile == file, resumeOffset,
+                entityClass)) {
+            FastaRecord record;
+            int uncommitted = 0;
+            while ((record = reader.next()) != null) {
+                storeRecord(record, entityClass);
+                if (checkpoint != null && ++uncommitted == CHECKPOINT_RECORDS) {
+                    commit(name, file.length(), record.getEnd());
+                    uncommitted = 0;
+                }
+            }
+            if (checkpoint != null) {
+                commit(name, file.length(), fastaFile.length());
+            }
+        } catch (IOException | ObjectStoreException e) {
+            throw new RuntimeException("Error loading " + fastaFile, e);
+        }
+    }
+
+    /**
+     * @param indexed true to keep the index of the file, false for a temporary file
+     * @param resumeOffset the offset of the first record to read
+     */
+    private FastaChunkReader openReader(File fastaFile, boolean indexed, long resumeOffset,
+            Class<? extends BioEntity> entityClass) throws IOException, ObjectStoreException {
+        if (accessions == null && !skipExisting) {
+            return new FastaChunkReader(fastaFile, threads, chunkSize, resumeOffset);
+        }
+        FastaIndex index = indexed ? FastaIndex.load(fastaFile) : FastaIndex.build(fastaFile);
+        Set<String> stored = skipExisting ? getStoredIdentifiers(entityClass)
+                : Collections.<String>emptySet();
+        List<FastaIndex.Entry> selected = new ArrayList<>();
+        for (FastaIndex.Entry entry : index.getEntries()) {
+            if (entry.getOffset() < resumeOffset) {
+                continue;
+            }
+            header.parse(entry.getName());
+            String identifier = header.getIdentifier().toString();
+            if (accessions != null && !accessions.contains(identifier)) {
+                metrics.rowSkipped("accession not selected");
+            } else if (stored.contains(identifier)) {
+                metrics.rowSkipped("already stored");
+            } else {
+                selected.add(entry);
+            }
+        }
+        LOG.info("Loading " + selected.size() + " of the " + index.size() + " records of "
+                + fastaFile.getName());
+        return new FastaChunkReader(fastaFile, selected, threads, chunkSize);
+    }
+
+    /**
+     * @return the identifiers of the entities in the database, read once for the load
+     */
+    private Set<String> getStoredIdentifiers(Class<? extends BioEntity> entityClass) {
+        if (storedIdentifiers == null) {
+            Query query = new Query();
+            QueryClass entities = new QueryClass(entityClass);
+            query.addFrom(entities);
+            query.addToSelect(new QueryField(entities, classAttribute));
+            storedIdentifiers = new HashSet<>();
+            for (Object identifier : getIntegrationWriter().getObjectStore()
+                    .executeSingleton(query)) {
+                storedIdentifiers.add((String) identifier);
+            }
+            LOG.info(storedIdentifiers.size() + " " + entityClassName + " already stored");
+        }
+        return storedIdentifiers;
+    }
+
+    /**
+     * Commit the objects stored, then record that the load of the file resumes at an offset
+     */
+    private void commit(String name, long size, long resumeOffset)
+        throws ObjectStoreException, IOException {
+        IntegrationWriter writer = getIntegrationWriter();
+        if (writer.isInTransaction()) {
+            writer.commitTransaction();
+            writer.beginTransaction();
+        }
+        checkpoint.save(name, size, resumeOffset);
+    }
+
+    private void storeRecord(FastaRecord record, Class<? extends BioEntity> entityClass)
+        throws ObjectStoreException {
+        metrics.rowRead();
+        DirectDataLoader loader = getDirectDataLoader();
+        header.parse(record.getHeader());
+        BioEntity bioEntity = loader.createObject(entityClass);
+        bioEntity.setFieldValue(classAttribute, header.getIdentifier().toString());
+        bioEntity.setFieldValue("length", record.getLength());
+        bioEntity.setFieldValue("md5checksum", record.getMd5checksum());
+        String delta = (genomeDelta == null || header.isReference()) ? null
+                : encodeDelta(record);
+        org.intermine.model.bio.Sequence sequence = null;
+        if (delta != null) {
+            bioEntity.setFieldValue("referenceDelta", delta);
+        } else {
+            sequence = setSequence(bioEntity, record);
+        }
+        bioEntity.setOrganism(getOrganism());
+        bioEntity.addDataSets(getDataSet());
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
+        try {
+            setHeaderFields(bioEntity, organism);
+        } finally {
+            metrics.enter(previous);
+        }
+        if (sequence != null) {
+            loader.store(sequence);
+            metrics.itemStored("Sequence");
+        }
+        loader.store(bioEntity);
+        metrics.itemStored(entityClassName);
+    }
+
+    /**
+     * Reference the residues of a record from its entity
+     * @return the Sequence to store
+     */
+    private org.intermine.model.bio.Sequence setSequence(BioEntity bioEntity,
+            FastaRecord record) throws ObjectStoreException {
+        org.intermine.model.bio.Sequence sequence =
+                getDirectDataLoader().createObject(org.intermine.model.bio.Sequence.class);
+        sequence.setLength(record.getLength());
+        sequence.setMd5checksum(record.getMd5checksum());
+        bioEntity.setFieldValue("sequence", sequence);
+        if (deduplicate && sequenceIds.get(record.getMd5checksum())
+                != ContentHashIndex.NOT_FOUND) {
+            // the same residues have been stored for another entity, the integration merges
+            // this Sequence with that one on their checksum
+            return sequence;
+        }
+        sequence.setResidues(new PendingClob(record.getResidues()));
+        if (deduplicate) {
+            sequenceIds.put(record.getMd5checksum(), sequence.getId());
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the variants of the genome against the reference, null if they are not much
+     * shorter than the residues or don't rebuild them
+     */
+    private String encodeDelta(FastaRecord record) {
+        String delta = genomeDelta.encode(record.getResidues());
+        if (delta.length() > record.getLength() / MAX_DELTA_FRACTION) {
+            return null;
+        }
+        // the residues are not stored, so they must be rebuilt exactly
+        boolean reversible;
+        try {
+            reversible = genomeDelta.decode(delta).equals(record.getResidues());
+        } catch (IllegalArgumentException e) {
+            reversible = false;
+        }
+        if (!reversible) {
+            // one odd genome mustn't fail the load, its residues are stored instead
+            LOG.warn("The variants of " + header.getIdentifier()
+                    + " don't rebuild its residues, storing them: " + delta);
+            metrics.rowWarning("delta not reversible");
+            return null;
+        }
+        return delta;
+    }
+
+    private Organism getOrganism() throws ObjectStoreException {
+        if (organism == null) {
+            if (taxonId == null) {
+                throw new IllegalStateException("No fastaTaxonId set");
+            }
+            organism = getDirectDataLoader().createObject(Organism.class);
+            organism.setTaxonId(taxonId);
+            getDirectDataLoader().store(organism);
+            metrics.itemStored("Organism");
+        }
+        return organism;
+    }
+
+    private File decompress(File file) {
+        File decompressed = null;
+        try {
+            decompressed = File.createTempFile("ncbi-covid-",
+                    "-" + CompressedInput.getUncompressedName(file.getName()));
+            try (InputStream in = CompressedInput.open(file)) {
+                Files.copy(in, decompressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return decompressed;
+        } catch (IOException e) {
+            if (decompressed != null) {
+                decompressed.delete();
+            }
+            throw new RuntimeException("Error decompressing " + file, e);
+        }
+    }
 
     /**
      * Return a Chromosome object for the given item.
-     * @param country the id
+     * @param country the country, null if not known
      * @param organism the Organism to reference from the Chromosome
      * @return the Chromosome
      * @throws ObjectStoreException if problem fetching Chromosome
      */
-    protected GeoLocation getGeoLocation(String country, Organism organism)
+    protected GeoLocation getGeoLocation(CharSequence country, Organism organism)
             throws ObjectStoreException {
-        if (geoMap.containsKey(country)) {
-            return geoMap.get(country);
+        int locationId = geoLocationRegistry.resolve(country, null, null);
+        if (locationId < geoLocations.size()) {
+            return geoLocations.get(locationId);
         }
         GeoLocation gLoc = getDirectDataLoader().createObject(GeoLocation.class);
-        gLoc.setFieldValue("country",country);
+        // the same for every source, the GeoLocations are merged on it
+        gLoc.setFieldValue("canonicalKey", geoLocationRegistry.getKey(locationId));
+        gLoc.setFieldValue("country", geoLocationRegistry.getCountry(locationId));
 //        gLoc.setOrganism(organism);
 //        gLoc.addDataSets(getDataSet());
         getDirectDataLoader().store(gLoc);
-        geoMap.put(country, gLoc);
+        metrics.itemStored("GeoLocation");
+        geoLocations.add(gLoc);
         return gLoc;
     }
 
@@ -66,41 +543,27 @@ public class NcbiCovidFastaConverter extends FastaLoaderTask
             BioEntity bioEntity, Organism organism,
             DataSet dataSet)
         throws ObjectStoreException {
-        String header = bioJavaSequence.getAccession().getID();
-
-        String seqIdentifier = null;
-        String country = null;
-        String isComplete= "N/A";
-        String isRef = "N";
-
-        Map<String, String[]> recordMap = new HashMap<String, String[]>();
-
-        // for the reference seq
-        // >NC_045512 |China|refseq| complete
-        // for the rest
-        // >MT123291 |China|complete
-
-        String[] headerSubStrings = header.split("\\|");
-        int i =0;
-        for (String token : headerSubStrings ) {
-//            LOG.info("XXXX [" + i + "] ->" + token + "<-");
-            if (i == 0) {
-                seqIdentifier = token.trim();
-            }
-            if (i == 1) {
-                country = token;
-            }
-            if (i == 2) {
-                if (token.contains(REFSEQ)) {
-                    isRef = "Y";
-                    isComplete = "Y";
-                    continue;
-                } else {
-                    isComplete = "Y";
-                }
-            }
-            i++;
+        // the sequence has been read and stored by FastaLoaderTask, the entity is stored next
+        metrics.rowRead();
+        metrics.itemStored("Sequence");
+        metrics.itemStored(entityClassName);
+        bioEntity.setFieldValue("md5checksum", flymineSequence.getMd5checksum());
+        LoadMetrics.Stage previous = metrics.enter(LoadMetrics.Stage.CONVERT);
+        try {
+            header.parse(bioJavaSequence.getAccession().getID());
+            setHeaderFields(bioEntity, organism);
+        } finally {
+            metrics.enter(previous);
         }
+    }
+
+    /**
+     * Set the fields read from the header, which has been parsed
+     */
+    private void setHeaderFields(BioEntity bioEntity, Organism organism)
+        throws ObjectStoreException {
+        String isComplete = header.getCompleteness().getFlag();
+        String isRef = header.isReference() ? "Y" : "N";
 
         ObjectStore os = getIntegrationWriter().getObjectStore();
             Model model = os.getModel();
@@ -111,13 +574,15 @@ public class NcbiCovidFastaConverter extends FastaLoaderTask
 //            InterMineObject strain = setStrain(seqIdentifier, geoLocation, isRef, isComplete,
 //                    organism, model);
 
-        LOG.debug("YYY " + seqIdentifier + "|" + isRef + "|" + isComplete);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Sequence header " + header);
+        }
 
 
         bioEntity.setFieldValue("referenceSequence", isRef);
         bioEntity.setFieldValue("nucleotideCompleteness", isComplete);
 
-        GeoLocation  geoLocation = getGeoLocation(country, organism);
+        GeoLocation  geoLocation = getGeoLocation(header.getCountry(), organism);
         bioEntity.setFieldValue("geoLocation", geoLocation);
 
             //            if (strain != null) {
@@ -126,6 +591,4 @@ public class NcbiCovidFastaConverter extends FastaLoaderTask
 //            }
 
     }
-
 }
-
@@ -0,0 +1,106 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2020 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.InterMineObject;
+import org.intermine.model.bio.Genome;
+import org.intermine.model.bio.Sequence;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.objectstore.ObjectStoreWriterFactory;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.SingletonResults;
+
+public class NcbiCovidFastaConverterTest extends TestCase
+{
+    private static final String RESIDUES = "ATTAAAGGTTTATACCTTCCCAGGTAACAAACCAACCAACTTTCGATCTC";
+    private ObjectStoreWriter osw;
+    private File fastaFile;
+
+    public NcbiCovidFastaConverterTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        osw = ObjectStoreWriterFactory.getObjectStoreWriter("osw.bio-test");
+        osw.getObjectStore().flushObjectById();
+        fastaFile = File.createTempFile("ncbi-covid", ".fasta");
+    }
+
+    public void testDeduplicate() throws Exception {
+        write(">MT000001 |China|complete\n" + RESIDUES + "\n"
+                + ">MT000002 |Italy|complete\n" + RESIDUES + "\n");
+        NcbiCovidFastaConverter converter = new NcbiCovidFastaConverter();
+        converter.setIntegrationWriterAlias("integration.bio-test");
+        converter.setSourceName("ncbi-covid");
+        converter.setDataSourceName("NCBI");
+        converter.setDataSetTitle("NCBI SARS-CoV-2 genomes");
+        converter.setFastaTaxonId("2697049");
+        converter.setClassName("org.intermine.model.bio.Genome");
+        converter.setClassAttribute("primaryIdentifier");
+        converter.setDeduplicate("true");
+        converter.setFileArray(new File[] {fastaFile});
+        converter.execute();
+
+        ObjectStore os = osw.getObjectStore();
+        Set<Integer> sequenceIds = new HashSet<>();
+        int genomes = 0;
+        for (Object genome : select(os, Genome.class)) {
+            sequenceIds.add(((Genome) genome).getSequence().getId());
+            genomes++;
+        }
+        assertEquals(2, genomes);
+        // both genomes reference the one Sequence stored
+        assertEquals(1, sequenceIds.size());
+        SingletonResults sequences = select(os, Sequence.class);
+        assertEquals(1, sequences.size());
+        Sequence sequence = (Sequence) sequences.get(0);
+        assertEquals(sequence.getId(), sequenceIds.iterator().next());
+        assertEquals(RESIDUES, sequence.getResidues().toString());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        fastaFile.delete();
+        SingletonResults objects = select(osw.getObjectStore(), InterMineObject.class);
+        osw.beginTransaction();
+        for (Object object : objects) {
+            osw.delete((InterMineObject) object);
+        }
+        osw.commitTransaction();
+        osw.close();
+    }
+
+    private static SingletonResults select(ObjectStore os, Class<?> type) {
+        Query query = new Query();
+        QueryClass qc = new QueryClass(type);
+        query.addFrom(qc);
+        query.addToSelect(qc);
+        return os.executeSingleton(query);
+    }
+
+    private void write(String content) throws Exception {
+        try (OutputStream out = new FileOutputStream(fastaFile)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}